@@ -0,0 +1,95 @@
+package com.example.autosuggest.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-request cost of the rate limiter under contention: key lookup plus one acquire, every thread hammering
+ * either a single client key (all CAS on one bucket) or thousands of keys. {@code tokenBucket} is
+ * {@link RateLimitFilter}'s path; {@code fixedWindow} is the synchronized per-key window it replaced, kept
+ * here as the baseline. The buckets are sized so that nothing is rejected. Vary threads with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class RateLimitBenchmark {
+
+    @Param({"1", "10000"})
+    int clients;
+
+    RateLimitFilter filter;
+    FixedWindow window;
+    String[] keys;
+
+    @Setup
+    public void setUp() {
+        filter = new RateLimitFilter(true, Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ofSeconds(1), 100_000, null);
+        window = new FixedWindow(Integer.MAX_VALUE, Duration.ofSeconds(1));
+        keys = new String[clients];
+        for (int i = 0; i < clients; i++) keys[i] = "cid:client-" + i;
+    }
+
+    @Benchmark
+    public long tokenBucket() {
+        String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        long now = System.nanoTime();
+        return filter.bucket(key, now).tryAcquire(now);
+    }
+
+    @Benchmark
+    public int fixedWindow() {
+        return window.acquire(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+
+    // The previous RateLimitFilter logic, verbatim apart from the servlet plumbing
+    static final class FixedWindow {
+        private final int capacity;
+        private final Duration window;
+        private final Map<String, WindowCounter> windows = new ConcurrentHashMap<>();
+
+        FixedWindow(int capacity, Duration window) {
+            this.capacity = capacity;
+            this.window = window;
+        }
+
+        int acquire(String key) {
+            WindowCounter counter = windows.computeIfAbsent(key, k -> new WindowCounter(System.currentTimeMillis()));
+            long now = System.currentTimeMillis();
+            synchronized (counter) {
+                if (now - counter.startMs >= window.toMillis()) {
+                    counter.startMs = now;
+                    counter.count.set(0);
+                }
+                int c = counter.count.incrementAndGet();
+                return c > capacity ? -1 : Math.max(0, capacity - c);
+            }
+        }
+
+        private static class WindowCounter {
+            volatile long startMs;
+            AtomicInteger count = new AtomicInteger();
+            WindowCounter(long startMs) { this.startMs = startMs; }
+        }
+    }
+}
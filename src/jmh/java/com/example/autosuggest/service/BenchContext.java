@@ -0,0 +1,95 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.AutosuggestApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Boots the application without a web server against a private in-memory database and fills {@code people}
+ * with {@code size} synthetic names (the same root x suffix scheme as the JUnit benchmarks), then rebuilds
+ * every index the configured engine serves from.
+ */
+final class BenchContext {
+
+    static final String[] ROOTS = {"Micro", "Macro", "Alpha", "Beta", "Gamma", "Delta", "Omega", "Zebra",
+            "Quantum", "Quark", "Apple", "Amazon", "Google", "Meta", "Netflix", "Nvidia",
+            "Oracle", "OpenAI", "OpenSearch", "Microscope", "Microsoft", "Microtek", "Microlabs"};
+    static final String[] SUFFIXES = {"soft", "tek", "scope", " lens", " systems", " labs", " corp", " inc",
+            " ltd", " group", " holdings", " network", " tech", " solutions", " devices", " energy",
+            " data", " cloud", " ai", " robotics", " analytics", " digital"};
+
+    private BenchContext() {
+    }
+
+    static ConfigurableApplicationContext start(String engine, boolean cache, int size) {
+        return start(engine, cache, size, Map.of());
+    }
+
+    static ConfigurableApplicationContext start(String engine, boolean cache, int size, Map<String, Object> extra) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("spring.datasource.url", "jdbc:sqlite:file:jmh?mode=memory&cache=shared");
+        props.put("spring.jdbc.template.query-timeout", 60);
+        props.put("logging.level.root", "WARN");
+        props.put("suggest.engine", engine);
+        props.put("suggest.cache.enabled", cache);
+        props.put("suggest.cache.refreshAhead.enabled", false);
+        props.put("suggest.cache.invalidation.enabled", false);
+        props.put("suggest.defaults.enabled", false);
+        props.put("suggest.fts.trigram.enabled", true);
+        props.put("suggest.fuzzy.enabled", true);
+        props.put("suggest.fuzzy.refreshInterval", "PT0S");
+        props.put("suggest.snapshot.pollInterval", "PT0S");
+        try {
+            props.put("suggest.snapshot.dir", Files.createTempDirectory("jmh-snapshots").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Large CONTAINS scans are slow by design; keep the breaker from turning them into fallbacks
+        props.put("resilience4j.circuitbreaker.instances.suggest-db.slowCallDurationThreshold", "60s");
+        props.put("resilience4j.circuitbreaker.instances.suggest-db.failureRateThreshold", 100);
+        props.putAll(extra);
+
+        // As arguments rather than default properties, so they win over the test application.yml on the classpath
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        ConfigurableApplicationContext ctx = new SpringApplicationBuilder(AutosuggestApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+        ctx.getBean(TransactionTemplate.class)
+                .executeWithoutResult(tx -> load(ctx.getBean(JdbcTemplate.class), size));
+        ctx.getBean(FtsAdminService.class).rebuild();
+        ctx.getBean(MemoryTrieIndex.class).reload();
+        ctx.getBean(MemoryFuzzyIndex.class).reload();
+        if (engine.equals("mmap-snapshot")) ctx.getBean(MmapSnapshotIndex.class).build();
+        return ctx;
+    }
+
+    private static void load(JdbcTemplate jdbc, int size) {
+        jdbc.execute("DELETE FROM people");
+        int pairs = ROOTS.length * SUFFIXES.length;
+        int popMax = Math.max(10, (int) Math.sqrt(size));
+        List<Object[]> batch = new ArrayList<>(10_000);
+        for (int id = 1; id <= size; id++) {
+            int pair = (id - 1) % pairs;
+            String name = ROOTS[pair / SUFFIXES.length] + SUFFIXES[pair % SUFFIXES.length] + " " + (id - 1) / pairs;
+            batch.add(new Object[]{id, name, id % popMax});
+            if (batch.size() >= 10_000) {
+                jdbc.batchUpdate("INSERT INTO people(id, name, popularity) VALUES(?,?,?)", batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbc.batchUpdate("INSERT INTO people(id, name, popularity) VALUES(?,?,?)", batch);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The pieces around each query, in isolation: building the FTS5 MATCH expression, mapping JDBC rows into
+ * {@link Suggestion}s (per-row Map vs typed RowMapper), and writing the response body (Jackson vs the cache
+ * entry's pre-serialized bytes). Use {@code -prof gc} to see the per-call garbage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({org.openjdk.jmh.annotations.Mode.Throughput, org.openjdk.jmh.annotations.Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuildingBenchmark {
+
+    static final List<String> INPUTS = List.of("micro", "Micro Soft", "open-ai (labs)", "  zebra   \"cloud\" ",
+            "o'reilly media", "quantum+data:2");
+
+    private static final String SQL = "SELECT name, score FROM bench_rows ORDER BY id LIMIT :limit";
+
+    // Rows per query: the usual page, and the MAX_LIMIT the cache loads at
+    @Param({"10", "50"})
+    int rows;
+
+    SingleConnectionDataSource ds;
+    NamedParameterJdbcTemplate jdbc;
+    MapSqlParameterSource params;
+    ObjectMapper mapper;
+    List<Suggestion> list;
+    CachedSuggestions.Slice slice;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ds = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        JdbcTemplate plain = new JdbcTemplate(ds);
+        plain.execute("CREATE TABLE bench_rows(id INTEGER PRIMARY KEY, name TEXT NOT NULL, score REAL)");
+        for (int i = 0; i < rows; i++) {
+            String name = BenchContext.ROOTS[i % BenchContext.ROOTS.length]
+                    + BenchContext.SUFFIXES[i % BenchContext.SUFFIXES.length] + " " + i;
+            plain.update("INSERT INTO bench_rows VALUES(?,?,?)", i, name, -1.5 - i * 0.01);
+        }
+        jdbc = new NamedParameterJdbcTemplate(plain);
+        params = new MapSqlParameterSource("limit", rows);
+
+        mapper = new ObjectMapper();
+        list = new ArrayList<>(jdbc.query(SQL, params, SuggestService.SCORED_ROW));
+        slice = new CachedSuggestions(list, false).slice(rows);
+        slice.writeJson(mapper, OutputStream.nullOutputStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ds.destroy();
+    }
+
+    @Benchmark
+    public String ftsMatch() {
+        String q = INPUTS.get(next++ % INPUTS.size());
+        return SuggestService.buildFtsMatch(SuggestService.sanitizeFts5(q), SuggestService.Mode.PREFIX);
+    }
+
+    // What every engine did before the typed mappers: one LinkedCaseInsensitiveMap per row, then a stream
+    @Benchmark
+    public List<Suggestion> rowsViaMaps() {
+        return jdbc.queryForList(SQL, params).stream()
+                .map(r -> new Suggestion(
+                        Objects.toString(r.get("name"), null),
+                        r.get("score") == null ? null : ((Number) r.get("score")).doubleValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Suggestion> rowsTyped() {
+        return jdbc.query(SQL, params, SuggestService.SCORED_ROW);
+    }
+
+    @Benchmark
+    public void jsonJackson() throws IOException {
+        mapper.writeValue(OutputStream.nullOutputStream(), list);
+    }
+
+    @Benchmark
+    public void jsonPreserialized() throws IOException {
+        slice.writeJson(mapper, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cached path of {@link SuggestService#suggest}: a hit (normalize, lookup, slice) and a miss
+ * (load at MAX_LIMIT through the single-flight, then publish). The miss clears the cache first so no shorter
+ * prefix can be refined from; that clear is part of the measured cost but is tiny next to the query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({org.openjdk.jmh.annotations.Mode.Throughput, org.openjdk.jmh.annotations.Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestCacheBenchmark {
+
+    @Param({"sqlite-like", "sqlite-fts"})
+    String engine;
+
+    @Param({"10000", "100000"})
+    int size;
+
+    ConfigurableApplicationContext ctx;
+    SuggestService service;
+    SuggestCache cache;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchContext.start(engine, true, size);
+        service = ctx.getBean(SuggestService.class);
+        cache = ctx.getBean(SuggestCache.class);
+        for (String q : SuggestServiceBenchmark.PREFIX) service.suggest(q, 10, SuggestService.Mode.PREFIX);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public List<Suggestion> hit() {
+        String q = SuggestServiceBenchmark.PREFIX.get(next++ % SuggestServiceBenchmark.PREFIX.size());
+        return service.suggest(q, 10, SuggestService.Mode.PREFIX);
+    }
+
+    @Benchmark
+    public List<Suggestion> miss() {
+        String q = SuggestServiceBenchmark.PREFIX.get(next++ % SuggestServiceBenchmark.PREFIX.size());
+        cache.invalidateAll();
+        return service.suggest(q, 10, SuggestService.Mode.PREFIX);
+    }
+}
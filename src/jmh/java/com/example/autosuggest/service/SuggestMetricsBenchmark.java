@@ -0,0 +1,113 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the request metrics cost. {@code perCallLookup} is how {@link SuggestService} used to record a request
+ * ({@code Timer.builder(...).register()} and {@code counter(...)} every time: tag arrays, a sort and a registry
+ * map lookup); {@code preRegistered} is {@link SuggestMetrics}, and {@code preRegisteredWithStages} adds the two
+ * stage clocks and records a cache hit makes. {@code clockRead} is the floor. Run with and without
+ * {@code histogram} to see the bucket bookkeeping.
+ * <p>
+ * {@code cachedSuggest} is the end-to-end check: a cache hit through {@code suggest()} with stage timings on and
+ * off, which is the cheapest (so the most sensitive) request the service serves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({org.openjdk.jmh.annotations.Mode.AverageTime, org.openjdk.jmh.annotations.Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuggestMetricsBenchmark {
+
+    @Param({"true", "false"})
+    boolean histogram;
+
+    MeterRegistry registry;
+    SuggestMetrics metrics;
+    long nanos = 120_000;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new SuggestMetrics("sqlite-like", false, true, histogram, "1ms,5ms,10ms,25ms,50ms,100ms,250ms", registry);
+    }
+
+    @Benchmark
+    public long clockRead() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void perCallLookup() {
+        Timer.builder("suggest.query")
+                .tags("engine", "sqlite-like", "mode", SuggestService.Mode.PREFIX.name().toLowerCase(), "cache", "hit")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        registry.counter("suggest.results", "engine", "sqlite-like", "mode", SuggestService.Mode.PREFIX.name().toLowerCase())
+                .increment(10);
+    }
+
+    @Benchmark
+    public void preRegistered() {
+        metrics.query(SuggestService.Mode.PREFIX, "hit", nanos, 10);
+    }
+
+    @Benchmark
+    public void preRegisteredWithStages() {
+        long t0 = System.nanoTime();
+        long t1 = System.nanoTime();
+        metrics.stage(SuggestMetrics.Stage.NORMALIZE, t1 - t0);
+        metrics.stage(SuggestMetrics.Stage.CACHE, System.nanoTime() - t1);
+        metrics.query(SuggestService.Mode.PREFIX, "hit", nanos, 10);
+    }
+
+    @State(Scope.Benchmark)
+    public static class App {
+
+        @Param({"true", "false"})
+        boolean stages;
+
+        ConfigurableApplicationContext ctx;
+        SuggestService service;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ctx = BenchContext.start("sqlite-like", true, 10_000, Map.of("suggest.metrics.stages.enabled", stages));
+            service = ctx.getBean(SuggestService.class);
+            for (String q : SuggestServiceBenchmark.PREFIX) service.suggest(q, 10, SuggestService.Mode.PREFIX);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            ctx.close();
+        }
+    }
+
+    @Benchmark
+    public List<Suggestion> cachedSuggest(App app) {
+        String q = SuggestServiceBenchmark.PREFIX.get(app.next++ % SuggestServiceBenchmark.PREFIX.size());
+        return app.service.suggest(q, 10, SuggestService.Mode.PREFIX);
+    }
+}
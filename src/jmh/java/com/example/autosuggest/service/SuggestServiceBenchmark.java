@@ -0,0 +1,73 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SuggestService#suggest} end to end (circuit breaker proxy included) with the cache off, so every call
+ * reaches the engine. Throughput plus SampleTime for p50/p99; run with {@code -prof gc} for allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({org.openjdk.jmh.annotations.Mode.Throughput, org.openjdk.jmh.annotations.Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestServiceBenchmark {
+
+    // Per mode, what a user types: prefixes, mid-word fragments, and misspellings
+    static final List<String> PREFIX = List.of("mic", "micr", "micro", "mac", "alp", "gam", "quan", "goog", "nvid", "open");
+    static final List<String> CONTAINS = List.of("soft", "tek 1", "labs", "cloud 4", "robotics", "ebra ai", "data 2");
+    static final List<String> FUZZY = List.of("mikro", "gogle", "amazn", "nvidai", "orcale", "quantom", "zebar");
+
+    @Param({"sqlite-like", "sqlite-fts", "memory-trie", "mmap-snapshot"})
+    String engine;
+
+    @Param({"PREFIX", "CONTAINS", "FUZZY"})
+    SuggestService.Mode mode;
+
+    @Param({"10000", "100000"})
+    int size;
+
+    ConfigurableApplicationContext ctx;
+    SuggestService service;
+    List<String> queries;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchContext.start(engine, false, size);
+        service = ctx.getBean(SuggestService.class);
+        queries = switch (mode) {
+            case PREFIX -> PREFIX;
+            case CONTAINS -> CONTAINS;
+            case FUZZY -> FUZZY;
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public List<Suggestion> suggest() {
+        String q = queries.get(next++ % queries.size());
+        return service.suggest(q, 10, mode);
+    }
+}
@@ -1,7 +1,11 @@
 package com.example.autosuggest.api;
 
+import com.example.autosuggest.service.ImportInProgressException;
+import com.example.autosuggest.service.OverloadedException;
+import com.example.autosuggest.service.QueryCancelledException;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -37,6 +41,25 @@ public class ApiExceptionHandler {
                 .body(new ErrorResponse("Bad Request", msg, List.of(msg)));
     }
 
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleSaturated(OverloadedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse("Service Unavailable", ex.getMessage(), List.of()));
+    }
+
+    @ExceptionHandler(QueryCancelledException.class)
+    public ResponseEntity<ErrorResponse> handleCancelled(QueryCancelledException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new ErrorResponse("Conflict", ex.getMessage(), List.of()));
+    }
+
+    @ExceptionHandler(ImportInProgressException.class)
+    public ResponseEntity<ErrorResponse> handleImportInProgress(ImportInProgressException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new ErrorResponse("Conflict", ex.getMessage(), List.of()));
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ErrorResponse> handleIllegalArg(IllegalArgumentException ex) {
         String msg = ex.getMessage() == null ? "Invalid request" : ex.getMessage();
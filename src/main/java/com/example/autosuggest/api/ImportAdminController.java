@@ -0,0 +1,48 @@
+package com.example.autosuggest.api;
+
+import com.example.autosuggest.service.BulkImportService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequestMapping("/admin/import")
+public class ImportAdminController {
+
+    private final BulkImportService imports;
+
+    public ImportAdminController(BulkImportService imports) {
+        this.imports = imports;
+    }
+
+    // The body is streamed, never buffered: curl -T people.ndjson.gz -H 'Content-Encoding: gzip' .../admin/import
+    @PostMapping
+    public ResponseEntity<BulkImportService.Result> importRows(
+            @RequestParam(value = "dict", required = false) String dict,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            InputStream body
+    ) throws IOException {
+        BulkImportService.Format f = format != null ? BulkImportService.Format.of(format)
+                : contentType != null && contentType.contains("csv") ? BulkImportService.Format.CSV
+                : BulkImportService.Format.NDJSON;
+        InputStream in = "gzip".equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(body, 65536) : body;
+        return ResponseEntity.ok(imports.importRows(dict, f, in));
+    }
+
+    @GetMapping
+    public ResponseEntity<BulkImportService.Progress> progress() {
+        BulkImportService.Progress p = imports.progress();
+        return p == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(p);
+    }
+}
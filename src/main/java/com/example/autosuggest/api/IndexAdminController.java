@@ -0,0 +1,49 @@
+package com.example.autosuggest.api;
+
+import com.example.autosuggest.service.MemoryFuzzyIndex;
+import com.example.autosuggest.service.MemoryTrieIndex;
+import com.example.autosuggest.service.MmapSnapshotIndex;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/index")
+public class IndexAdminController {
+
+    private final MemoryTrieIndex trie;
+    private final MmapSnapshotIndex snapshot;
+    private final MemoryFuzzyIndex fuzzy;
+
+    public IndexAdminController(MemoryTrieIndex trie, MmapSnapshotIndex snapshot, MemoryFuzzyIndex fuzzy) {
+        this.trie = trie;
+        this.snapshot = snapshot;
+        this.fuzzy = fuzzy;
+    }
+
+    @PostMapping("/trie/reload")
+    public ResponseEntity<Void> reloadTrie() {
+        trie.reload();
+        return ResponseEntity.accepted().build();
+    }
+
+    @PostMapping("/fuzzy/reload")
+    public ResponseEntity<Void> reloadFuzzy() {
+        fuzzy.reload();
+        return ResponseEntity.accepted().build();
+    }
+
+    @PostMapping("/snapshot/build")
+    public ResponseEntity<Map<String, Long>> buildSnapshot() {
+        return ResponseEntity.ok(Map.of("version", snapshot.build()));
+    }
+
+    @PostMapping("/snapshot/reload")
+    public ResponseEntity<Map<String, Long>> reloadSnapshot() {
+        snapshot.loadLatest();
+        return ResponseEntity.ok(Map.of("version", snapshot.version()));
+    }
+}
@@ -1,22 +1,32 @@
 package com.example.autosuggest.api;
 
+import com.example.autosuggest.model.SuggestQuery;
 import com.example.autosuggest.model.Suggestion;
 import com.example.autosuggest.model.TrackRequest;
+import com.example.autosuggest.service.FallbackSuggestions;
+import com.example.autosuggest.service.QueryCancellation;
+import com.example.autosuggest.service.SuggestBatchService;
 import com.example.autosuggest.service.SuggestService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -24,12 +34,20 @@ import java.util.List;
 @Validated
 public class SuggestController {
 
+    static final String FALLBACK_HEADER = "X-Suggest-Fallback";
+
     private final SuggestService service;
+    private final SuggestBatchService batchService;
+    private final QueryCancellation cancellation;
     private final boolean defaultsEnabled;
 
     public SuggestController(SuggestService service,
+                             SuggestBatchService batchService,
+                             QueryCancellation cancellation,
                              @Value("${suggest.defaults.enabled:false}") boolean defaultsEnabled) {
         this.service = service;
+        this.batchService = batchService;
+        this.cancellation = cancellation;
         this.defaultsEnabled = defaultsEnabled;
     }
 
@@ -37,9 +55,41 @@ public class SuggestController {
     public ResponseEntity<List<Suggestion>> suggest(
             @RequestParam("q") @NotBlank @Size(min = 2, max = 100) String q,
             @RequestParam(value = "limit", required = false, defaultValue = "10") @Min(1) @Max(50) int limit,
-            @RequestParam(value = "mode", required = false, defaultValue = "PREFIX") SuggestService.Mode mode
+            @RequestParam(value = "mode", required = false, defaultValue = "PREFIX") SuggestService.Mode mode,
+            @RequestParam(value = "dict", required = false) @Size(max = 64) String dict,
+            @RequestHeader(value = "X-Suggest-Session", required = false) @Size(max = 100) String session,
+            HttpServletRequest request
+    ) {
+        if (session == null || session.isBlank()) {
+            return respond(service.suggest(dict, q, limit, mode));
+        }
+        // A newer request from the same client with the same session id cancels this one if it is still running
+        try (QueryCancellation.Ticket ignored = cancellation.open(sessionKey(request, session))) {
+            return respond(service.suggest(dict, q, limit, mode));
+        }
+    }
+
+    // The header alone is guessable; scoped to the caller, it can only ever cancel the caller's own queries
+    private static String sessionKey(HttpServletRequest request, String session) {
+        Principal user = request.getUserPrincipal();
+        String client = user != null ? "user:" + user.getName() : "ip:" + request.getRemoteAddr();
+        return "http:" + client + ":" + session;
+    }
+
+    // Degraded answers (breaker open, DB failing) say where they came from
+    private static ResponseEntity<List<Suggestion>> respond(List<Suggestion> result) {
+        if (result instanceof FallbackSuggestions fallback) {
+            return ResponseEntity.ok().header(FALLBACK_HEADER, fallback.source()).body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    // Several queries in one round trip; same rules per entry as GET /suggest, results in request order
+    @PostMapping("/batch")
+    public ResponseEntity<List<List<Suggestion>>> batch(
+            @RequestBody @NotEmpty @Size(max = 50) List<@NotNull @Valid SuggestQuery> queries
     ) {
-        return ResponseEntity.ok(service.suggest(q, limit, mode));
+        return ResponseEntity.ok(batchService.suggest(queries));
     }
 
     @GetMapping("/defaults")
@@ -57,4 +107,10 @@ public class SuggestController {
         service.trackSelection(req.id(), req.value());
         return ResponseEntity.accepted().build();
     }
+
+    @PostMapping("/track/batch")
+    public ResponseEntity<Void> trackBatch(@RequestBody @NotEmpty @Size(max = 1000) List<TrackRequest> req) {
+        service.trackSelections(req);
+        return ResponseEntity.accepted().build();
+    }
 }
@@ -0,0 +1,300 @@
+package com.example.autosuggest.api;
+
+import com.example.autosuggest.config.RateLimitFilter;
+import com.example.autosuggest.model.SuggestQuery;
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.CachedSuggestions;
+import com.example.autosuggest.service.FallbackSuggestions;
+import com.example.autosuggest.service.OverloadedException;
+import com.example.autosuggest.service.PrefixRefinement;
+import com.example.autosuggest.service.QueryCancellation;
+import com.example.autosuggest.service.QueryCancelledException;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keystroke sessions on {@code /suggest/ws}. The client keeps one socket open and sends
+ * {@code {"seq":n,"q":...,"limit":...,"mode":...}} per keystroke (same rules as {@code GET /suggest});
+ * the server answers {@code {"seq":n,"q":...,"items":[...]}} or {@code {"seq":n,"error":...,"message":...}}.
+ * <p>
+ * Latest wins: a session runs at most one query at a time and only remembers the newest keystroke that
+ * arrived meanwhile, so prefixes typed past while a query ran are never looked up, and a query superseded
+ * before it finished is cancelled (see {@link QueryCancellation}) or its result dropped instead of sent.
+ * A session also keeps its last complete candidate set for a short while and refines the next, longer
+ * prefix from it without going to the service. Every keystroke takes a token from the client's
+ * {@link RateLimitFilter} bucket, keyed from the handshake like a {@code GET /suggest} request.
+ */
+@Component
+@ConditionalOnProperty(name = "suggest.ws.enabled", havingValue = "true", matchIfMissing = true)
+public class SuggestWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(SuggestWebSocketHandler.class);
+
+    record ResultFrame(long seq, String q, List<Suggestion> items) {}
+
+    record ErrorFrame(long seq, String error, String message) {}
+
+    private final SuggestService service;
+    private final QueryCancellation cancellation;
+    private final RateLimitFilter rateLimit;
+    private final ObjectMapper mapper;
+    private final Validator validator;
+    private final String engine;
+    private final long reuseForNanos;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Each session drains its own keystrokes, one task at a time, so the queue never outgrows the session count
+    private final ExecutorService workers;
+    private final Counter received;
+    private final Counter superseded;
+    private final Counter refined;
+    private final Counter queried;
+    private final Counter invalid;
+    private final Counter limited;
+
+    public SuggestWebSocketHandler(SuggestService service,
+                                   QueryCancellation cancellation,
+                                   RateLimitFilter rateLimit,
+                                   ObjectMapper mapper,
+                                   Validator validator,
+                                   @Value("${suggest.engine:sqlite-like}") String engine,
+                                   @Value("${suggest.ws.reuseFor:PT10S}") Duration reuseFor,
+                                   @Value("${suggest.ws.threads:16}") int threads,
+                                   @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                   MeterRegistry meterRegistry) {
+        this.service = service;
+        this.cancellation = cancellation;
+        this.rateLimit = rateLimit;
+        this.mapper = mapper;
+        this.validator = validator;
+        this.engine = engine;
+        this.reuseForNanos = reuseFor.toNanos();
+        this.workers = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("suggest-ws-", 0).factory())
+                : Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+                    Thread t = new Thread(r, "suggest-ws");
+                    t.setDaemon(true);
+                    return t;
+                });
+        if (meterRegistry != null) {
+            meterRegistry.gaugeMapSize("suggest.ws.sessions", List.of(), sessions);
+            this.received = meterRegistry.counter("suggest.ws.keystrokes", "result", "received");
+            this.superseded = meterRegistry.counter("suggest.ws.keystrokes", "result", "superseded");
+            this.refined = meterRegistry.counter("suggest.ws.keystrokes", "result", "refined");
+            this.queried = meterRegistry.counter("suggest.ws.keystrokes", "result", "queried");
+            this.invalid = meterRegistry.counter("suggest.ws.keystrokes", "result", "invalid");
+            this.limited = meterRegistry.counter("suggest.ws.keystrokes", "result", "limited");
+        } else {
+            this.received = null;
+            this.superseded = null;
+            this.refined = null;
+            this.queried = null;
+            this.invalid = null;
+            this.limited = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession ws) {
+        // Sends come from the worker and from the container thread (errors), so serialize them
+        HttpHeaders headers = ws.getHandshakeHeaders();
+        InetSocketAddress remote = ws.getRemoteAddress();
+        String clientKey = RateLimitFilter.clientKey(headers.getFirst("X-Client-Id"), headers.getFirst("X-Forwarded-For"),
+                remote == null ? null : remote.getHostString());
+        sessions.put(ws.getId(),
+                new Session(new ConcurrentWebSocketSessionDecorator(ws, 5_000, 256 * 1024), clientKey));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession ws, CloseStatus status) {
+        Session session = sessions.remove(ws.getId());
+        if (session != null) {
+            session.pending.set(null);
+            cancellation.cancel(session.ticketKey);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession ws, TextMessage message) throws IOException {
+        Session session = sessions.get(ws.getId());
+        if (session == null) return;
+        Keystroke keystroke;
+        try {
+            keystroke = parse(message.getPayload(), session);
+        } catch (IllegalArgumentException e) {
+            if (received != null) received.increment();
+            if (invalid != null) invalid.increment();
+            session.send(mapper.writeValueAsString(new ErrorFrame(session.lastSeq, "Bad Request", e.getMessage())));
+            return;
+        }
+        if (!rateLimit.tryAcquire(session.clientKey)) {
+            if (received != null) received.increment();
+            if (limited != null) limited.increment();
+            session.send(mapper.writeValueAsString(new ErrorFrame(keystroke.seq, "Too Many Requests", "Rate limit exceeded")));
+            return;
+        }
+        // Before publishing the keystroke, so the cancel can only hit the lookup this one supersedes
+        if (session.running.get()) cancellation.cancel(session.ticketKey);
+        if (session.pending.getAndSet(keystroke) != null && superseded != null) {
+            // Never looked up: a newer keystroke replaced it while the previous query was running
+            superseded.increment();
+        }
+        // Counted once published, so "received" never runs ahead of what the worker can see
+        if (received != null) received.increment();
+        if (session.running.compareAndSet(false, true)) {
+            workers.execute(() -> drain(session));
+        }
+    }
+
+    private Keystroke parse(String payload, Session session) {
+        JsonNode node;
+        SuggestQuery query;
+        try {
+            node = mapper.readTree(payload);
+            query = mapper.treeToValue(node, SuggestQuery.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed message");
+        }
+        if (query == null) throw new IllegalArgumentException("Malformed message");
+        long seq = node.path("seq").canConvertToLong() ? node.path("seq").asLong() : session.lastSeq + 1;
+        session.lastSeq = seq;
+        Set<ConstraintViolation<SuggestQuery>> violations = validator.validate(query);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<SuggestQuery> v = violations.iterator().next();
+            throw new IllegalArgumentException(v.getPropertyPath() + ": " + v.getMessage());
+        }
+        return new Keystroke(seq, query.q().trim(), query.limitOrDefault(), query.modeOrDefault());
+    }
+
+    private void drain(Session session) {
+        while (true) {
+            Keystroke k = session.pending.getAndSet(null);
+            if (k == null) {
+                session.running.set(false);
+                // A keystroke that arrived between the poll and the flag reset would otherwise be stranded
+                if (session.pending.get() == null || !session.running.compareAndSet(false, true)) return;
+                continue;
+            }
+            try (QueryCancellation.Ticket ignored = cancellation.open(session.ticketKey)) {
+                List<Suggestion> items = lookup(session, k);
+                if (session.pending.get() != null) {
+                    if (superseded != null) superseded.increment();
+                    continue;
+                }
+                session.send(mapper.writeValueAsString(new ResultFrame(k.seq, k.q, items)));
+            } catch (QueryCancelledException e) {
+                if (superseded != null) superseded.increment();
+            } catch (OverloadedException e) {
+                session.trySend(new ErrorFrame(k.seq, "Service Unavailable", e.getMessage()));
+            } catch (IOException | RuntimeException e) {
+                log.debug("Keystroke session {} failed: {}", session.ws.getId(), e.toString());
+                session.trySend(new ErrorFrame(k.seq, "Internal Server Error", "Lookup failed"));
+            }
+        }
+    }
+
+    private List<Suggestion> lookup(Session session, Keystroke k) {
+        String keyQ = SuggestCache.normalize(k.q);
+        Candidates last = session.candidates;
+        if (last != null && last.reusableFor(keyQ, k.mode, System.nanoTime())) {
+            if (refined != null) refined.increment();
+            CachedSuggestions narrowed = PrefixRefinement.refine(last.set, keyQ);
+            session.candidates = new Candidates(keyQ, k.mode, narrowed, last.loadedAt);
+            return narrowed.slice(k.limit);
+        }
+        if (queried != null) queried.increment();
+        boolean refinable = PrefixRefinement.supports(engine, k.mode) && PrefixRefinement.isPlain(k.q);
+        // Ask for the full set once, so the following keystrokes can be answered from it
+        List<Suggestion> rows = service.suggest(k.q, refinable ? SuggestService.MAX_LIMIT : k.limit, k.mode);
+        // A fallback answer (stale, partial or empty) is not a complete candidate set; don't build on it
+        session.candidates = refinable && !(rows instanceof FallbackSuggestions) && !rows.isEmpty()
+                && rows.size() < SuggestService.MAX_LIMIT
+                ? new Candidates(keyQ, k.mode, new CachedSuggestions(List.copyOf(rows), true), System.nanoTime())
+                : null;
+        return rows.size() > k.limit ? rows.subList(0, k.limit) : rows;
+    }
+
+    private record Keystroke(long seq, String q, int limit, SuggestService.Mode mode) {}
+
+    private final class Candidates {
+        final String keyQ;
+        final SuggestService.Mode mode;
+        final CachedSuggestions set;
+        final long loadedAt;
+
+        Candidates(String keyQ, SuggestService.Mode mode, CachedSuggestions set, long loadedAt) {
+            this.keyQ = keyQ;
+            this.mode = mode;
+            this.set = set;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean reusableFor(String q, SuggestService.Mode m, long now) {
+            return m == mode && q.length() >= keyQ.length() && q.startsWith(keyQ)
+                    && PrefixRefinement.isPlain(q) && now - loadedAt < reuseForNanos;
+        }
+    }
+
+    private final class Session {
+        final WebSocketSession ws;
+        final String ticketKey;
+        final String clientKey;
+        final AtomicReference<Keystroke> pending = new AtomicReference<>();
+        final AtomicBoolean running = new AtomicBoolean();
+        volatile long lastSeq;
+        // Only touched by the draining worker; running hands it over with a happens-before edge
+        Candidates candidates;
+
+        Session(WebSocketSession ws, String clientKey) {
+            this.ws = ws;
+            this.ticketKey = "ws:" + ws.getId();
+            this.clientKey = clientKey;
+        }
+
+        void send(String json) throws IOException {
+            if (ws.isOpen()) ws.sendMessage(new TextMessage(json));
+        }
+
+        void trySend(ErrorFrame error) {
+            try {
+                send(mapper.writeValueAsString(error));
+            } catch (IOException | RuntimeException e) {
+                log.debug("Could not report error to session {}: {}", ws.getId(), e.toString());
+            }
+        }
+    }
+}
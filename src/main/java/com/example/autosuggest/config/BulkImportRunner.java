@@ -0,0 +1,73 @@
+package com.example.autosuggest.config;
+
+import com.example.autosuggest.service.BulkImportService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command-line bulk import through {@link BulkImportService}, enabled by {@code suggest.import.input} (a file,
+ * gzipped if it ends in {@code .gz} in any case, or {@code -} for stdin):
+ * <pre>
+ * ./mvnw spring-boot:run -Dspring-boot.run.arguments="--suggest.import.input=people.csv.gz --suggest.import.dict=people
+ *     --spring.main.web-application-type=none"
+ * </pre>
+ * {@code suggest.import.format} defaults to {@code csv} for {@code .csv[.gz]} files and {@code ndjson} otherwise.
+ * Prints the result, then the application exits unless {@code suggest.import.exit=false}.
+ */
+@Component
+public class BulkImportRunner implements ApplicationRunner {
+
+    private final BulkImportService imports;
+    private final ConfigurableApplicationContext context;
+    private final String input;
+    private final String dict;
+    private final String format;
+    private final boolean exit;
+
+    public BulkImportRunner(BulkImportService imports,
+                            ConfigurableApplicationContext context,
+                            @Value("${suggest.import.input:}") String input,
+                            @Value("${suggest.import.dict:}") String dict,
+                            @Value("${suggest.import.format:}") String format,
+                            @Value("${suggest.import.exit:true}") boolean exit) {
+        this.imports = imports;
+        this.context = context;
+        this.input = input == null ? "" : input;
+        this.dict = dict == null || dict.isBlank() ? null : dict;
+        this.format = format == null ? "" : format;
+        this.exit = exit;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (input.isBlank()) return;
+        String name = input.toLowerCase(Locale.ROOT);
+        BulkImportService.Format f = !format.isBlank() ? BulkImportService.Format.of(format)
+                : name.endsWith(".csv") || name.endsWith(".csv.gz") ? BulkImportService.Format.CSV
+                : BulkImportService.Format.NDJSON;
+        BulkImportService.Result result;
+        try (InputStream in = open(input)) {
+            result = imports.importRows(dict, f, in);
+        }
+        System.out.printf("Imported %d rows (%d skipped) into %s in %.1f s (%.0f rows/s, %d batches); indexes rebuilt in %.1f s%n",
+                result.rows(), result.skipped(), result.dict(), result.loadMillis() / 1000.0, result.rowsPerSecond(),
+                result.batches(), result.rebuildMillis() / 1000.0);
+        if (exit) System.exit(SpringApplication.exit(context, () -> 0));
+    }
+
+    private static InputStream open(String input) throws IOException {
+        InputStream in = "-".equals(input) ? System.in : Files.newInputStream(Path.of(input));
+        return input.toLowerCase(Locale.ROOT).endsWith(".gz") ? new GZIPInputStream(in, 65536) : in;
+    }
+}
@@ -1,8 +1,13 @@
 package com.example.autosuggest.config;
 
+import com.example.autosuggest.service.CacheInvalidationService;
+import com.example.autosuggest.service.FallbackSuggestions;
 import com.example.autosuggest.service.SuggestService;
+import com.example.autosuggest.service.WarmCacheStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
@@ -10,10 +15,23 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+/**
+ * Fills the suggestion cache before readiness turns UP.
+ * <p>
+ * If {@link WarmCacheStore} left a file younger than {@code maxAge}, its entries (the previous run's hottest keys,
+ * across modes) are put back as they were and the changes logged since the file was saved are applied to them.
+ * An older file, or one whose changes are no longer all in the log, still says what users type, so its keys are
+ * queried again instead. Only without a file does the warm list come from
+ * {@code prefixes} or, failing that, the most common name prefixes. Queries run {@code parallelism} at a time.
+ */
 @Component
 public class CachePrewarmRunner implements ApplicationRunner {
 
@@ -21,45 +39,117 @@ public class CachePrewarmRunner implements ApplicationRunner {
 
     private final NamedParameterJdbcTemplate jdbc;
     private final SuggestService suggestService;
+    private final WarmCacheStore store;
+    private final CacheInvalidationService invalidation;
+    private final MeterRegistry meter;
     private final boolean enabled;
+    private final boolean cacheEnabled;
+    private final String engine;
     private final int prefixLen;
     private final int top;
     private final String prefixesCsv;
+    private final int parallelism;
+    private final Duration maxAge;
 
-    public CachePrewarmRunner(NamedParameterJdbcTemplate jdbc,
+    public CachePrewarmRunner(@Qualifier("suggestReadJdbc") NamedParameterJdbcTemplate jdbc,
                               SuggestService suggestService,
+                              WarmCacheStore store,
+                              CacheInvalidationService invalidation,
+                              MeterRegistry meterRegistry,
+                              @Value("${suggest.engine:sqlite-like}") String engine,
+                              @Value("${suggest.cache.enabled:true}") boolean cacheEnabled,
                               @Value("${suggest.cache.prewarm.enabled:false}") boolean enabled,
                               @Value("${suggest.cache.prewarm.prefixLen:3}") int prefixLen,
                               @Value("${suggest.cache.prewarm.top:50}") int top,
-                              @Value("${suggest.cache.prewarm.prefixes:}") String prefixesCsv) {
+                              @Value("${suggest.cache.prewarm.prefixes:}") String prefixesCsv,
+                              @Value("${suggest.cache.prewarm.parallelism:4}") int parallelism,
+                              @Value("${suggest.cache.prewarm.maxAge:PT1H}") Duration maxAge) {
         this.jdbc = jdbc;
         this.suggestService = suggestService;
+        this.store = store;
+        this.invalidation = invalidation;
+        this.meter = meterRegistry;
         this.enabled = enabled;
+        this.cacheEnabled = cacheEnabled;
+        this.engine = engine;
         this.prefixLen = prefixLen;
         this.top = top;
         this.prefixesCsv = prefixesCsv == null ? "" : prefixesCsv;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxAge = maxAge;
     }
 
+    private record Warm(String q, SuggestService.Mode mode) {}
+
     @Override
     public void run(ApplicationArguments args) {
-        if (!enabled) return;
-        List<String> prefixes = userProvidedPrefixes();
-        if (prefixes.isEmpty()) {
-            prefixes = deriveHotPrefixes(prefixLen, top);
+        if (!enabled || !cacheEnabled) return;
+        long t0 = System.nanoTime();
+        List<Warm> queries = List.of();
+        WarmCacheStore.Saved saved = store.read();
+        if (saved != null && saved.age().compareTo(maxAge) < 0 && invalidation.resumeFrom(saved.drainedSeq())) {
+            int restored = store.restore(saved);
+            // Names changed since the save are still in people_changes; drop what they affect now
+            invalidation.drain();
+            count("restored", restored);
+            log.info("Cache prewarm restored {} entries saved {}s ago", restored, saved.age().toSeconds());
+        } else if (saved != null) {
+            queries = saved.entries().stream().map(e -> new Warm(e.q(), e.mode())).toList();
+        } else if ("mmap-snapshot".equals(engine)) {
+            // PREFIX is served straight from the mapped snapshot; nothing to warm from SQLite
+            log.info("Cache prewarm skipped: engine '{}' serves prefixes from its snapshot", engine);
+        } else {
+            List<String> prefixes = userProvidedPrefixes();
+            if (prefixes.isEmpty()) {
+                prefixes = deriveHotPrefixes(prefixLen, top);
+            }
+            queries = prefixes.stream().map(p -> new Warm(p, SuggestService.Mode.PREFIX)).toList();
         }
-        int warmed = 0;
-        for (String p : prefixes) {
-            if (p == null) continue;
-            String q = p.trim();
-            if (q.length() < 2) continue;
-            try {
-                suggestService.suggest(q, 10, SuggestService.Mode.PREFIX);
-                warmed++;
-            } catch (Exception e) {
-                log.debug("Prewarm failed for prefix '{}': {}", q, e.getMessage());
+        if (!queries.isEmpty()) {
+            int warmed = warmAll(queries);
+            log.info("Cache prewarm completed: warmed {} of {} queries in {} ms", warmed, queries.size(),
+                    (System.nanoTime() - t0) / 1_000_000);
+        }
+    }
+
+    private int warmAll(List<Warm> queries) {
+        AtomicInteger warmed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger next = new AtomicInteger();
+        // Workers pull from one shared index, so at most `parallelism` queries compete for the DB gate
+        try (ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "cache-prewarm");
+            t.setDaemon(true);
+            return t;
+        })) {
+            for (int w = 0; w < parallelism; w++) {
+                workers.execute(() -> {
+                    for (int i = next.getAndIncrement(); i < queries.size(); i = next.getAndIncrement()) {
+                        Warm warm = queries.get(i);
+                        String q = warm.q() == null ? "" : warm.q().trim();
+                        if (q.length() < 2 || suggestService.isCached(q, warm.mode())) continue;
+                        try {
+                            // A breaker fallback answers without caching anything
+                            if (suggestService.suggest(q, 10, warm.mode()) instanceof FallbackSuggestions) {
+                                failed.incrementAndGet();
+                            } else {
+                                warmed.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            log.debug("Prewarm failed for '{}' ({}): {}", q, warm.mode(), e.getMessage());
+                        }
+                    }
+                });
             }
         }
-        log.info("Cache prewarm completed: warmed {} prefixes", warmed);
+        count("queried", warmed.get());
+        count("failed", failed.get());
+        return warmed.get();
+    }
+
+    private void count(String result, int n) {
+        if (meter != null && n > 0) meter.counter("suggest.cache.prewarm", "result", result).increment(n);
     }
 
     private List<String> userProvidedPrefixes() {
@@ -82,4 +172,3 @@ public class CachePrewarmRunner implements ApplicationRunner {
         return jdbc.queryForList(sql, new MapSqlParameterSource().addValue("len", len).addValue("limit", limit), String.class);
     }
 }
-
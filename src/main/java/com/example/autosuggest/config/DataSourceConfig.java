@@ -0,0 +1,126 @@
+package com.example.autosuggest.config;
+
+import com.example.autosuggest.service.CancellableJdbcTemplate;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.Properties;
+
+/**
+ * Two pools over the same database. The primary one is the writer: a single connection (so writes queue in
+ * the pool instead of fighting over SQLite's lock) used by tracking, invalidation, admin and schema init.
+ * {@code suggestReadJdbc} is a read-only pool for the suggest queries and the full-table index loads; with SQLite
+ * in WAL mode readers never wait for the writer. Both cache prepared statements per connection.
+ * Metrics come from Hikari: {@code hikaricp.connections.acquire{pool=suggest-read}} is reader wait time,
+ * {@code hikaricp.connections.pending{pool=suggest-write}} the writer queue.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    private final int statementCacheSize;
+    private final MeterRegistry meter;
+
+    public DataSourceConfig(@Value("${suggest.db.statementCacheSize:64}") int statementCacheSize,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.statementCacheSize = statementCacheSize;
+        this.meter = meterRegistry.getIfAvailable();
+    }
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    // spring.datasource.hikari.* still applies on top, e.g. to raise the pool size for a non-SQLite database
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties props) {
+        Properties pragmas = new Properties();
+        if (isSqlite(props)) {
+            pragmas.setProperty("journal_mode", "WAL");
+            pragmas.setProperty("synchronous", "NORMAL");
+            pragmas.setProperty("busy_timeout", "5000");
+        }
+        HikariDataSource ds = pool(props, "suggest-write", pragmas);
+        ds.setMaximumPoolSize(1);
+        return ds;
+    }
+
+    @Bean
+    public HikariDataSource suggestReadDataSource(DataSourceProperties props,
+                                                  @Value("${suggest.db.read.poolSize:4}") int poolSize) {
+        Properties pragmas = new Properties();
+        if (isSqlite(props)) {
+            pragmas.setProperty("busy_timeout", "5000");
+            if (props.determineUrl().contains("cache=shared")) {
+                // Shared-cache in-memory databases (tests) have no WAL; without this readers fail with
+                // SQLITE_LOCKED while the writer holds a table
+                pragmas.setProperty("read_uncommitted", "true");
+            }
+        }
+        HikariDataSource ds = pool(props, "suggest-read", pragmas);
+        ds.setMaximumPoolSize(poolSize);
+        ds.setMinimumIdle(poolSize);
+        ds.setReadOnly(!isSqlite(props));
+        if (isSqlite(props)) {
+            // sqlite-jdbc only takes the read-only flag at open time; this is the per-connection equivalent
+            ds.setConnectionInitSql("PRAGMA query_only = 1");
+        }
+        return ds;
+    }
+
+    // Declared here because a second NamedParameterJdbcTemplate bean switches off Boot's default one
+    @Bean
+    @Primary
+    public NamedParameterJdbcTemplate namedParameterJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        return new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @Bean
+    public NamedParameterJdbcTemplate suggestReadJdbc(@Qualifier("suggestReadDataSource") HikariDataSource ds,
+                                                      JdbcProperties jdbcProperties) {
+        // Lets a newer request from the same client session cancel a statement that is still running
+        JdbcTemplate jdbc = new CancellableJdbcTemplate(ds);
+        // Same spring.jdbc.template.* settings as the primary template
+        JdbcProperties.Template template = jdbcProperties.getTemplate();
+        jdbc.setFetchSize(template.getFetchSize());
+        jdbc.setMaxRows(template.getMaxRows());
+        if (template.getQueryTimeout() != null) {
+            jdbc.setQueryTimeout((int) template.getQueryTimeout().toSeconds());
+        }
+        return new NamedParameterJdbcTemplate(jdbc);
+    }
+
+    private HikariDataSource pool(DataSourceProperties props, String name, Properties driverProperties) {
+        DriverManagerDataSource driver = new DriverManagerDataSource(props.determineUrl(), driverProperties);
+        driver.setDriverClassName(props.determineDriverClassName());
+        driver.setUsername(props.determineUsername());
+        driver.setPassword(props.determinePassword());
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName(name);
+        ds.setDataSource(new StatementCachingDataSource(driver, statementCacheSize, name, meter));
+        if (meter != null) ds.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meter));
+        return ds;
+    }
+
+    private static boolean isSqlite(DataSourceProperties props) {
+        String url = props.determineUrl();
+        return url != null && url.startsWith("jdbc:sqlite:");
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.autosuggest.config;
+
+import com.example.autosuggest.service.QueryLog;
+import com.example.autosuggest.service.SuggestService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline replay of a captured {@link QueryLog} against the configured engine, enabled by
+ * {@code suggest.replay.input} (a log file or a directory of them):
+ * <pre>
+ * ./mvnw spring-boot:run -Dspring-boot.run.arguments="--suggest.replay.input=querylog --suggest.engine=sqlite-fts
+ *     --suggest.replay.speed=2 --spring.main.web-application-type=none"
+ * </pre>
+ * Entries are issued open-loop at their captured pace divided by {@code speed} ({@code 0} = as fast as
+ * {@code concurrency} allows). Response time is measured from each entry's scheduled start, so a backed-up
+ * replay shows up in the percentiles instead of silently slowing the schedule down (coordinated omission);
+ * service time is the {@code suggest()} call alone. The report also gives the cache outcome mix next to the
+ * captured one, then the application exits unless {@code suggest.replay.exit=false}.
+ */
+@Component
+public class QueryLogReplayRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLogReplayRunner.class);
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final SuggestService service;
+    private final ObjectMapper mapper;
+    private final MeterRegistry meter;
+    private final ConfigurableApplicationContext context;
+    private final String engine;
+    private final String input;
+    private final double speed;
+    private final int concurrency;
+    private final boolean exit;
+
+    public QueryLogReplayRunner(SuggestService service,
+                                ObjectMapper mapper,
+                                MeterRegistry meterRegistry,
+                                ConfigurableApplicationContext context,
+                                @Value("${suggest.engine:sqlite-like}") String engine,
+                                @Value("${suggest.replay.input:}") String input,
+                                @Value("${suggest.replay.speed:1.0}") double speed,
+                                @Value("${suggest.replay.concurrency:64}") int concurrency,
+                                @Value("${suggest.replay.exit:true}") boolean exit) {
+        this.service = service;
+        this.mapper = mapper;
+        this.meter = meterRegistry;
+        this.context = context;
+        this.engine = engine;
+        this.input = input == null ? "" : input;
+        this.speed = Math.max(0, speed);
+        this.concurrency = Math.max(1, concurrency);
+        this.exit = exit;
+    }
+
+    public record Report(String engine, double speed, int files, long replayed, long errors, Duration elapsed,
+                         Histogram responseMicros, Histogram serviceMicros, Histogram capturedMicros,
+                         Map<String, Long> cache, Map<String, Long> capturedCache) {
+
+        public String format() {
+            StringBuilder sb = new StringBuilder();
+            double secs = Math.max(1, elapsed.toMillis()) / 1000.0;
+            sb.append(String.format("Replayed %d queries from %d file(s) against %s in %.1f s (%.1f/s, speed %s), %d errors%n",
+                    replayed, files, engine, secs, replayed / secs, speed == 0 ? "max" : "x" + speed, errors));
+            sb.append(String.format("%-16s %9s %9s %9s %9s %9s  (ms)%n", "", "p50", "p90", "p99", "p99.9", "max"));
+            row(sb, "response time", responseMicros);
+            row(sb, "service time", serviceMicros);
+            row(sb, "captured", capturedMicros);
+            sb.append("cache            ").append(ratios(cache)).append(System.lineSeparator());
+            sb.append("captured cache   ").append(ratios(capturedCache)).append(System.lineSeparator());
+            return sb.toString();
+        }
+
+        private static void row(StringBuilder sb, String label, Histogram h) {
+            sb.append(String.format("%-16s %9.3f %9.3f %9.3f %9.3f %9.3f%n", label,
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMaxValue() / 1000.0));
+        }
+
+        private static String ratios(Map<String, Long> counts) {
+            long total = counts.values().stream().mapToLong(Long::longValue).sum();
+            if (total == 0) return "-";
+            StringBuilder sb = new StringBuilder();
+            counts.forEach((status, n) -> sb.append(String.format("%s %.1f%%  ", status, 100.0 * n / total)));
+            return sb.toString().trim();
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (input.isBlank()) return;
+        Report report = replay(Path.of(input));
+        System.out.print(report.format());
+        if (exit) System.exit(SpringApplication.exit(context, () -> report.errors() == 0 ? 0 : 1));
+    }
+
+    public Report replay(Path path) throws IOException {
+        Path[] files = logFiles(path);
+        Histogram response = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        Histogram serviceTime = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        Histogram captured = new Histogram(HIGHEST_MICROS, 3);
+        Map<String, Long> capturedCache = new TreeMap<>();
+        Map<String, Long> cacheBefore = cacheCounts();
+        Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        AtomicLong replayed = new AtomicLong();
+        Semaphore inFlight = new Semaphore(concurrency);
+
+        long wallStart = System.nanoTime();
+        long firstTs = -1;
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                try (InputStream in = open(file);
+                     MappingIterator<QueryLog.Entry> entries = mapper.readerFor(QueryLog.Entry.class).readValues(in)) {
+                    while (entries.hasNextValue()) {
+                        QueryLog.Entry e = entries.nextValue();
+                        if (e.q() == null) continue;
+                        captured.recordValue(Math.min(Math.max(0, e.micros()), HIGHEST_MICROS));
+                        capturedCache.merge(e.cache() == null ? "unknown" : e.cache(), 1L, Long::sum);
+                        if (firstTs < 0) firstTs = e.ts();
+                        long scheduled = speed == 0 ? System.nanoTime()
+                                : wallStart + (long) ((e.ts() - firstTs) * 1_000_000L / speed);
+                        long wait = scheduled - System.nanoTime();
+                        if (wait > 0) LockSupport.parkNanos(wait);
+                        inFlight.acquireUninterruptibly();
+                        workers.execute(() -> {
+                            long start = System.nanoTime();
+                            try {
+                                service.suggest(e.dict(), e.q(), e.limit(), e.mode());
+                            } catch (RuntimeException ex) {
+                                errors.computeIfAbsent(ex.getClass().getSimpleName(), k -> new LongAdder()).increment();
+                            } finally {
+                                long end = System.nanoTime();
+                                serviceTime.recordValue(Math.min((end - start) / 1_000, HIGHEST_MICROS));
+                                response.recordValue(Math.min((end - Math.min(scheduled, start)) / 1_000, HIGHEST_MICROS));
+                                replayed.incrementAndGet();
+                                inFlight.release();
+                            }
+                        });
+                    }
+                } catch (EOFException e) {
+                    // A file still being written ends without its gzip trailer; replay what was flushed
+                    log.debug("Replay stopped at the truncated end of {}", file);
+                }
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - wallStart);
+
+        Map<String, Long> cache = new TreeMap<>();
+        cacheCounts().forEach((status, n) -> {
+            long delta = n - cacheBefore.getOrDefault(status, 0L);
+            if (delta > 0) cache.put(status, delta);
+        });
+        long errorCount = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        if (errorCount > 0) log.warn("Replay errors by type: {}", errors);
+        return new Report(engine, speed, files.length, replayed.get(), errorCount, elapsed, response, serviceTime,
+                captured, cache, capturedCache);
+    }
+
+    // suggest.query is tagged with the cache outcome of every lookup; the delta over the run is its mix
+    private Map<String, Long> cacheCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        if (meter == null) return counts;
+        for (Timer t : meter.find("suggest.query").tag("engine", engine).timers()) {
+            counts.merge(t.getId().getTag("cache"), t.count(), Long::sum);
+        }
+        return counts;
+    }
+
+    private static Path[] logFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) return new Path[]{path};
+        try (Stream<Path> s = Files.list(path)) {
+            // Names start with the capture time, so name order is replay order
+            return s.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.endsWith(".jsonl") || name.endsWith(".jsonl.gz");
+            }).sorted().toArray(Path[]::new);
+        }
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 65536) : in;
+    }
+}
@@ -1,5 +1,10 @@
 package com.example.autosuggest.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -11,26 +16,43 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Per-client token bucket on {@code GET /suggest} and, through {@link #tryAcquire(String)}, on every keystroke
+ * sent over {@code /suggest/ws} (same bucket per client): {@code capacity} tokens, refilled continuously at
+ * {@code refillTokens} per {@code refillPeriod}. Buckets are dropped once idle long enough to have refilled
+ * completely, so forgetting one changes nothing; {@code maxKeys} bounds memory under a flood of distinct keys.
+ */
 @Component
 @Order(20)
 public class RateLimitFilter extends OncePerRequestFilter {
 
     private final boolean enabled;
-    private final int capacity;
-    private final Duration window;
-    private final Map<String, WindowCounter> windows = new ConcurrentHashMap<>();
+    private final long capacity;
+    private final long nanosPerToken;
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter rejected;
 
     public RateLimitFilter(
             @Value("${suggest.ratelimit.enabled:false}") boolean enabled,
             @Value("${suggest.ratelimit.capacity:50}") int capacity,
-            @Value("${suggest.ratelimit.window:PT1S}") Duration window) {
+            @Value("${suggest.ratelimit.refillTokens:${suggest.ratelimit.capacity:50}}") int refillTokens,
+            @Value("${suggest.ratelimit.refillPeriod:PT1S}") Duration refillPeriod,
+            @Value("${suggest.ratelimit.maxKeys:100000}") long maxKeys,
+            MeterRegistry meterRegistry) {
         this.enabled = enabled;
-        this.capacity = capacity;
-        this.window = window;
+        this.capacity = Math.max(1, capacity);
+        this.nanosPerToken = Math.max(1, refillPeriod.toNanos() / Math.max(1, refillTokens));
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(this.capacity * nanosPerToken))
+                .maximumSize(maxKeys)
+                .build();
+        if (meterRegistry != null && enabled) {
+            Gauge.builder("suggest.ratelimit.keys", buckets, Cache::estimatedSize).register(meterRegistry);
+            this.rejected = meterRegistry.counter("suggest.ratelimit.rejected");
+        } else {
+            this.rejected = null;
+        }
     }
 
     @Override
@@ -43,36 +65,45 @@ public class RateLimitFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String key = resolveKey(request);
-        WindowCounter counter = windows.computeIfAbsent(key, k -> new WindowCounter(System.currentTimeMillis()));
-        long now = System.currentTimeMillis();
-        synchronized (counter) {
-            if (now - counter.startMs >= window.toMillis()) {
-                counter.startMs = now;
-                counter.count.set(0);
-            }
-            int c = counter.count.incrementAndGet();
-            if (c > capacity) {
-                response.setStatus(429);
-                response.setContentType("application/json");
-                response.getWriter().write("{\"error\":\"Too Many Requests\",\"message\":\"Rate limit exceeded\"}");
-                return;
-            }
-            response.setHeader("X-Rate-Limit-Remaining", String.valueOf(Math.max(0, capacity - c)));
+        long now = System.nanoTime();
+        TokenBucket bucket = bucket(key, now);
+        long remaining = bucket.tryAcquire(now);
+        if (remaining < 0) {
+            if (rejected != null) rejected.increment();
+            // Rounded up, so a client that honours it finds a token waiting
+            long waitSeconds = Math.max(1, (bucket.nanosUntilToken(now) + 999_999_999L) / 1_000_000_000L);
+            response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf(waitSeconds));
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\":\"Too Many Requests\",\"message\":\"Rate limit exceeded\"}");
+            return;
         }
+        response.setHeader("X-Rate-Limit-Remaining", String.valueOf(remaining));
         filterChain.doFilter(request, response);
     }
 
+    /** Takes a token for {@code key} (see {@link #clientKey}) outside the filter chain; false when rate limited. */
+    public boolean tryAcquire(String key) {
+        if (!enabled) return true;
+        long now = System.nanoTime();
+        if (bucket(key, now).tryAcquire(now) >= 0) return true;
+        if (rejected != null) rejected.increment();
+        return false;
+    }
+
+    // Lock-free for keys already present; a new key is created once even when its first requests race
+    TokenBucket bucket(String key, long now) {
+        return buckets.get(key, k -> new TokenBucket(capacity, nanosPerToken, now));
+    }
+
     private String resolveKey(HttpServletRequest request) {
-        String client = request.getHeader("X-Client-Id");
-        if (client != null && !client.isBlank()) return "cid:" + client;
-        String xff = request.getHeader("X-Forwarded-For");
-        if (xff != null && !xff.isBlank()) return "xff:" + xff.split(",")[0].trim();
-        return "ip:" + request.getRemoteAddr();
+        return clientKey(request.getHeader("X-Client-Id"), request.getHeader("X-Forwarded-For"), request.getRemoteAddr());
     }
 
-    private static class WindowCounter {
-        volatile long startMs;
-        AtomicInteger count = new AtomicInteger();
-        WindowCounter(long startMs) { this.startMs = startMs; }
+    /** The bucket key for a client: its {@code X-Client-Id}, else the first {@code X-Forwarded-For} hop, else its address. */
+    public static String clientKey(String clientId, String forwardedFor, String remoteAddr) {
+        if (clientId != null && !clientId.isBlank()) return "cid:" + clientId;
+        if (forwardedFor != null && !forwardedFor.isBlank()) return "xff:" + forwardedFor.split(",")[0].trim();
+        return "ip:" + remoteAddr;
     }
 }
@@ -0,0 +1,47 @@
+package com.example.autosuggest.config;
+
+import com.example.autosuggest.service.MmapSnapshotIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Command-line build of an {@code mmap-snapshot} file, enabled by {@code suggest.snapshot.build=true}:
+ * <pre>
+ * ./mvnw spring-boot:run -Dspring-boot.run.arguments="--suggest.snapshot.build=true --suggest.snapshot.dir=/shared/snapshots
+ *     --spring.main.web-application-type=none"
+ * </pre>
+ * Rows are streamed from {@code people} in key order straight into the file, so the build holds no copy of the
+ * dictionary. Serving nodes pick the file up on their next {@code suggest.snapshot.pollInterval}. Prints the
+ * version, then the application exits unless {@code suggest.snapshot.exit=false}.
+ */
+@Component
+public class SnapshotBuildRunner implements ApplicationRunner {
+
+    private final MmapSnapshotIndex snapshots;
+    private final ConfigurableApplicationContext context;
+    private final boolean build;
+    private final boolean exit;
+
+    public SnapshotBuildRunner(MmapSnapshotIndex snapshots,
+                               ConfigurableApplicationContext context,
+                               @Value("${suggest.snapshot.build:false}") boolean build,
+                               @Value("${suggest.snapshot.exit:true}") boolean exit) {
+        this.snapshots = snapshots;
+        this.context = context;
+        this.build = build;
+        this.exit = exit;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!build) return;
+        long t0 = System.nanoTime();
+        long version = snapshots.write();
+        System.out.printf("Wrote snapshot suggest-%d.snap in %.1f s%n", version, (System.nanoTime() - t0) / 1e9);
+        if (exit) System.exit(SpringApplication.exit(context, () -> 0));
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.autosuggest.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out physical connections that keep their prepared statements, keyed by SQL text, so a pooled
+ * connection prepares each engine query once instead of on every call. Sits underneath the pool:
+ * {@code close()} on a cached statement only clears its parameters; the statements are really closed when
+ * they are evicted (LRU, {@code size} per connection) or when the pool closes the connection.
+ * SQLite re-prepares cached statements by itself after schema changes.
+ */
+class StatementCachingDataSource extends DelegatingDataSource {
+
+    private final int size;
+    private final Counter hits;
+    private final Counter misses;
+
+    StatementCachingDataSource(DataSource target, int size, String pool, MeterRegistry meter) {
+        super(target);
+        this.size = size;
+        this.hits = meter == null ? null : meter.counter("suggest.db.statements", "pool", pool, "result", "hit");
+        this.misses = meter == null ? null : meter.counter("suggest.db.statements", "pool", pool, "result", "miss");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection raw) {
+        if (size <= 0) return raw;
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new CachingConnection(raw));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Only ever used by the thread that borrowed the connection from the pool, so no locking
+    private final class CachingConnection implements InvocationHandler {
+
+        private final Connection raw;
+        private Connection self;
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        CachingConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            self = (Connection) proxy;
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (args.length == 1) return prepare((String) args[0]);
+                    break;
+                case "close":
+                    closeAll();
+                    break;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(raw)) return raw;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(raw)) return true;
+                    break;
+                default:
+                    break;
+            }
+            return StatementCachingDataSource.invoke(raw, method, args);
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null) {
+                if (cached.inUse) {
+                    // Same SQL open twice on one connection (nested use); hand out a throwaway
+                    return raw.prepareStatement(sql);
+                }
+                if (hits != null) hits.increment();
+                cached.inUse = true;
+                return cached.proxy;
+            }
+            if (misses != null) misses.increment();
+            cached = new CachedStatement(sql, raw.prepareStatement(sql));
+            cached.inUse = true;
+            statements.put(sql, cached);
+            evict();
+            return cached.proxy;
+        }
+
+        private void evict() throws SQLException {
+            Iterator<Map.Entry<String, CachedStatement>> it = statements.entrySet().iterator();
+            while (statements.size() > size && it.hasNext()) {
+                CachedStatement eldest = it.next().getValue();
+                if (eldest.inUse) continue;
+                it.remove();
+                eldest.raw.close();
+            }
+        }
+
+        private void closeAll() {
+            for (CachedStatement s : statements.values()) {
+                try {
+                    s.raw.close();
+                } catch (SQLException ignored) {
+                    // The connection is going away anyway
+                }
+            }
+            statements.clear();
+        }
+
+        private final class CachedStatement implements InvocationHandler {
+
+            final String sql;
+            final PreparedStatement raw;
+            final PreparedStatement proxy;
+            boolean inUse;
+            boolean failed;
+
+            CachedStatement(String sql, PreparedStatement raw) {
+                this.sql = sql;
+                this.raw = raw;
+                this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class}, this);
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (inUse) {
+                            inUse = false;
+                            release();
+                        }
+                        return null;
+                    case "isClosed":
+                        return !inUse || raw.isClosed();
+                    case "getConnection":
+                        return self;
+                    default:
+                        try {
+                            return StatementCachingDataSource.invoke(raw, method, args);
+                        } catch (SQLException e) {
+                            failed = true;
+                            throw e;
+                        }
+                }
+            }
+
+            // A statement that has thrown is not trusted again; the next prepare starts from a fresh one
+            private void release() {
+                try {
+                    if (!failed) {
+                        raw.clearParameters();
+                        return;
+                    }
+                } catch (SQLException e) {
+                    // fall through and drop it
+                }
+                statements.remove(sql, this);
+                try {
+                    raw.close();
+                } catch (SQLException ignored) {
+                    // Already unusable
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.autosuggest.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket held in one {@code long}: the (virtual) time at which the bucket was empty. Tokens at
+ * {@code now} are {@code (now - emptyAt) / nanosPerToken}, capped at {@code capacity}, so refill needs no
+ * timer and taking a token is a single CAS that moves {@code emptyAt} forward by one token's worth.
+ * Fractional progress towards the next token is kept; nothing allocates.
+ */
+final class TokenBucket {
+
+    private final long capacity;
+    private final long nanosPerToken;
+    private final long fullSpan;
+    private final AtomicLong emptyAt;
+
+    TokenBucket(long capacity, long nanosPerToken, long now) {
+        this.capacity = capacity;
+        this.nanosPerToken = nanosPerToken;
+        this.fullSpan = capacity * nanosPerToken;
+        this.emptyAt = new AtomicLong(now - fullSpan);
+    }
+
+    /** Takes one token; returns the tokens left, or -1 if the bucket is empty. */
+    long tryAcquire(long now) {
+        while (true) {
+            long current = emptyAt.get();
+            // A full bucket does not keep filling: forget refill beyond capacity
+            long base = Math.max(current, now - fullSpan);
+            long next = base + nanosPerToken;
+            if (next > now) return -1;
+            if (emptyAt.compareAndSet(current, next)) {
+                return Math.min(capacity, (now - next) / nanosPerToken);
+            }
+        }
+    }
+
+    /** Nanoseconds until the next token; 0 if one is available. */
+    long nanosUntilToken(long now) {
+        long next = Math.max(emptyAt.get(), now - fullSpan) + nanosPerToken;
+        return Math.max(0, next - now);
+    }
+}
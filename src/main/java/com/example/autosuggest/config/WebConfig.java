@@ -0,0 +1,33 @@
+package com.example.autosuggest.config;
+
+import com.example.autosuggest.api.CachedSuggestionsConverter;
+import com.example.autosuggest.service.SuggestMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ObjectMapper mapper;
+    private final SuggestMetrics metrics;
+    private final boolean preserialized;
+
+    public WebConfig(ObjectMapper mapper,
+                     SuggestMetrics metrics,
+                     @Value("${suggest.cache.preserialized:true}") boolean preserialized) {
+        this.mapper = mapper;
+        this.metrics = metrics;
+        this.preserialized = preserialized;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // First, so it is picked over Jackson for cached slices; uses the same mapper, so the bytes match
+        if (preserialized) converters.add(0, new CachedSuggestionsConverter(mapper, metrics));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.autosuggest.config;
+
+import com.example.autosuggest.api.SuggestWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import java.util.Arrays;
+
+@Configuration
+@EnableWebSocket
+@ConditionalOnProperty(name = "suggest.ws.enabled", havingValue = "true", matchIfMissing = true)
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final SuggestWebSocketHandler handler;
+    private final String[] allowedOrigins;
+
+    public WebSocketConfig(SuggestWebSocketHandler handler,
+                           @Value("${suggest.ws.allowedOrigins:}") String[] allowedOrigins) {
+        this.handler = handler;
+        // None configured: same-origin handshakes only
+        this.allowedOrigins = Arrays.stream(allowedOrigins).filter(o -> !o.isBlank()).toArray(String[]::new);
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(handler, "/suggest/ws").setAllowedOriginPatterns(allowedOrigins);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.autosuggest.model;
+
+import com.example.autosuggest.service.SuggestService;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+/** One entry of {@code POST /suggest/batch}; same rules and defaults as the {@code GET /suggest} parameters. */
+public record SuggestQuery(
+        @NotBlank @Size(min = 2, max = 100) String q,
+        @Min(1) @Max(50) Integer limit,
+        SuggestService.Mode mode) {
+
+    public int limitOrDefault() {
+        return limit == null ? 10 : limit;
+    }
+
+    public SuggestService.Mode modeOrDefault() {
+        return mode == null ? SuggestService.Mode.PREFIX : mode;
+    }
+}
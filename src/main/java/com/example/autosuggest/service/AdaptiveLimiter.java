@@ -0,0 +1,101 @@
+package com.example.autosuggest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * AIMD concurrency limit for suggest lookups that have to do real work (cache misses). A lookup slower than
+ * {@code latencyTarget}, or one that fails, cuts the limit by {@code backoff} (at most once per target
+ * interval, so one slow burst counts once); every lookup that finishes in time while the limit was at least
+ * half used raises it by one. Requests beyond the limit are shed at once with {@link LoadShedException}
+ * instead of queueing behind the database, so latency stays near the target while the excess gets a fast 503.
+ */
+@Component
+public class AdaptiveLimiter {
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final double backoff;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+    private final Counter shed;
+
+    public AdaptiveLimiter(@Value("${suggest.limiter.enabled:false}") boolean enabled,
+                           @Value("${suggest.limiter.initialLimit:20}") int initialLimit,
+                           @Value("${suggest.limiter.minLimit:4}") int minLimit,
+                           @Value("${suggest.limiter.maxLimit:200}") int maxLimit,
+                           @Value("${suggest.limiter.latencyTarget:PT0.25S}") Duration latencyTarget,
+                           @Value("${suggest.limiter.backoff:0.9}") double backoff,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = new AtomicInteger(Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit)));
+        this.targetNanos = latencyTarget.toNanos();
+        this.backoff = backoff;
+        if (meterRegistry != null && enabled) {
+            Gauge.builder("suggest.limiter.limit", limit, AtomicInteger::get).register(meterRegistry);
+            Gauge.builder("suggest.limiter.in_flight", inFlight, AtomicInteger::get).register(meterRegistry);
+            this.shed = meterRegistry.counter("suggest.limiter.shed");
+        } else {
+            this.shed = null;
+        }
+    }
+
+    public <T> T call(Supplier<T> work) {
+        if (!enabled) return work.get();
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit.get()) {
+                if (shed != null) shed.increment();
+                throw new LoadShedException("Concurrency limit " + limit.get() + " reached");
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            T result = work.get();
+            ok = true;
+            return result;
+        } catch (QueryCancelledException | OverloadedException e) {
+            // Neither says anything about how fast the database answers
+            ok = true;
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            sample(System.nanoTime() - t0, ok, current + 1);
+        }
+    }
+
+    private void sample(long elapsed, boolean ok, int inFlightAtStart) {
+        long now = System.nanoTime();
+        if (!ok || elapsed > targetNanos) {
+            long last = lastDecrease.get();
+            if (now - last >= targetNanos && lastDecrease.compareAndSet(last, now)) {
+                limit.updateAndGet(l -> Math.max(minLimit, (int) (l * backoff)));
+            }
+        } else if (inFlightAtStart * 2 >= limit.get()) {
+            limit.updateAndGet(l -> Math.min(maxLimit, l + 1));
+        }
+    }
+
+    public int limit() {
+        return limit.get();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
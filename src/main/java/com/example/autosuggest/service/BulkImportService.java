@@ -0,0 +1,424 @@
+package com.example.autosuggest.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams NDJSON ({@code {"id":1,"name":"Microsoft","popularity":3}} per line) or CSV (a header naming
+ * {@code name} and optionally {@code id} and {@code popularity}, in any order) into a dictionary's table.
+ * <p>
+ * Rows are upserted by {@code id} (rows without one get a new id) in transactions of {@code batchSize}. The
+ * writer connection is released between batches, and held for {@code pause} less, so popularity flushes and
+ * invalidation drains keep their turn; readers use their own pool and are never blocked. For the duration of
+ * the load the table's per-row FTS, trigram and change-log triggers are dropped, their DDL kept in
+ * {@code people_import_triggers}. Afterwards they are put back, each index they fed is rebuilt once, and the
+ * dictionary's cache (and, for {@code people}, the in-memory indexes) start over. Until then FTS and cached answers
+ * lag behind the table. Triggers an import never put back (the process died) are restored, and their indexes
+ * rebuilt, on the next startup.
+ * <p>
+ * One import runs at a time. Rows committed before a failure stay; the indexes are rebuilt all the same.
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+
+    // The per-row triggers FtsAdminService and CacheInvalidationService install, by suffix of the table name
+    private static final List<String> SUSPENDED = List.of("_ai", "_ad", "_au",
+            "_trigram_ai", "_trigram_ad", "_trigram_au",
+            "_changes_ai", "_changes_ad", "_changes_au");
+
+    // Absent popularity: 0 for a new row, unchanged for an existing one
+    private static final String UPSERT = """
+            INSERT INTO %1$s(id, name, popularity) VALUES (?, ?, coalesce(?, 0))
+            ON CONFLICT(id) DO UPDATE SET name = excluded.name, popularity = coalesce(?, popularity)
+            """;
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format of(String s) {
+            try {
+                return valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown import format '" + s + "' (ndjson or csv)");
+            }
+        }
+    }
+
+    /** One input row. */
+    public record Row(Long id, String name, Long popularity) {}
+
+    public record Result(String dict, Format format, long rows, long skipped, int batches,
+                         long loadMillis, long rebuildMillis, double rowsPerSecond) {}
+
+    public record Progress(String dict, boolean running, long rows, long skipped, long elapsedMillis,
+                           double rowsPerSecond) {}
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final ObjectMapper mapper;
+    private final Dictionaries dictionaries;
+    private final FtsAdminService fts;
+    private final MemoryTrieIndex trieIndex;
+    private final MmapSnapshotIndex snapshotIndex;
+    private final MemoryFuzzyIndex fuzzyIndex;
+    private final FallbackSnapshot fallbackSnapshot;
+    private final MeterRegistry meter;
+    private final int batchSize;
+    private final long pauseNanos;
+    private final long progressNanos;
+    private final ReentrantLock running = new ReentrantLock();
+    private volatile Progress progress;
+
+    public BulkImportService(NamedParameterJdbcTemplate jdbc,
+                             PlatformTransactionManager txManager,
+                             ObjectMapper mapper,
+                             Dictionaries dictionaries,
+                             FtsAdminService fts,
+                             MemoryTrieIndex trieIndex,
+                             MmapSnapshotIndex snapshotIndex,
+                             MemoryFuzzyIndex fuzzyIndex,
+                             FallbackSnapshot fallbackSnapshot,
+                             @Value("${suggest.import.batchSize:50000}") int batchSize,
+                             @Value("${suggest.import.pause:PT0.01S}") Duration pause,
+                             @Value("${suggest.import.progressInterval:PT5S}") Duration progressInterval,
+                             MeterRegistry meterRegistry) {
+        this.jdbc = jdbc.getJdbcTemplate();
+        this.tx = new TransactionTemplate(txManager);
+        this.mapper = mapper;
+        this.dictionaries = dictionaries;
+        this.fts = fts;
+        this.trieIndex = trieIndex;
+        this.snapshotIndex = snapshotIndex;
+        this.fuzzyIndex = fuzzyIndex;
+        this.fallbackSnapshot = fallbackSnapshot;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseNanos = pause.toNanos();
+        this.progressNanos = progressInterval.toNanos();
+        this.meter = meterRegistry;
+        restoreAbandoned();
+    }
+
+    /** The running import, else the last finished one ({@code null} if there was none). */
+    public Progress progress() {
+        return progress;
+    }
+
+    /** Loads every row of {@code in} into dictionary {@code dict} ({@code null} = {@code people}). */
+    public Result importRows(String dict, Format format, InputStream in) {
+        Dictionary d = dictionaries.get(dict);
+        if (!running.tryLock()) {
+            Progress p = progress;
+            throw new ImportInProgressException("An import into '" + (p == null ? "?" : p.dict()) + "' is running");
+        }
+        try {
+            return load(d, format, in);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private Result load(Dictionary d, Format format, InputStream in) {
+        String upsert = UPSERT.formatted(d.table());
+        Timer batchTimer = meter == null ? null : Timer.builder("suggest.import.batch").tag("dict", d.name()).register(meter);
+        long start = System.nanoTime();
+        long[] counts = new long[3]; // rows, skipped, batches
+        progress = new Progress(d.name(), true, 0, 0, 0, 0);
+        Map<String, String> suspended = suspendTriggers(d.table());
+        log.info("Importing {} into {}; suspended triggers {}", format, d.table(), suspended.keySet());
+        Throwable failure = null;
+        long loaded;
+        long rebuilt = 0;
+        try (RowReader rows = format == Format.CSV ? new CsvRows(in) : new NdjsonRows(mapper, in)) {
+            List<Row> batch = new ArrayList<>(Math.min(batchSize, 65536));
+            long lastReport = start;
+            Row row;
+            while ((row = rows.next()) != null) {
+                if (row.name() == null || row.name().isBlank()) {
+                    counts[1]++;
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() < batchSize) continue;
+                write(upsert, batch, batchTimer, counts);
+                long now = System.nanoTime();
+                progress = progress(d, true, counts, now - start);
+                if (now - lastReport >= progressNanos) {
+                    lastReport = now;
+                    log.info("Imported {} rows into {} ({} rows/s)", counts[0], d.table(), (long) progress.rowsPerSecond());
+                }
+                // Give the writer connection to whoever queued behind this batch
+                if (pauseNanos > 0) LockSupport.parkNanos(pauseNanos);
+            }
+            if (!batch.isEmpty()) write(upsert, batch, batchTimer, counts);
+        } catch (IOException e) {
+            IllegalArgumentException bad = new IllegalArgumentException("Import into " + d.name() + " stopped after "
+                    + counts[0] + " rows: " + e.getMessage(), e);
+            failure = bad;
+            throw bad;
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            loaded = System.nanoTime() - start;
+            progress = progress(d, true, counts, loaded);
+            try {
+                rebuilt = finish(d, suspended);
+            } catch (RuntimeException e) {
+                // The load's own failure is what the caller needs to see
+                if (failure == null) throw e;
+                failure.addSuppressed(e);
+            } finally {
+                progress = progress(d, false, counts, loaded);
+                if (meter != null) {
+                    meter.counter("suggest.import.rows", "dict", d.name(), "result", "imported").increment(counts[0]);
+                    meter.counter("suggest.import.rows", "dict", d.name(), "result", "skipped").increment(counts[1]);
+                }
+            }
+        }
+        Result result = new Result(d.name(), format, counts[0], counts[1], (int) counts[2],
+                TimeUnit.NANOSECONDS.toMillis(loaded), TimeUnit.NANOSECONDS.toMillis(rebuilt), progress.rowsPerSecond());
+        log.info("Imported {} rows into {} in {} ms ({} rows/s, {} skipped), indexes rebuilt in {} ms",
+                result.rows(), d.table(), result.loadMillis(), (long) result.rowsPerSecond(), result.skipped(),
+                result.rebuildMillis());
+        return result;
+    }
+
+    private void write(String upsert, List<Row> batch, Timer batchTimer, long[] counts) {
+        long t0 = System.nanoTime();
+        tx.executeWithoutResult(status -> jdbc.batchUpdate(upsert, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Row row = batch.get(i);
+                ps.setObject(1, row.id());
+                ps.setString(2, row.name());
+                ps.setObject(3, row.popularity());
+                ps.setObject(4, row.popularity());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        }));
+        if (batchTimer != null) batchTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        counts[0] += batch.size();
+        counts[2]++;
+        batch.clear();
+    }
+
+    private static Progress progress(Dictionary d, boolean running, long[] counts, long nanos) {
+        double secs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos)) / 1000.0;
+        return new Progress(d.name(), running, counts[0], counts[1], TimeUnit.NANOSECONDS.toMillis(nanos), counts[0] / secs);
+    }
+
+    // Drops the per-row triggers, recording their CREATE statements in the same transaction; returns them in order
+    private Map<String, String> suspendTriggers(String table) {
+        Map<String, String> suspended = new LinkedHashMap<>();
+        tx.executeWithoutResult(status -> {
+            for (String suffix : SUSPENDED) {
+                String name = table + suffix;
+                List<String> sql = jdbc.queryForList(
+                        "SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = ?", String.class, name);
+                if (sql.isEmpty()) continue;
+                jdbc.update("INSERT OR REPLACE INTO people_import_triggers(name, tbl, sql) VALUES (?, ?, ?)",
+                        name, table, sql.get(0));
+                jdbc.execute("DROP TRIGGER IF EXISTS " + name);
+                suspended.put(name, sql.get(0));
+            }
+        });
+        return suspended;
+    }
+
+    // Puts the triggers back, rebuilds what they would have maintained and resets the caches; returns the rebuild time
+    private long finish(Dictionary d, Map<String, String> suspended) {
+        long rebuilt = restore(d.table(), suspended);
+        // Change-log triggers were off, so nothing more specific than everything is known to have changed
+        d.cache().invalidateAll();
+        if (d.primary()) reloadIndexes(d);
+        return rebuilt;
+    }
+
+    private long restore(String table, Map<String, String> suspended) {
+        suspended.forEach((name, sql) -> {
+            // Someone may have re-created it meanwhile (POST /admin/fts/ensure-triggers, a restart elsewhere)
+            Integer exists = jdbc.queryForObject(
+                    "SELECT count(*) FROM sqlite_master WHERE type = 'trigger' AND name = ?", Integer.class, name);
+            if (exists == null || exists == 0) jdbc.execute(sql);
+        });
+        long t0 = System.nanoTime();
+        if (suspended.containsKey(table + "_ai")) fts.rebuild(table);
+        if (suspended.containsKey(table + "_trigram_ai")) fts.rebuildTrigram();
+        // Fresh statistics for the planner after a large change
+        jdbc.execute("PRAGMA optimize");
+        long rebuilt = System.nanoTime() - t0;
+        // Only now is nothing left for a restart to redo
+        jdbc.update("DELETE FROM people_import_triggers WHERE tbl = ?", table);
+        return rebuilt;
+    }
+
+    // Triggers an import dropped and never put back; nothing has cached or loaded anything from the tables yet
+    private void restoreAbandoned() {
+        Map<String, Map<String, String>> byTable = new LinkedHashMap<>();
+        for (Map<String, Object> row : jdbc.queryForList("SELECT tbl, name, sql FROM people_import_triggers ORDER BY rowid")) {
+            byTable.computeIfAbsent((String) row.get("tbl"), t -> new LinkedHashMap<>())
+                    .put((String) row.get("name"), (String) row.get("sql"));
+        }
+        byTable.forEach((table, suspended) -> {
+            log.warn("An import into {} did not finish; restoring triggers {} and rebuilding", table, suspended.keySet());
+            restore(table, suspended);
+        });
+    }
+
+    private void reloadIndexes(Dictionary d) {
+        try {
+            if ("memory-trie".equals(d.engine())) trieIndex.reload();
+            if ("mmap-snapshot".equals(d.engine())) snapshotIndex.build();
+            if (fuzzyIndex.enabled()) fuzzyIndex.reload();
+            if (fallbackSnapshot.enabled()) fallbackSnapshot.reload();
+        } catch (RuntimeException e) {
+            // The rows are in; the indexes catch up on their next reload
+            log.warn("Reloading in-memory indexes after the import failed: {}", e.getMessage());
+        }
+    }
+
+    private interface RowReader extends Closeable {
+        /** The next row, or {@code null} at the end of the input. */
+        Row next() throws IOException;
+    }
+
+    private static final class NdjsonRows implements RowReader {
+
+        private final MappingIterator<Row> rows;
+
+        NdjsonRows(ObjectMapper mapper, InputStream in) throws IOException {
+            this.rows = mapper.readerFor(Row.class).readValues(in);
+        }
+
+        @Override
+        public Row next() throws IOException {
+            return rows.hasNextValue() ? rows.nextValue() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            rows.close();
+        }
+    }
+
+    /** RFC 4180: fields may be quoted, with {@code ""} for a quote and line breaks inside quotes. */
+    static final class CsvRows implements RowReader {
+
+        private final Reader in;
+        private final int idCol;
+        private final int nameCol;
+        private final int popularityCol;
+        private long line = 1;
+
+        CsvRows(InputStream in) throws IOException {
+            this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+            List<String> header = record();
+            if (header == null) header = List.of();
+            List<String> columns = header.stream().map(h -> h.strip().toLowerCase(Locale.ROOT)).toList();
+            this.idCol = columns.indexOf("id");
+            this.nameCol = columns.indexOf("name");
+            this.popularityCol = columns.indexOf("popularity");
+            if (nameCol < 0 && !columns.isEmpty()) {
+                throw new IllegalArgumentException("CSV header needs a 'name' column, got " + header);
+            }
+        }
+
+        @Override
+        public Row next() throws IOException {
+            List<String> fields;
+            do {
+                line++;
+                fields = record();
+                if (fields == null) return null;
+            } while (fields.size() == 1 && fields.get(0).isEmpty()); // blank line
+            try {
+                return new Row(number(fields, idCol), field(fields, nameCol), number(fields, popularityCol));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("CSV line " + line + ": " + e.getMessage());
+            }
+        }
+
+        private static String field(List<String> fields, int col) {
+            return col < 0 || col >= fields.size() ? null : fields.get(col);
+        }
+
+        private static Long number(List<String> fields, int col) {
+            String s = field(fields, col);
+            return s == null || s.isBlank() ? null : Long.valueOf(s.strip());
+        }
+
+        private List<String> record() throws IOException {
+            int c = in.read();
+            if (c == -1) return null;
+            List<String> fields = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) throw new IOException("Unterminated quoted field near line " + line);
+                    if (c == '"') {
+                        c = in.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    sb.append((char) c);
+                } else if (c == '"' && sb.isEmpty()) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(sb.toString());
+                    sb.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c != '\r') {
+                    sb.append((char) c);
+                }
+                c = in.read();
+            }
+            fields.add(sb.toString());
+            return fields;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.autosuggest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Turns row changes on each {@link Dictionary}'s table into targeted invalidations of its cache partition.
+ * <p>
+ * Triggers append the affected names (old and new on rename) to {@code <table>_changes} ({@code people_changes}
+ * for the primary), so every writer is covered, including ones outside this service. A poller drains the log every {@code pollInterval}; writers
+ * in this process request an immediate drain so their own changes are visible on the next read.
+ * <p>
+ * Entries answered from an in-memory index (the {@code memory-trie} or {@code mmap-snapshot} PREFIX keys, FUZZY
+ * keys with the fuzzy index on) are left alone by a drain: reloading them would read the same index back. The
+ * drain reloads the trie and the fuzzy index instead, at most every {@code indexReloadInterval}, and only then
+ * drops the entries the drained names can appear in; an index swapped by anything else (an admin reload, a new snapshot file) drops
+ * them on the next drain.
+ * <p>
+ * Drained rows are deleted, except the primary's rows after the position a {@link WarmCacheStore} file was saved
+ * at: a restart restores that file and replays them (see {@link #markForRestore} and {@link #resumeFrom}).
+ */
+@Component
+public class CacheInvalidationService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationService.class);
+
+    private static final List<String> TRIGGERS = List.of("%s_changes_ai", "%s_changes_ad", "%s_changes_au");
+
+    // Past this many changed names, every PREFIX entry of the trie is dropped rather than matched against them
+    private static final int PENDING_LIMIT = 1000;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Dictionaries dictionaries;
+    private final MemoryTrieIndex trieIndex;
+    private final MemoryFuzzyIndex fuzzyIndex;
+    private final MmapSnapshotIndex snapshotIndex;
+    private final boolean enabled;
+    private final Duration pollInterval;
+    private final int batchSize;
+    private final long indexReloadNanos;
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+    private final Counter changes;
+    // Guarded by this: per table, the last change seq applied to the cache
+    private final Map<String, Long> drained = new HashMap<>();
+    // Primary change rows after retainAfter are kept until retainUntil (epoch millis) for a warm cache restore
+    private long retainAfter = Long.MAX_VALUE;
+    private long retainUntil;
+    // Guarded by this: primary names drained since the in-memory indexes last caught up, and when they did
+    private final Set<String> indexPending = new HashSet<>();
+    private boolean indexPendingAll;
+    private long indexesReloadedAt = System.nanoTime();
+    // Guarded by this: the index versions the primary's cache entries were last aligned with (-1: not seen yet,
+    // so whatever is cached came from the version seen first)
+    private long trieVersion = -1;
+    private long fuzzyVersion = -1;
+    private long snapshotVersion = -1;
+    private ScheduledExecutorService poller;
+
+    public CacheInvalidationService(NamedParameterJdbcTemplate jdbc,
+                                    Dictionaries dictionaries,
+                                    MemoryTrieIndex trieIndex,
+                                    MemoryFuzzyIndex fuzzyIndex,
+                                    MmapSnapshotIndex snapshotIndex,
+                                    @Value("${suggest.cache.invalidation.enabled:false}") boolean enabled,
+                                    @Value("${suggest.cache.invalidation.pollInterval:PT0.5S}") Duration pollInterval,
+                                    @Value("${suggest.cache.invalidation.batchSize:5000}") int batchSize,
+                                    @Value("${suggest.cache.invalidation.indexReloadInterval:PT30S}") Duration indexReloadInterval,
+                                    MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.dictionaries = dictionaries;
+        this.trieIndex = trieIndex;
+        this.fuzzyIndex = fuzzyIndex;
+        this.snapshotIndex = snapshotIndex;
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+        this.batchSize = batchSize;
+        this.indexReloadNanos = indexReloadInterval.toNanos();
+        this.changes = meterRegistry != null ? meterRegistry.counter("suggest.cache.invalidation.changes") : null;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            // Stop logging changes nobody drains
+            for (Dictionary d : dictionaries.all()) {
+                for (String trigger : TRIGGERS) execute("DROP TRIGGER IF EXISTS " + trigger.formatted(d.table()));
+            }
+            return;
+        }
+        for (Dictionary d : dictionaries.all()) createTriggers(d.table());
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-invalidation");
+            t.setDaemon(true);
+            return t;
+        });
+        long ms = Math.max(1, pollInterval.toMillis());
+        poller.scheduleWithFixedDelay(this::drainQuietly, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) poller.shutdownNow();
+    }
+
+    /** Schedules a drain on the poller thread; concurrent requests collapse into one. */
+    public void requestDrain() {
+        if (poller != null && drainQueued.compareAndSet(false, true)) {
+            poller.execute(this::drainQuietly);
+        }
+    }
+
+    /** Applies every logged change to the caches; returns the number of change rows consumed. */
+    public synchronized int drain() {
+        drainQueued.set(false);
+        if (!enabled) return 0;
+        int total = 0;
+        for (Dictionary d : dictionaries.all()) total += drain(d);
+        syncIndexes(dictionaries.primary());
+        return total;
+    }
+
+    private int drain(Dictionary d) {
+        Set<String> indexed = indexedBases(d);
+        String select = "SELECT seq, name FROM " + d.table() + "_changes WHERE seq > :after ORDER BY seq LIMIT :n";
+        String delete = "DELETE FROM " + d.table() + "_changes WHERE seq <= :seq";
+        int total = 0;
+        while (true) {
+            List<String> names = new ArrayList<>();
+            long[] last = {-1};
+            jdbc.query(select,
+                    new MapSqlParameterSource("after", drained.getOrDefault(d.table(), 0L)).addValue("n", batchSize),
+                    rs -> {
+                        last[0] = rs.getLong(1);
+                        names.add(rs.getString(2));
+                    });
+            if (names.isEmpty()) return total;
+            // Invalidate before deleting: a crash in between re-invalidates, never skips
+            d.cache().invalidateNames(names, indexed);
+            if (!indexed.isEmpty() && !indexPendingAll) {
+                indexPending.addAll(names);
+                if (indexPending.size() > PENDING_LIMIT) {
+                    indexPending.clear();
+                    indexPendingAll = true;
+                }
+            }
+            drained.put(d.table(), last[0]);
+            long keep = d.primary() && System.currentTimeMillis() < retainUntil ? retainAfter : Long.MAX_VALUE;
+            jdbc.update(delete, new MapSqlParameterSource("seq", Math.min(last[0], keep)));
+            total += names.size();
+            if (changes != null) changes.increment(names.size());
+            if (names.size() < batchSize) return total;
+        }
+    }
+
+    /**
+     * The primary's change log position for a warm cache file saved now: every change up to it is reflected in
+     * the cache. Change rows after it are kept until {@code untilMillis} (or a later mark), so a restore can replay
+     * them. {@code -1} if changes are not tracked.
+     */
+    public synchronized long markForRestore(long untilMillis) {
+        if (!enabled) return -1;
+        String table = dictionaries.primary().table() + "_changes";
+        long cursor = drained.getOrDefault(dictionaries.primary().table(), 0L);
+        // Nothing pending: every change logged so far, including ones drained by an earlier run, is reflected
+        Long mark = jdbc.queryForObject("""
+                SELECT CASE WHEN EXISTS (SELECT 1 FROM %1$s WHERE seq > :cursor) THEN :cursor
+                       ELSE max(:cursor, coalesce((SELECT seq FROM sqlite_sequence WHERE name = '%1$s'), 0)) END
+                """.formatted(table), new MapSqlParameterSource("cursor", cursor), Long.class);
+        retainAfter(mark == null ? cursor : mark, untilMillis);
+        return retainAfter;
+    }
+
+    /** Keeps the primary's change rows after {@code seq} until {@code untilMillis}, e.g. for a file saved by an earlier run. */
+    public synchronized void retainAfter(long seq, long untilMillis) {
+        if (!enabled || seq < 0) return;
+        retainAfter = seq;
+        retainUntil = untilMillis;
+    }
+
+    /**
+     * Prepares the restore of a warm cache file saved at {@code seq}: if the primary's log still holds every change
+     * after it, the next {@link #drain} replays them and this returns {@code true}. Without change tracking there
+     * is nothing to replay and the file is taken as is.
+     */
+    public synchronized boolean resumeFrom(long seq) {
+        if (!enabled) return true;
+        if (seq < 0) return false;
+        String table = dictionaries.primary().table() + "_changes";
+        // Drains only ever delete a prefix, so the log is complete after seq if seq + 1 is still there
+        Boolean complete = jdbc.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM %1$s WHERE seq = :seq + 1)
+                    OR coalesce((SELECT seq FROM sqlite_sequence WHERE name = '%1$s'), 0) <= :seq
+                """.formatted(table), new MapSqlParameterSource("seq", seq), Boolean.class);
+        if (!Boolean.TRUE.equals(complete)) return false;
+        drained.put(dictionaries.primary().table(), seq);
+        return true;
+    }
+
+    // Cache key bases the primary answers from an in-memory index rather than its table
+    private Set<String> indexedBases(Dictionary d) {
+        if (!d.primary()) return Set.of();
+        Set<String> bases = new HashSet<>();
+        if ("memory-trie".equals(d.engine()) || "mmap-snapshot".equals(d.engine())) {
+            bases.add(SuggestCache.keyBase(d.engine(), SuggestService.Mode.PREFIX));
+        }
+        if (fuzzyIndex.enabled()) bases.add(SuggestCache.keyBase(d.engine(), SuggestService.Mode.FUZZY));
+        return bases;
+    }
+
+    // Reloads the indexes behind drained changes once they are due, then drops what the old ones answered.
+    // Reloading first matters: an entry dropped before the swap would be reloaded from the stale index.
+    private void syncIndexes(Dictionary d) {
+        boolean trie = "memory-trie".equals(d.engine());
+        boolean pending = indexPendingAll || !indexPending.isEmpty();
+        if (pending && !trie && !fuzzyIndex.enabled()) {
+            // Only a snapshot file, which this node does not build, serves them
+            indexPending.clear();
+            indexPendingAll = false;
+            pending = false;
+        }
+        if (pending && System.nanoTime() - indexesReloadedAt >= indexReloadNanos) {
+            if (trie) trieIndex.reload();
+            if (fuzzyIndex.enabled()) fuzzyIndex.reload();
+            indexesReloadedAt = System.nanoTime();
+            List<String> names = indexPending.stream().map(SuggestCache::normalize).toList();
+            boolean all = indexPendingAll;
+            if (trie) {
+                // A name can only show up under its own prefixes
+                d.cache().invalidateQueries(SuggestCache.keyBase(d.engine(), SuggestService.Mode.PREFIX),
+                        q -> all || names.stream().anyMatch(n -> n.startsWith(q)));
+                trieVersion = trieIndex.version();
+            }
+            if (fuzzyIndex.enabled()) {
+                // Only queries within their edit budget of a changed name can answer differently
+                Predicate<String> matched = all ? q -> true : fuzzyIndex.matchesAny(indexPending);
+                d.cache().invalidateQueries(SuggestCache.keyBase(d.engine(), SuggestService.Mode.FUZZY), matched);
+                fuzzyVersion = fuzzyIndex.version();
+            }
+            indexPending.clear();
+            indexPendingAll = false;
+        }
+        // Swapped by someone else (admin reload, the fuzzy timer, a new snapshot file): what changed is unknown
+        if (trie) trieVersion = aligned(d, SuggestService.Mode.PREFIX, trieVersion, trieIndex.version());
+        if ("mmap-snapshot".equals(d.engine())) {
+            snapshotVersion = aligned(d, SuggestService.Mode.PREFIX, snapshotVersion, snapshotIndex.version());
+        }
+        if (fuzzyIndex.enabled()) fuzzyVersion = aligned(d, SuggestService.Mode.FUZZY, fuzzyVersion, fuzzyIndex.version());
+    }
+
+    private static long aligned(Dictionary d, SuggestService.Mode mode, long seen, long current) {
+        if (seen >= 0 && seen != current) d.cache().invalidateQueries(SuggestCache.keyBase(d.engine(), mode), q -> true);
+        return current;
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.warn("Cache invalidation drain failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void createTriggers(String table) {
+        execute("""
+                CREATE TABLE IF NOT EXISTS %1$s_changes (
+                  seq   INTEGER PRIMARY KEY AUTOINCREMENT,
+                  name  TEXT NOT NULL
+                )""".formatted(table));
+        execute("""
+                CREATE TRIGGER IF NOT EXISTS %1$s_changes_ai AFTER INSERT ON %1$s BEGIN
+                  INSERT INTO %1$s_changes(name) VALUES (new.name);
+                END""".formatted(table));
+        execute("""
+                CREATE TRIGGER IF NOT EXISTS %1$s_changes_ad AFTER DELETE ON %1$s BEGIN
+                  INSERT INTO %1$s_changes(name) VALUES (old.name);
+                END""".formatted(table));
+        execute("""
+                CREATE TRIGGER IF NOT EXISTS %1$s_changes_au AFTER UPDATE OF name, popularity ON %1$s BEGIN
+                  INSERT INTO %1$s_changes(name) VALUES (new.name);
+                  INSERT INTO %1$s_changes(name) SELECT old.name WHERE old.name IS NOT new.name;
+                END""".formatted(table));
+    }
+
+    private void execute(String sql) {
+        jdbc.getJdbcTemplate().execute(sql);
+    }
+}
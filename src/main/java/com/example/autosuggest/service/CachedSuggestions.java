@@ -0,0 +1,102 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Cache value: the suggestions for one key fetched at the maximum limit.
+ * {@code complete} means the list holds every match, so it can answer longer prefixes by filtering.
+ * The JSON response body is built once, on the first request that serves the entry over HTTP, and every
+ * limit is written as a prefix of it.
+ */
+public final class CachedSuggestions {
+
+    private static final byte[] EMPTY = {'[', ']'};
+
+    private final List<Suggestion> items;
+    private final boolean complete;
+    private volatile Json json;
+
+    public CachedSuggestions(List<Suggestion> items, boolean complete) {
+        this.items = items;
+        this.complete = complete;
+    }
+
+    public List<Suggestion> items() {
+        return items;
+    }
+
+    public boolean complete() {
+        return complete;
+    }
+
+    public Slice slice(int limit) {
+        return new Slice(this, Math.min(limit, items.size()));
+    }
+
+    // "[" + item0 + "," + item1 ... without the closing bracket; ends[i] is the offset just past item i
+    private record Json(byte[] bytes, int[] ends) {}
+
+    private Json json(ObjectMapper mapper) throws IOException {
+        Json j = json;
+        if (j == null) {
+            // Racing first readers build identical bytes; last write wins
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(64 * (items.size() + 1));
+            int[] ends = new int[items.size()];
+            buf.write('[');
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) buf.write(',');
+                buf.write(mapper.writeValueAsBytes(items.get(i)));
+                ends[i] = buf.size();
+            }
+            j = new Json(buf.toByteArray(), ends);
+            json = j;
+        }
+        return j;
+    }
+
+    /** The first {@code size} items of an entry; what {@link SuggestService#suggest} returns for cached keys. */
+    public static final class Slice extends AbstractList<Suggestion> implements RandomAccess {
+
+        private final CachedSuggestions entry;
+        private final int size;
+
+        private Slice(CachedSuggestions entry, int size) {
+            this.entry = entry;
+            this.size = size;
+        }
+
+        @Override
+        public Suggestion get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            return entry.items.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        public int jsonLength(ObjectMapper mapper) throws IOException {
+            return size == 0 ? EMPTY.length : entry.json(mapper).ends[size - 1] + 1;
+        }
+
+        /** Writes the same bytes {@code mapper.writeValue(out, this)} would, without serializing anything. */
+        public void writeJson(ObjectMapper mapper, OutputStream out) throws IOException {
+            if (size == 0) {
+                out.write(EMPTY);
+                return;
+            }
+            Json j = entry.json(mapper);
+            out.write(j.bytes, 0, j.ends[size - 1]);
+            out.write(']');
+        }
+    }
+}
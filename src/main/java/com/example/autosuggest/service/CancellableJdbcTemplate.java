@@ -0,0 +1,52 @@
+package com.example.autosuggest.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.lang.Nullable;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Reports each statement to {@link QueryCancellation} while it executes. The statement is detached in
+ * {@code handleWarnings}, which runs before the template closes it and hands the connection back to the pool,
+ * and again in a {@code finally} around every query: an exception thrown while reading rows skips
+ * {@code handleWarnings}, and a late cancel must not interrupt the pooled connection's next user.
+ */
+public class CancellableJdbcTemplate extends JdbcTemplate {
+
+    public CancellableJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        QueryCancellation.statementStarted(stmt);
+    }
+
+    @Override
+    protected void handleWarnings(Statement stmt) throws SQLException {
+        QueryCancellation.statementFinished(stmt);
+        super.handleWarnings(stmt);
+    }
+
+    @Override
+    protected void handleWarnings(Statement stmt, SQLException ex) {
+        QueryCancellation.statementFinished(stmt);
+        super.handleWarnings(stmt, ex);
+    }
+
+    // Every query of the named-parameter template, whatever the result handling, ends up here
+    @Override
+    public <T> T query(PreparedStatementCreator psc, @Nullable PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+        try {
+            return super.query(psc, pss, rse);
+        } finally {
+            QueryCancellation.statementsFinished();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.autosuggest.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many suggest queries run against the database at once. SQLite gets slower, not faster, past a
+ * handful of concurrent readers, and with virtual threads nothing else limits how many requests reach JDBC.
+ * Waiters queue FIFO on a fair semaphore (a virtual thread unmounts while it waits) and give up after
+ * {@code timeout} with {@link DbGateTimeoutException}.
+ */
+@Component
+public class DbGate {
+
+    private final Semaphore permits;
+    private final int size;
+    private final long timeoutNanos;
+    private final Timer acquired;
+    private final Timer timedOut;
+
+    public DbGate(@Value("${suggest.db.gate.permits:${suggest.db.read.poolSize:4}}") int permits,
+                  @Value("${suggest.db.gate.timeout:PT1S}") Duration timeout,
+                  MeterRegistry meterRegistry) {
+        this.size = Math.max(1, permits);
+        this.permits = new Semaphore(size, true);
+        this.timeoutNanos = timeout.toNanos();
+        if (meterRegistry != null) {
+            Gauge.builder("suggest.db.gate.in_use", this, DbGate::inUse).register(meterRegistry);
+            Gauge.builder("suggest.db.gate.queued", this.permits, Semaphore::getQueueLength).register(meterRegistry);
+            this.acquired = Timer.builder("suggest.db.gate.wait").tag("result", "acquired").register(meterRegistry);
+            this.timedOut = Timer.builder("suggest.db.gate.wait").tag("result", "timeout").register(meterRegistry);
+        } else {
+            this.acquired = null;
+            this.timedOut = null;
+        }
+    }
+
+    public <T> T call(Supplier<T> query) {
+        long t0 = System.nanoTime();
+        boolean ok;
+        try {
+            ok = permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbGateTimeoutException("Interrupted while waiting for a database permit");
+        }
+        long waited = System.nanoTime() - t0;
+        if (!ok) {
+            if (timedOut != null) timedOut.record(waited, TimeUnit.NANOSECONDS);
+            throw new DbGateTimeoutException("No database permit within " + Duration.ofNanos(timeoutNanos).toMillis() + " ms");
+        }
+        if (acquired != null) acquired.record(waited, TimeUnit.NANOSECONDS);
+        try {
+            return query.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int inUse() {
+        return size - permits.availablePermits();
+    }
+}
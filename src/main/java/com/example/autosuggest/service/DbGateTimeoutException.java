@@ -0,0 +1,9 @@
+package com.example.autosuggest.service;
+
+/** The database is saturated: a suggest query waited its full queue timeout for a {@link DbGate} permit. */
+public class DbGateTimeoutException extends OverloadedException {
+
+    public DbGateTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.autosuggest.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The dictionaries {@code /suggest?dict=} can select. {@code people} is always there and keeps every engine
+ * and feature; more come from {@code suggest.dictionaries.<name>}:
+ * <pre>
+ * suggest.dictionaries.companies: { engine: sqlite-fts, maximumSize: 20000, ttl: PT30M }
+ * </pre>
+ * Each extra dictionary has its own table ({@code table}, default the name, same columns as {@code people}),
+ * created on startup if missing, and is served by {@code sqlite-like} or {@code sqlite-fts} (which gets a
+ * {@code <table>_fts} index kept in sync by triggers). It gets its own cache partition ({@code maximumSize}
+ * entries, {@code ttl}; both default to the {@code suggest.cache} values) and its meters are tagged with its name.
+ * The in-memory engines, the fallback snapshot, popularity tracking, batch and WebSocket lookups stay with
+ * {@code people}.
+ */
+@Component
+public class Dictionaries {
+
+    private static final Logger log = LoggerFactory.getLogger(Dictionaries.class);
+
+    public static final String PRIMARY = "people";
+
+    static final List<String> ENGINES = List.of("sqlite-like", "sqlite-fts");
+    // Names and tables end up in SQL text and meter tags
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z][a-z0-9_]{0,40}");
+    // people and everything next to it (people_fts, people_trigram, people_changes), SQLite's own tables, and the
+    // index and change-log tables (with FTS5 shadow tables) another dictionary's table would get
+    private static final Pattern RESERVED_TABLE =
+            Pattern.compile(PRIMARY + "(_.*)?|sqlite_.*|.*_(fts|trigram|changes)(_[a-z]+)?");
+
+    /** {@code suggest.dictionaries.<name>}; unset fields take the defaults described above. */
+    public record Spec(String table, String engine, Long maximumSize, Duration ttl) {}
+
+    private final Dictionary primary;
+    private final Map<String, Dictionary> byName = new LinkedHashMap<>();
+
+    public Dictionaries(NamedParameterJdbcTemplate jdbc,
+                        FtsAdminService fts,
+                        SuggestCache cache,
+                        SuggestMetrics metrics,
+                        Environment environment,
+                        JdbcProperties jdbcProperties,
+                        @Value("${suggest.engine:sqlite-like}") String engine,
+                        @Value("${suggest.cache.ttl:PT90S}") Duration ttl,
+                        @Value("${suggest.cache.maximumSize:10000}") long maximumSize,
+                        @Value("${suggest.db.gate.timeout:PT1S}") Duration gateTimeout) {
+        // Callers joining a load wait as long as its leader can take: the gate queue, then the query timeout
+        Duration queryTimeout = jdbcProperties.getTemplate().getQueryTimeout();
+        Duration joinWait = queryTimeout == null ? null : gateTimeout.plus(queryTimeout);
+        this.primary = new Dictionary(PRIMARY, PRIMARY, engine, cache, metrics, new SingleFlight<>(joinWait),
+                DictionarySql.of(PRIMARY));
+        byName.put(PRIMARY, primary);
+        Map<String, Spec> specs = Binder.get(environment)
+                .bind("suggest.dictionaries", Bindable.mapOf(String.class, Spec.class))
+                .orElse(Map.of());
+        specs.forEach((name, spec) -> {
+            String table = spec.table() == null ? name : spec.table();
+            String dictEngine = spec.engine() == null ? "sqlite-like" : spec.engine();
+            if (!IDENTIFIER.matcher(name).matches() || !IDENTIFIER.matcher(table).matches()) {
+                throw new IllegalStateException("Dictionary '" + name + "': name and table must match " + IDENTIFIER);
+            }
+            if (name.equals(PRIMARY) || RESERVED_TABLE.matcher(table).matches()) {
+                throw new IllegalStateException("Dictionary '" + name + "': table '" + table + "' is reserved");
+            }
+            if (!ENGINES.contains(dictEngine)) {
+                throw new IllegalStateException("Dictionary '" + name + "': engine must be one of " + ENGINES);
+            }
+            createTable(jdbc, table);
+            if ("sqlite-fts".equals(dictEngine)) fts.ensureFts(table);
+            long size = spec.maximumSize() == null ? maximumSize : spec.maximumSize();
+            Duration dictTtl = spec.ttl() == null ? ttl : spec.ttl();
+            byName.put(name, new Dictionary(name, table, dictEngine, cache.partition(name, size, dictTtl),
+                    metrics.partition(name, dictEngine), new SingleFlight<>(joinWait), DictionarySql.of(table)));
+            log.info("Dictionary '{}' on table {} ({}, cache {} entries, ttl {})", name, table, dictEngine, size, dictTtl);
+        });
+    }
+
+    public Dictionary primary() {
+        return primary;
+    }
+
+    /** The dictionary called {@code name}; {@code null} means {@code people}. */
+    public Dictionary get(String name) {
+        if (name == null) return primary;
+        Dictionary d = byName.get(name);
+        if (d == null) throw new UnknownDictionaryException(name, byName.keySet());
+        return d;
+    }
+
+    public Collection<Dictionary> all() {
+        return byName.values();
+    }
+
+    private static void createTable(NamedParameterJdbcTemplate jdbc, String table) {
+        jdbc.getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS " + table + " (\n"
+                + "  id          INTEGER PRIMARY KEY,\n"
+                + "  name        TEXT NOT NULL,\n"
+                + "  popularity  INTEGER NOT NULL DEFAULT 0\n"
+                + ")");
+        jdbc.getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_name_nocase ON " + table
+                + "(name COLLATE NOCASE)");
+    }
+}
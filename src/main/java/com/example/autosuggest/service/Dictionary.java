@@ -0,0 +1,18 @@
+package com.example.autosuggest.service;
+
+/**
+ * One named corpus that {@code /suggest?dict=} can select: its table, the engine that serves it, and its own
+ * cache partition, metrics and in-flight loads.
+ */
+public record Dictionary(String name,
+                         String table,
+                         String engine,
+                         SuggestCache cache,
+                         SuggestMetrics metrics,
+                         SingleFlight<String, CachedSuggestions> loads,
+                         DictionarySql sql) {
+
+    public boolean primary() {
+        return Dictionaries.PRIMARY.equals(name);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.autosuggest.service;
+
+/**
+ * The SQLite statements {@link SuggestService} runs against one dictionary's table, formatted once per
+ * dictionary so the request path (and the per-connection statement cache) sees constant SQL text.
+ * {@code table} must be a validated identifier.
+ */
+record DictionarySql(String likePrefix, String likeContains, String trigramContains, String fts, String popular) {
+
+    static DictionarySql of(String table) {
+        return new DictionarySql("""
+                SELECT name AS value
+                FROM %1$s
+                WHERE name LIKE :q || '%%' COLLATE NOCASE
+                ORDER BY CASE WHEN name = :q COLLATE NOCASE THEN 0 ELSE 1 END,
+                         length(name), popularity DESC, name
+                LIMIT :limit
+                """.formatted(table), """
+                SELECT name AS value
+                FROM %1$s
+                WHERE name LIKE '%%' || :q || '%%' COLLATE NOCASE
+                ORDER BY CASE WHEN name LIKE :q || '%%' COLLATE NOCASE THEN 0 ELSE 1 END,
+                         length(name), popularity DESC, name
+                LIMIT :limit
+                """.formatted(table), """
+                SELECT p.name AS value
+                FROM %1$s_trigram t
+                JOIN %1$s p ON p.id = t.rowid
+                WHERE t.name LIKE '%%' || :q || '%%'
+                ORDER BY CASE WHEN p.name LIKE :q || '%%' COLLATE NOCASE THEN 0 ELSE 1 END,
+                         length(p.name), p.popularity DESC, p.name
+                LIMIT :limit
+                """.formatted(table), """
+                SELECT p.name, bm25(%1$s_fts) AS score
+                FROM %1$s_fts f
+                JOIN %1$s p ON p.id = f.rowid
+                WHERE %1$s_fts MATCH :match
+                ORDER BY score, p.popularity DESC, length(p.name), p.name
+                LIMIT :limit
+                """.formatted(table), """
+                SELECT name AS value
+                FROM %1$s
+                ORDER BY popularity DESC, length(name), name
+                LIMIT :limit
+                """.formatted(table));
+    }
+}
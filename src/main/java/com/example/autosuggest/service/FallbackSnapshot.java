@@ -0,0 +1,222 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-N PREFIX results for the most common short prefixes, kept in memory for the circuit-breaker fallback.
+ * <p>
+ * Built in the background after startup and every {@code refreshInterval}, on one low-priority thread. Prefixes of
+ * 2 to {@code maxPrefixLength} characters are taken in order of how many names they match (a proxy for how often
+ * they are typed) until the estimated heap size reaches {@code maxBytes}. With the {@code memory-trie} engine
+ * loaded, prefixes and their top N come from the trie without touching the database. Otherwise one grouped count
+ * per prefix length (capped at what {@code maxBytes} could hold) picks the prefixes, and a {@code LIMIT N} query
+ * per prefix fetches its names; each statement takes its own {@link DbGate} permit through the read pool, so
+ * suggest queries get their turn between them and no more than N names per prefix are ever on the heap. A failed
+ * rebuild keeps the previous snapshot, so an outage never empties it. A longer query is answered by filtering its longest snapshotted
+ * prefix, which is exact when that prefix had at most N matches and a best-effort subset otherwise.
+ */
+@Component
+public class FallbackSnapshot implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(FallbackSnapshot.class);
+
+    // Rough heap cost: map entry + list per prefix, Suggestion + String header per item, 2 bytes per char
+    private static final int PREFIX_OVERHEAD = 96;
+    private static final int ITEM_OVERHEAD = 64;
+    private static final String PREFIX_COUNTS = """
+            SELECT lower(substr(name, 1, :len)) AS p, count(*) AS n
+            FROM people
+            WHERE name IS NOT NULL AND length(name) >= :len
+            GROUP BY p
+            ORDER BY n DESC
+            LIMIT :limit
+            """;
+    private static final String TOP_N = DictionarySql.of(Dictionaries.PRIMARY).likePrefix();
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final DbGate gate;
+    private final MemoryTrieIndex trieIndex;
+    private final boolean enabled;
+    private final int topN;
+    private final int maxPrefixLength;
+    private final long maxBytes;
+    private final Duration refreshInterval;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private ScheduledExecutorService refresher;
+
+    public FallbackSnapshot(@Qualifier("suggestReadJdbc") NamedParameterJdbcTemplate jdbc,
+                            DbGate gate,
+                            MemoryTrieIndex trieIndex,
+                            @Value("${suggest.fallback.snapshot.enabled:false}") boolean enabled,
+                            @Value("${suggest.fallback.snapshot.topN:10}") int topN,
+                            @Value("${suggest.fallback.snapshot.maxPrefixLength:4}") int maxPrefixLength,
+                            @Value("${suggest.fallback.snapshot.maxBytes:8388608}") long maxBytes,
+                            @Value("${suggest.fallback.snapshot.refreshInterval:PT5M}") Duration refreshInterval,
+                            MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.gate = gate;
+        this.trieIndex = trieIndex;
+        this.enabled = enabled;
+        this.topN = Math.max(1, Math.min(topN, SuggestService.MAX_LIMIT));
+        this.maxPrefixLength = Math.max(2, maxPrefixLength);
+        this.maxBytes = maxBytes;
+        this.refreshInterval = refreshInterval;
+        if (meterRegistry != null) {
+            Gauge.builder("suggest.fallback.snapshot.prefixes", this, s -> s.snapshot.prefixes.size()).register(meterRegistry);
+            Gauge.builder("suggest.fallback.snapshot.bytes", this, s -> s.snapshot.bytes).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        // Off the startup path: the breaker serves empty fallbacks until the first build lands
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fallback-snapshot");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        if (!refreshInterval.isZero() && !refreshInterval.isNegative()) {
+            refresher.scheduleWithFixedDelay(this::reloadQuietly, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            refresher.execute(this::reloadQuietly);
+            refresher.shutdown();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Up to {@code limit} (at most N) PREFIX matches of {@code q} from the snapshot, or {@code null} when no
+     * snapshotted prefix covers it.
+     */
+    public List<Suggestion> lookup(String q, int limit) {
+        String key = SuggestCache.normalize(q);
+        Map<String, List<Suggestion>> prefixes = snapshot.prefixes;
+        for (int len = Math.min(key.length(), maxPrefixLength); len >= 2; len--) {
+            List<Suggestion> base = prefixes.get(key.substring(0, len));
+            if (base == null) continue;
+            if (len == key.length()) return base.size() > limit ? base.subList(0, limit) : base;
+            List<Suggestion> out = new ArrayList<>(Math.min(limit, base.size()));
+            for (Suggestion s : base) {
+                if (out.size() == limit) break;
+                if (SuggestCache.normalize(s.value()).startsWith(key)) out.add(s);
+            }
+            return out;
+        }
+        return null;
+    }
+
+    public synchronized void reload() {
+        long t0 = System.nanoTime();
+        PrefixTrie trie = trieIndex.serving();
+        // The trie keeps top-K per prefix; fewer than N is no use here
+        if (trie != null && trie.topK() < topN) trie = null;
+        List<Candidate> candidates = trie != null ? candidates(trie) : candidates();
+        candidates.sort(Comparator.comparingInt(Candidate::matches).reversed()
+                .thenComparingInt(c -> c.prefix().length()));
+
+        Map<String, List<Suggestion>> prefixes = new HashMap<>();
+        long bytes = 0;
+        for (Candidate c : candidates) {
+            String key = SuggestCache.normalize(c.prefix());
+            if (prefixes.containsKey(key)) continue;
+            List<String> names = trie != null ? trie.complete(c.prefix(), topN) : top(c.prefix());
+            long cost = PREFIX_OVERHEAD + 2L * key.length();
+            List<Suggestion> items = new ArrayList<>(names.size());
+            for (String name : names) {
+                cost += ITEM_OVERHEAD + 2L * name.length();
+                items.add(new Suggestion(name, null));
+            }
+            if (bytes + cost > maxBytes) break;
+            prefixes.put(key, List.copyOf(items));
+            bytes += cost;
+        }
+        snapshot = new Snapshot(Map.copyOf(prefixes), bytes);
+        log.info("Fallback snapshot loaded from {}: {} of {} prefixes (~{} KB) in {} ms", trie != null ? "the trie" : "people",
+                prefixes.size(), candidates.size(), bytes / 1024, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    // Keys are sorted, so every prefix is one run of positions: count the runs per length
+    private List<Candidate> candidates(PrefixTrie trie) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int len = 2; len <= maxPrefixLength; len++) {
+            int pos = 0;
+            while (pos < trie.size()) {
+                String k = trie.keyAt(pos);
+                if (k.length() < len) {
+                    pos++;
+                    continue;
+                }
+                int end = pos + 1;
+                while (end < trie.size() && trie.keyAt(end).length() >= len && trie.keyAt(end).regionMatches(0, k, 0, len)) end++;
+                candidates.add(new Candidate(k.substring(0, len), end - pos));
+                pos = end;
+            }
+        }
+        return candidates;
+    }
+
+    // No more prefixes per length than maxBytes could hold even with no names in them
+    private List<Candidate> candidates() {
+        long limit = Math.max(1, maxBytes / (PREFIX_OVERHEAD + 4));
+        List<Candidate> candidates = new ArrayList<>();
+        for (int len = 2; len <= maxPrefixLength; len++) {
+            MapSqlParameterSource params = new MapSqlParameterSource().addValue("len", len).addValue("limit", limit);
+            candidates.addAll(gate.call(() -> jdbc.query(PREFIX_COUNTS, params,
+                    (rs, i) -> new Candidate(rs.getString(1), rs.getInt(2)))));
+        }
+        // LIKE would read these as wildcards
+        candidates.removeIf(c -> c.prefix().indexOf('%') >= 0 || c.prefix().indexOf('_') >= 0);
+        return candidates;
+    }
+
+    private List<String> top(String prefix) {
+        MapSqlParameterSource params = new MapSqlParameterSource().addValue("q", prefix).addValue("limit", topN);
+        return gate.call(() -> jdbc.queryForList(TOP_N, params, String.class));
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Fallback snapshot refresh failed, keeping the previous one: {}", e.getMessage());
+        }
+    }
+
+    private record Candidate(String prefix, int matches) {}
+
+    private record Snapshot(Map<String, List<Suggestion>> prefixes, long bytes) {
+        static final Snapshot EMPTY = new Snapshot(Map.of(), 0);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A degraded answer from {@link SuggestService#suggestFallback}; {@code source} says where it came from
+ * ({@code cache}, {@code snapshot} or {@code empty}). Callers use it to mark the response and must not treat it
+ * as a complete candidate set.
+ */
+public final class FallbackSuggestions extends AbstractList<Suggestion> implements RandomAccess {
+
+    private final List<Suggestion> items;
+    private final String source;
+
+    FallbackSuggestions(List<Suggestion> items, String source) {
+        this.items = items;
+        this.source = source;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    @Override
+    public Suggestion get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+}
@@ -1,20 +1,51 @@
 package com.example.autosuggest.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
+
 @Service
-public class FtsAdminService {
+public class FtsAdminService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(FtsAdminService.class);
 
     private final JdbcTemplate jdbc;
     private final boolean manageFts;
+    private final boolean trigram;
 
     public FtsAdminService(NamedParameterJdbcTemplate npJdbc,
-                           @Value("${suggest.fts.manage:true}") boolean manageFts) {
+                           @Value("${suggest.fts.manage:true}") boolean manageFts,
+                           @Value("${suggest.fts.trigram.enabled:false}") boolean trigram) {
         this.jdbc = npJdbc.getJdbcTemplate();
         this.manageFts = manageFts;
+        this.trigram = trigram;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!manageFts) return;
+        if (!trigram) {
+            // Nothing reads people_trigram, so stop paying for it on every write
+            jdbc.execute("DROP TRIGGER IF EXISTS people_trigram_ai");
+            jdbc.execute("DROP TRIGGER IF EXISTS people_trigram_ad");
+            jdbc.execute("DROP TRIGGER IF EXISTS people_trigram_au");
+            return;
+        }
+        // CONTAINS is served from the trigram index, so it must be complete before the first request
+        ensureTrigramTriggers();
+        Long indexed = jdbc.queryForObject("SELECT count(*) FROM people_trigram_docsize", Long.class);
+        Long rows = jdbc.queryForObject("SELECT count(*) FROM people", Long.class);
+        if (!Objects.equals(indexed, rows)) {
+            log.info("Trigram index holds {} of {} names; rebuilding", indexed, rows);
+            jdbc.execute("INSERT INTO people_trigram(people_trigram) VALUES('rebuild')");
+        }
     }
 
     public void ensureTriggers() {
@@ -30,16 +61,66 @@ public class FtsAdminService {
                 "  INSERT INTO people_fts(people_fts, rowid, name) VALUES('delete', old.id, old.name);\n" +
                 "  INSERT INTO people_fts(rowid, name) VALUES (new.id, new.name);\n" +
                 "END;");
+        if (trigram) ensureTrigramTriggers();
     }
 
     public void rebuild() {
         if (!manageFts) return;
         jdbc.execute("INSERT INTO people_fts(people_fts) VALUES('rebuild')");
+        if (trigram) jdbc.execute("INSERT INTO people_trigram(people_trigram) VALUES('rebuild')");
     }
 
     public void optimize() {
         if (!manageFts) return;
         jdbc.execute("INSERT INTO people_fts(people_fts) VALUES('optimize')");
+        if (trigram) jdbc.execute("INSERT INTO people_trigram(people_trigram) VALUES('optimize')");
+    }
+
+    /**
+     * Creates {@code <table>_fts} (same tokenizer as {@code people_fts}) and its sync triggers for another
+     * dictionary's table, then rebuilds it if it does not hold every row. {@code table} must be a validated
+     * identifier.
+     */
+    public void ensureFts(String table) {
+        jdbc.execute("CREATE VIRTUAL TABLE IF NOT EXISTS " + table + "_fts USING fts5(name, content='" + table
+                + "', content_rowid='id', tokenize = 'unicode61 remove_diacritics 2')");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_ai AFTER INSERT ON " + table + " BEGIN\n" +
+                "  INSERT INTO " + table + "_fts(rowid, name) VALUES (new.id, new.name);\n" +
+                "END;");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_ad AFTER DELETE ON " + table + " BEGIN\n" +
+                "  INSERT INTO " + table + "_fts(" + table + "_fts, rowid, name) VALUES('delete', old.id, old.name);\n" +
+                "END;");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_au AFTER UPDATE OF id, name ON " + table + " BEGIN\n" +
+                "  INSERT INTO " + table + "_fts(" + table + "_fts, rowid, name) VALUES('delete', old.id, old.name);\n" +
+                "  INSERT INTO " + table + "_fts(rowid, name) VALUES (new.id, new.name);\n" +
+                "END;");
+        Long indexed = jdbc.queryForObject("SELECT count(*) FROM " + table + "_fts_docsize", Long.class);
+        Long rows = jdbc.queryForObject("SELECT count(*) FROM " + table, Long.class);
+        if (!Objects.equals(indexed, rows)) {
+            log.info("{}_fts holds {} of {} names; rebuilding", table, indexed, rows);
+            rebuild(table);
+        }
+    }
+
+    public void rebuild(String table) {
+        jdbc.execute("INSERT INTO " + table + "_fts(" + table + "_fts) VALUES('rebuild')");
+    }
+
+    public void rebuildTrigram() {
+        jdbc.execute("INSERT INTO people_trigram(people_trigram) VALUES('rebuild')");
     }
-}
 
+    private void ensureTrigramTriggers() {
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS people_trigram_ai AFTER INSERT ON people BEGIN\n" +
+                "  INSERT INTO people_trigram(rowid, name) VALUES (new.id, new.name);\n" +
+                "END;");
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS people_trigram_ad AFTER DELETE ON people BEGIN\n" +
+                "  INSERT INTO people_trigram(people_trigram, rowid, name) VALUES('delete', old.id, old.name);\n" +
+                "END;");
+        // Popularity clicks do not change the indexed text
+        jdbc.execute("CREATE TRIGGER IF NOT EXISTS people_trigram_au AFTER UPDATE OF id, name ON people BEGIN\n" +
+                "  INSERT INTO people_trigram(people_trigram, rowid, name) VALUES('delete', old.id, old.name);\n" +
+                "  INSERT INTO people_trigram(rowid, name) VALUES (new.id, new.name);\n" +
+                "END;");
+    }
+}
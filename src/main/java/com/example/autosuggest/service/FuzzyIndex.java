@@ -0,0 +1,162 @@
+package com.example.autosuggest.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable typo-tolerant index over a name dictionary.
+ * <p>
+ * Names live in a {@link PrefixTrie} keyed by lower-cased, diacritic-folded name and ranked by popularity.
+ * Its sorted keys are the leaves of the trie, so a depth-first walk is a linear pass where consecutive
+ * keys share their common prefix. One row of the Damerau-Levenshtein (optimal string alignment) matrix is
+ * kept per depth: each trie edge costs one row and keys sharing a prefix reuse its rows. Once every cell of
+ * a row exceeds the edit budget no extension can get closer, so the subtree is either skipped or, if the
+ * query already matched a prefix on the path, answered at that distance from the node's pre-ranked top-K.
+ * <p>
+ * Matching is prefix-tolerant: a name matches when some prefix of it is within the budget of the query,
+ * so "micorsof" finds "Microsoft" while the user is still typing.
+ */
+final class FuzzyIndex {
+
+    record Match(String name, int distance, long popularity) {}
+
+    // Fewer edits first, then the usual popularity / length / name tie-breaks
+    static final Comparator<Match> ORDER = Comparator
+            .comparingInt(Match::distance)
+            .thenComparing(Match::popularity, Comparator.reverseOrder())
+            .thenComparingInt((Match m) -> m.name().length())
+            .thenComparing(Match::name);
+
+    // Rank within a subtree, where every name is at the same distance
+    private static final Comparator<PrefixTrie.Entry> POPULARITY_ORDER = Comparator
+            .comparing(PrefixTrie.Entry::popularity, Comparator.reverseOrder())
+            .thenComparingInt((PrefixTrie.Entry e) -> e.name().length())
+            .thenComparing(PrefixTrie.Entry::name);
+
+    private final PrefixTrie trie;
+
+    private FuzzyIndex(PrefixTrie trie) {
+        this.trie = trie;
+    }
+
+    static FuzzyIndex build(List<PrefixTrie.Entry> entries, int topK) {
+        return new FuzzyIndex(PrefixTrie.build(entries, topK, POPULARITY_ORDER, FuzzyIndex::key));
+    }
+
+    static String key(String s) {
+        String folded = Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        return folded.toLowerCase(Locale.ROOT);
+    }
+
+    int size() {
+        return trie.size();
+    }
+
+    int topK() {
+        return trie.topK();
+    }
+
+    /** Names within {@code maxEdits} of {@code q} (as a prefix), best first, at most {@code limit}. */
+    List<Match> search(String q, int maxEdits, int limit) {
+        char[] query = key(q).toCharArray();
+        int m = query.length;
+        int n = trie.size();
+        if (m == 0 || n == 0 || limit <= 0) return List.of();
+
+        // Worst of the current best `limit` matches on top, so it can be evicted
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, ORDER.reversed());
+        int[][] rows = new int[16][];
+        rows[0] = new int[m + 1];
+        for (int j = 0; j <= m; j++) rows[0][j] = j;
+        // prefixDist[d]: distance of the query to the closest key prefix of length <= d on the current path
+        int[] prefixDist = new int[16];
+        prefixDist[0] = m;
+        char[] path = new char[16];
+        int valid = 0; // rows[0..valid] are computed for path[0..valid)
+        int budget = maxEdits;
+
+        int pos = 0;
+        while (pos < n) {
+            String key = trie.keyAt(pos);
+            int shared = 0;
+            int lim = Math.min(valid, key.length());
+            while (shared < lim && path[shared] == key.charAt(shared)) shared++;
+            if (key.length() + 1 > rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(rows.length * 2, key.length() + 1));
+                prefixDist = Arrays.copyOf(prefixDist, rows.length);
+                path = Arrays.copyOf(path, rows.length);
+            }
+
+            int depth = shared;
+            boolean pruned = false;
+            while (depth < key.length()) {
+                char c = key.charAt(depth);
+                path[depth] = c;
+                int[] prev = rows[depth];
+                int[] row = rows[depth + 1];
+                if (row == null) row = rows[depth + 1] = new int[m + 1];
+                row[0] = depth + 1;
+                int rowMin = row[0];
+                for (int j = 1; j <= m; j++) {
+                    int cost = query[j - 1] == c ? 0 : 1;
+                    int v = Math.min(Math.min(prev[j] + 1, row[j - 1] + 1), prev[j - 1] + cost);
+                    if (depth > 0 && j > 1 && c == query[j - 2] && path[depth - 1] == query[j - 1]) {
+                        v = Math.min(v, rows[depth - 1][j - 2] + 1); // transposition
+                    }
+                    row[j] = v;
+                    if (v < rowMin) rowMin = v;
+                }
+                prefixDist[depth + 1] = Math.min(prefixDist[depth], row[m]);
+                depth++;
+                if (rowMin > budget) {
+                    pruned = true;
+                    break;
+                }
+            }
+            valid = depth;
+
+            int d = prefixDist[depth];
+            if (!pruned) {
+                if (d <= budget) budget = offer(best, limit, budget, pos, d);
+                pos++;
+                continue;
+            }
+            // Nothing below path[0..depth) gets closer than d
+            String prefix = key.substring(0, depth);
+            if (d <= budget) {
+                for (int hit : trie.top(prefix, limit)) budget = offer(best, limit, budget, hit, d);
+            }
+            pos = skipPrefix(pos, prefix);
+        }
+
+        List<Match> out = new ArrayList<>(best);
+        out.sort(ORDER);
+        return out;
+    }
+
+    private int offer(PriorityQueue<Match> best, int limit, int budget, int pos, int distance) {
+        best.add(new Match(trie.name(pos), distance, trie.popularity(pos)));
+        if (best.size() > limit) {
+            best.poll();
+            // A full result set means worse distances can no longer make it in
+            return Math.min(budget, best.peek().distance());
+        }
+        return budget;
+    }
+
+    // First position after `from` whose key does not start with `prefix`
+    private int skipPrefix(int from, String prefix) {
+        int lo = from + 1, hi = trie.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (trie.keyAt(mid).startsWith(prefix)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.autosuggest.service;
+
+/** Another bulk import is still loading; imports run one at a time because SQLite has a single writer. */
+public class ImportInProgressException extends RuntimeException {
+
+    public ImportInProgressException(String message) {
+        super(message);
+    }
+}
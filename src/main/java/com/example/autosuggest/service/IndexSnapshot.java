@@ -0,0 +1,415 @@
+package com.example.autosuggest.service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable, memory-mapped suggestion dictionary.
+ * <p>
+ * Layout (big-endian, offsets absolute):
+ * <pre>
+ * header   magic, format, version, entryCount, topK, blockCount, blockIndexOffset, nodeCount, nodeIndexOffset
+ * entries  blocks of {@value #BLOCK} names in key order, front-coded against the previous name in the block:
+ *          varint shared, varint suffixLen, suffix bytes (UTF-8), varint rank, varlong popularity
+ * blocks   int offset of each block
+ * nodes    one record per prefix matching more than topK names:
+ *          varint keyLen, key bytes (UTF-8), varint count, int ordinal * count (best first)
+ * node idx int offset of each node record, in key order
+ * </pre>
+ * Prefixes without a node record match at most topK names, so they are answered by scanning a short run of
+ * blocks. All reads use absolute positions, so a single mapping is safely shared across request threads.
+ */
+final class IndexSnapshot {
+
+    static final int MAGIC = 0x41534E50; // "ASNP"
+    static final int FORMAT = 1;
+    static final int BLOCK = 16;
+    private static final int HEADER_BYTES = 64;
+
+    private final Path path;
+    private final ByteBuffer buf;
+    private final long version;
+    private final int entryCount;
+    private final int topK;
+    private final int blockCount;
+    private final int blockIndexOffset;
+    private final int nodeCount;
+    private final int nodeIndexOffset;
+
+    private IndexSnapshot(Path path, ByteBuffer buf) throws IOException {
+        this.path = path;
+        this.buf = buf;
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a suggestion snapshot: " + path);
+        }
+        if (buf.getInt(4) != FORMAT) {
+            throw new IOException("Unsupported snapshot format " + buf.getInt(4) + ": " + path);
+        }
+        this.version = buf.getLong(8);
+        this.entryCount = buf.getInt(16);
+        this.topK = buf.getInt(20);
+        this.blockCount = buf.getInt(24);
+        this.blockIndexOffset = buf.getInt(28);
+        this.nodeCount = buf.getInt(32);
+        this.nodeIndexOffset = buf.getInt(36);
+    }
+
+    static IndexSnapshot open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshots above 2 GiB are not supported: " + path);
+            }
+            // The mapping outlives the channel; pages are shared with the OS cache, not copied to the heap
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new IndexSnapshot(path, mapped);
+        }
+    }
+
+    /**
+     * Streams entries into {@code target} via a temp file and an atomic rename. Entries must arrive in key order
+     * ({@link PrefixTrie#key}), ties best first, each with its rank in the LIKE ordering; only the open prefixes of
+     * the current key and the (key, offset) of each node record are held in memory.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path tmp;
+        private final Path nodesTmp;
+        private final FileChannel ch;
+        private final DataOutputStream out;
+        private final DataOutputStream nodes;
+        private final long version;
+        private final int topK;
+        // levels.get(d) collects the prefix of length d of the previous key
+        private final List<Level> levels = new ArrayList<>();
+        private final List<String> nodeKeys = new ArrayList<>();
+        private int[] nodeOffsets = new int[64];
+        private int[] blockOffsets = new int[64];
+        private int count;
+        private String prevKey;
+        private byte[] prev = new byte[0];
+        private boolean committed;
+
+        Writer(Path target, long version, int topK) throws IOException {
+            this.target = target;
+            this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.nodesTmp = target.resolveSibling(target.getFileName() + ".nodes.tmp");
+            this.version = version;
+            this.topK = Math.max(1, topK);
+            this.ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+            this.nodes = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(nodesTmp), 1 << 16));
+            out.write(new byte[HEADER_BYTES]);
+            levels.add(new Level(this.topK));
+        }
+
+        void add(String name, int rank, long popularity) throws IOException {
+            String key = PrefixTrie.key(name);
+            if (prevKey != null && key.compareTo(prevKey) < 0) {
+                throw new IOException("Snapshot entries out of key order: '" + name + "' after '" + prevKey + "'");
+            }
+            int shared = prevKey == null ? 0 : commonPrefix(prevKey, key);
+            closeDownTo(shared);
+            while (levels.size() <= key.length()) levels.add(new Level(topK));
+            Level level = levels.get(key.length());
+            level.count++;
+            level.offer(((long) rank << 32) | count);
+
+            byte[] cur = name.getBytes(StandardCharsets.UTF_8);
+            int sharedBytes = 0;
+            if (count % BLOCK == 0) {
+                if (count / BLOCK == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+                blockOffsets[count / BLOCK] = checkedSize(out);
+            } else {
+                sharedBytes = Arrays.mismatch(prev, cur);
+                if (sharedBytes < 0) sharedBytes = cur.length;
+            }
+            writeVarLong(out, sharedBytes);
+            writeVarLong(out, cur.length - sharedBytes);
+            out.write(cur, sharedBytes, cur.length - sharedBytes);
+            writeVarLong(out, rank);
+            writeVarLong(out, Math.max(0, popularity));
+            prev = cur;
+            prevKey = key;
+            if (++count < 0) throw new IOException("Too many snapshot entries");
+        }
+
+        /** Writes the indexes and header, then renames the file into place. */
+        void commit() throws IOException {
+            closeDownTo(0);
+            closeLevel(0);
+            nodes.close();
+
+            int blocks = (count + BLOCK - 1) / BLOCK;
+            int blockIndex = checkedSize(out);
+            for (int b = 0; b < blocks; b++) out.writeInt(blockOffsets[b]);
+
+            int nodesBase = checkedSize(out);
+            Files.copy(nodesTmp, out);
+            // Records were written children first; lookups binary-search the index by key
+            Integer[] order = new Integer[nodeKeys.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparing(nodeKeys::get));
+            int nodeIndex = checkedSize(out);
+            for (int i : order) out.writeInt(nodesBase + nodeOffsets[i]);
+            checkedSize(out);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(version)
+                    .putInt(count).putInt(topK).putInt(blocks).putInt(blockIndex)
+                    .putInt(order.length).putInt(nodeIndex);
+            header.clear();
+            ch.write(header, 0);
+            ch.force(true);
+            ch.close();
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                nodes.close();
+                ch.close();
+            } finally {
+                Files.deleteIfExists(nodesTmp);
+                if (!committed) Files.deleteIfExists(tmp);
+            }
+        }
+
+        private void closeDownTo(int depth) throws IOException {
+            while (levels.size() - 1 > depth) {
+                closeLevel(levels.size() - 1);
+                Level child = levels.remove(levels.size() - 1);
+                Level parent = levels.get(levels.size() - 1);
+                parent.count += child.count;
+                for (int i = 0; i < child.size; i++) parent.offer(child.top[i]);
+            }
+        }
+
+        // Same rule as the trie: only prefixes matching more than topK names get a node record
+        private void closeLevel(int depth) throws IOException {
+            Level level = levels.get(depth);
+            level.trim();
+            if (level.count <= topK) return;
+            int off = nodes.size();
+            if (nodeKeys.size() == nodeOffsets.length) nodeOffsets = Arrays.copyOf(nodeOffsets, nodeOffsets.length * 2);
+            nodeOffsets[nodeKeys.size()] = off;
+            String prefixKey = prevKey.substring(0, depth);
+            nodeKeys.add(prefixKey);
+            byte[] key = prefixKey.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(nodes, key.length);
+            nodes.write(key);
+            writeVarLong(nodes, level.size);
+            for (int i = 0; i < level.size; i++) nodes.writeInt((int) level.top[i]);
+            checkedSize(nodes);
+        }
+
+        private static int commonPrefix(String a, String b) {
+            int n = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < n && a.charAt(i) == b.charAt(i)) i++;
+            return i;
+        }
+    }
+
+    // Entries under one prefix: how many, and the best topK as (rank << 32 | ordinal), so a plain sort ranks them
+    private static final class Level {
+        private final int cap;
+        long count;
+        long[] top = new long[8];
+        int size;
+
+        Level(int topK) {
+            this.cap = 2 * topK;
+        }
+
+        void offer(long packed) {
+            if (size == cap) trim();
+            if (size == top.length) top = Arrays.copyOf(top, Math.min(cap, size * 2));
+            top[size++] = packed;
+        }
+
+        void trim() {
+            Arrays.sort(top, 0, size);
+            size = Math.min(size, cap / 2);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long version() {
+        return version;
+    }
+
+    int size() {
+        return entryCount;
+    }
+
+    int topK() {
+        return topK;
+    }
+
+    /** Names matching {@code prefixKey} (already lower-cased), best first, at most {@code limit}. */
+    List<String> complete(String prefixKey, int limit) {
+        int node = findNode(prefixKey);
+        if (node >= 0) {
+            Cursor c = new Cursor(node);
+            int keyLen = c.varInt();
+            c.pos += keyLen;
+            int count = Math.min(limit, c.varInt());
+            List<String> out = new ArrayList<>(count);
+            Cursor entry = new Cursor(0);
+            for (int i = 0; i < count; i++) {
+                out.add(entry.nameAt(buf.getInt(c.pos + 4 * i)));
+            }
+            return out;
+        }
+        return scanRange(prefixKey, limit);
+    }
+
+    // No node record: the prefix matches at most topK names, all within a short run of blocks
+    private List<String> scanRange(String prefixKey, int limit) {
+        if (entryCount == 0) return List.of();
+        int lo = 0, hi = blockCount - 1;
+        Cursor c = new Cursor(0);
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            c.seekBlock(mid);
+            c.next();
+            if (PrefixTrie.key(c.name()).compareTo(prefixKey) < 0) lo = mid;
+            else hi = mid - 1;
+        }
+        c.seekBlock(lo);
+        List<String> names = new ArrayList<>();
+        List<Integer> ranks = new ArrayList<>();
+        for (int ord = lo * BLOCK; ord < entryCount; ord++) {
+            if (ord % BLOCK == 0) c.seekBlock(ord / BLOCK);
+            c.next();
+            String name = c.name();
+            String key = PrefixTrie.key(name);
+            if (key.startsWith(prefixKey)) {
+                names.add(name);
+                ranks.add(c.rank);
+            } else if (key.compareTo(prefixKey) > 0) {
+                break;
+            }
+        }
+        long[] packed = new long[names.size()];
+        for (int i = 0; i < packed.length; i++) packed[i] = ((long) ranks.get(i) << 32) | i;
+        Arrays.sort(packed);
+        List<String> out = new ArrayList<>(Math.min(limit, packed.length));
+        for (int i = 0; i < packed.length && i < limit; i++) out.add(names.get((int) packed[i]));
+        return out;
+    }
+
+    private int findNode(String prefixKey) {
+        int lo = 0, hi = nodeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int off = buf.getInt(nodeIndexOffset + 4 * mid);
+            int cmp = nodeKey(off).compareTo(prefixKey);
+            if (cmp == 0) return off;
+            if (cmp < 0) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return -1;
+    }
+
+    private String nodeKey(int off) {
+        Cursor c = new Cursor(off);
+        int len = c.varInt();
+        byte[] key = new byte[len];
+        buf.get(c.pos, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static int checkedSize(DataOutputStream out) throws IOException {
+        // DataOutputStream.size() saturates at Integer.MAX_VALUE
+        if (out.size() == Integer.MAX_VALUE) throw new IOException("Snapshot exceeds 2 GiB");
+        return out.size();
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    // Sequential decoder over the mapped buffer; cheap to create per lookup
+    private final class Cursor {
+        int pos;
+        byte[] name = new byte[64];
+        int nameLen;
+        int rank;
+        long popularity;
+
+        Cursor(int pos) {
+            this.pos = pos;
+        }
+
+        void seekBlock(int block) {
+            pos = buf.getInt(blockIndexOffset + 4 * block);
+            nameLen = 0;
+        }
+
+        void next() {
+            int shared = varInt();
+            int suffix = varInt();
+            if (shared + suffix > name.length) name = Arrays.copyOf(name, Math.max(name.length * 2, shared + suffix));
+            buf.get(pos, name, shared, suffix);
+            pos += suffix;
+            nameLen = shared + suffix;
+            rank = varInt();
+            popularity = varLong();
+        }
+
+        String nameAt(int ordinal) {
+            seekBlock(ordinal / BLOCK);
+            for (int i = ordinal % BLOCK; i >= 0; i--) next();
+            return name();
+        }
+
+        String name() {
+            return new String(name, 0, nameLen, StandardCharsets.UTF_8);
+        }
+
+        int varInt() {
+            return (int) varLong();
+        }
+
+        long varLong() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return v;
+        }
+    }
+}
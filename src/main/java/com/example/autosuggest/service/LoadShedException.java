@@ -0,0 +1,9 @@
+package com.example.autosuggest.service;
+
+/** Shed by {@link AdaptiveLimiter}: the request arrived while the concurrency limit was in use. */
+public class LoadShedException extends OverloadedException {
+
+    public LoadShedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Holds the in-process {@link FuzzyIndex} that serves {@code mode=FUZZY} for the SQLite-backed engines.
+ * Loaded from {@code people} at startup, swapped atomically on {@link #reload()} and, optionally, every
+ * {@code refreshInterval}. With cache invalidation on, {@link CacheInvalidationService} reloads it after drained
+ * changes instead, so the timer stays off.
+ */
+@Component
+public class MemoryFuzzyIndex implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryFuzzyIndex.class);
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final boolean enabled;
+    private final int maxEdits;
+    private final Duration refreshInterval;
+    private volatile FuzzyIndex index;
+    private volatile long version;
+    private ScheduledExecutorService refresher;
+
+    public MemoryFuzzyIndex(@Qualifier("suggestReadJdbc") NamedParameterJdbcTemplate jdbc,
+                            @Value("${suggest.engine:sqlite-like}") String engine,
+                            @Value("${suggest.fuzzy.enabled:false}") boolean enabled,
+                            @Value("${suggest.fuzzy.maxEdits:2}") int maxEdits,
+                            @Value("${suggest.fuzzy.refreshInterval:PT0S}") Duration refreshInterval,
+                            @Value("${suggest.cache.invalidation.enabled:false}") boolean drained,
+                            MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        // Oracle Text has its own fuzzy operator
+        this.enabled = enabled && !"oracle-text".equals(engine);
+        this.maxEdits = maxEdits;
+        // A timed reload would only drop every cached FUZZY entry to read the same rows back
+        this.refreshInterval = drained ? Duration.ZERO : refreshInterval;
+        if (meterRegistry != null) {
+            Gauge.builder("suggest.fuzzy.entries", this, idx -> idx.index == null ? 0 : idx.index.size())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        reload();
+        if (!refreshInterval.isZero() && !refreshInterval.isNegative()) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fuzzy-refresher");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(this::reloadQuietly, refreshInterval.toMillis(),
+                    refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** Bumped by every {@link #reload()}, so callers can tell the index was swapped. */
+    public long version() {
+        return version;
+    }
+
+    /** Edit budget for a query: none below 3 characters, 1 up to 5, then {@code maxEdits}. */
+    public int editsFor(String q) {
+        int len = q.codePointCount(0, q.length());
+        if (len < 3) return 0;
+        return len < 6 ? Math.min(maxEdits, 1) : maxEdits;
+    }
+
+    public List<Suggestion> suggest(String q, int limit) {
+        List<FuzzyIndex.Match> matches = current().search(q, editsFor(q), limit);
+        List<Suggestion> out = new ArrayList<>(matches.size());
+        // Score is the edit distance (lower is better, like the FTS bm25 score)
+        for (FuzzyIndex.Match m : matches) out.add(new Suggestion(m.name(), (double) m.distance()));
+        return out;
+    }
+
+    /**
+     * Whether a (cached) FUZZY query is within its edit budget of any of {@code names}: only those queries can
+     * answer differently once the names change.
+     */
+    public Predicate<String> matchesAny(Collection<String> names) {
+        List<PrefixTrie.Entry> entries = new ArrayList<>(names.size());
+        for (String name : names) entries.add(new PrefixTrie.Entry(name, 0));
+        FuzzyIndex changed = FuzzyIndex.build(entries, 1);
+        return q -> !changed.search(q, editsFor(q), 1).isEmpty();
+    }
+
+    public synchronized void reload() {
+        long t0 = System.nanoTime();
+        List<PrefixTrie.Entry> entries = MemoryTrieIndex.loadEntries(jdbc);
+        index = FuzzyIndex.build(entries, SuggestService.MAX_LIMIT);
+        version++;
+        log.info("Fuzzy index loaded: {} names in {} ms", entries.size(), (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Fuzzy index refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private FuzzyIndex current() {
+        FuzzyIndex i = index;
+        if (i == null) {
+            synchronized (this) {
+                if (index == null) reload();
+                i = index;
+            }
+        }
+        return i;
+    }
+}
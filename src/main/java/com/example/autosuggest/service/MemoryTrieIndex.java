@@ -0,0 +1,104 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the in-process {@link PrefixTrie} used by the {@code memory-trie} engine.
+ * The trie is loaded once from {@code people} and swapped atomically on {@link #reload()}.
+ */
+@Component
+public class MemoryTrieIndex implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryTrieIndex.class);
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final int topK;
+    private final boolean preload;
+    private volatile PrefixTrie trie;
+    private volatile long version;
+
+    public MemoryTrieIndex(@Qualifier("suggestReadJdbc") NamedParameterJdbcTemplate jdbc,
+                           @Value("${suggest.engine:sqlite-like}") String engine,
+                           @Value("${suggest.trie.topK:50}") int topK,
+                           MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.topK = topK;
+        this.preload = "memory-trie".equals(engine);
+        // Cache misses are loaded at the max limit; anything above topK would bypass the trie for SQLite
+        if (preload && topK < SuggestService.MAX_LIMIT) {
+            throw new IllegalStateException("suggest.trie.topK is " + topK + "; the memory-trie engine needs at least "
+                    + SuggestService.MAX_LIMIT + " (the max limit)");
+        }
+        if (meterRegistry != null) {
+            Gauge.builder("suggest.trie.entries", this, idx -> idx.trie == null ? 0 : idx.trie.size())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // Build before readiness flips to UP so the first request does not pay for the load
+        if (preload) reload();
+    }
+
+    public int topK() {
+        return topK;
+    }
+
+    /** Bumped by every {@link #reload()}, so callers can tell the trie was swapped. */
+    public long version() {
+        return version;
+    }
+
+    public List<Suggestion> suggest(String q, int limit) {
+        List<String> names = current().complete(PrefixTrie.key(q), limit);
+        List<Suggestion> out = new ArrayList<>(names.size());
+        for (String name : names) out.add(new Suggestion(name, null));
+        return out;
+    }
+
+    public synchronized void reload() {
+        long t0 = System.nanoTime();
+        List<PrefixTrie.Entry> entries = loadEntries(jdbc);
+        trie = PrefixTrie.build(entries, topK, PrefixTrie.LIKE_ORDER);
+        version++;
+        log.info("Memory trie loaded: {} names in {} ms", entries.size(), (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    static List<PrefixTrie.Entry> loadEntries(NamedParameterJdbcTemplate jdbc) {
+        List<PrefixTrie.Entry> entries = new ArrayList<>();
+        jdbc.query("SELECT name, popularity FROM people WHERE name IS NOT NULL", new MapSqlParameterSource(),
+                rs -> { entries.add(new PrefixTrie.Entry(rs.getString(1), rs.getLong(2))); });
+        return entries;
+    }
+
+    /** The trie, if {@code memory-trie} is the engine and it has been loaded; {@code null} otherwise. */
+    PrefixTrie serving() {
+        return preload ? trie : null;
+    }
+
+    private PrefixTrie current() {
+        PrefixTrie t = trie;
+        if (t == null) {
+            synchronized (this) {
+                if (trie == null) reload();
+                t = trie;
+            }
+        }
+        return t;
+    }
+}
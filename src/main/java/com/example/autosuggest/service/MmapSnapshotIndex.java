@@ -0,0 +1,241 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Serves the {@code mmap-snapshot} engine from versioned {@link IndexSnapshot} files in
+ * {@code suggest.snapshot.dir}. The newest file is mapped at startup and whenever a newer one appears
+ * (built locally or dropped in by a build job); the swap is a single volatile write.
+ * <p>
+ * Nothing is built at startup or on a lookup: until a file is mapped, {@link #loaded()} is false and PREFIX is
+ * served from SQLite. Files come from {@code SnapshotBuildRunner}, the admin endpoint or a bulk import.
+ */
+@Component
+public class MmapSnapshotIndex implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MmapSnapshotIndex.class);
+    private static final Pattern FILE = Pattern.compile("suggest-(\\d+)\\.snap");
+    // Key order, ties best first, with each name's rank in the LIKE ordering; SQLite sorts, the writer streams
+    private static final String ROWS = """
+            SELECT name, coalesce(popularity, 0) AS popularity,
+                   row_number() OVER (ORDER BY length(name), coalesce(popularity, 0) DESC, name) - 1 AS rank
+            FROM people
+            WHERE name IS NOT NULL
+            ORDER BY name COLLATE NOCASE, rank
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Path dir;
+    private final int topK;
+    private final boolean active;
+    private final Duration pollInterval;
+    private volatile IndexSnapshot current;
+    private ScheduledExecutorService poller;
+
+    public MmapSnapshotIndex(@Qualifier("suggestReadJdbc") NamedParameterJdbcTemplate jdbc,
+                             @Value("${suggest.engine:sqlite-like}") String engine,
+                             @Value("${suggest.snapshot.dir:snapshots}") String dir,
+                             @Value("${suggest.snapshot.topK:50}") int topK,
+                             @Value("${suggest.snapshot.pollInterval:PT30S}") Duration pollInterval,
+                             MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.dir = Path.of(dir);
+        this.topK = topK;
+        this.active = "mmap-snapshot".equals(engine);
+        if (active) checkTopK();
+        this.pollInterval = pollInterval;
+        if (meterRegistry != null) {
+            Gauge.builder("suggest.snapshot.version", this, idx -> idx.current == null ? 0 : idx.current.version())
+                    .register(meterRegistry);
+            Gauge.builder("suggest.snapshot.entries", this, idx -> idx.current == null ? 0 : idx.current.size())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!active) return;
+        if (!loadLatest()) {
+            log.warn("No snapshot found in {}; PREFIX is served from SQLite until one is built "
+                    + "(suggest.snapshot.build=true or POST /admin/index/snapshot/build)", dir.toAbsolutePath());
+        }
+        if (!pollInterval.isZero() && !pollInterval.isNegative()) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "snapshot-poller");
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval.toMillis(), pollInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) poller.shutdownNow();
+    }
+
+    public int topK() {
+        IndexSnapshot s = current;
+        return s == null ? topK : s.topK();
+    }
+
+    public long version() {
+        IndexSnapshot s = current;
+        return s == null ? 0 : s.version();
+    }
+
+    /** Whether a snapshot is mapped; once true it stays true. */
+    public boolean loaded() {
+        return current != null;
+    }
+
+    public List<Suggestion> suggest(String q, int limit) {
+        IndexSnapshot s = current;
+        if (s == null) throw new IllegalStateException("No snapshot mapped from " + dir);
+        List<String> names = s.complete(PrefixTrie.key(q), limit);
+        List<Suggestion> out = new ArrayList<>(names.size());
+        for (String name : names) out.add(new Suggestion(name, null));
+        return out;
+    }
+
+    /** Builds a new snapshot from {@code people}, writes it next to the others and swaps it in. */
+    public synchronized long build() {
+        long version = write();
+        loadLatest();
+        return version;
+    }
+
+    /**
+     * Streams {@code people} into a new snapshot file next to the others without mapping it; serving nodes pick it
+     * up on their next poll. Returns its version.
+     */
+    public synchronized long write() {
+        checkTopK();
+        long t0 = System.nanoTime();
+        long newest = Math.max(version(), latestFile().map(MmapSnapshotIndex::versionOf).orElse(0L));
+        long version = Math.max(System.currentTimeMillis(), newest + 1);
+        Path target = dir.resolve("suggest-" + version + ".snap");
+        int[] rows = new int[1];
+        try {
+            Files.createDirectories(dir);
+            try (IndexSnapshot.Writer writer = new IndexSnapshot.Writer(target, version, topK)) {
+                jdbc.query(ROWS, new MapSqlParameterSource(), rs -> {
+                    try {
+                        writer.add(rs.getString(1), rs.getInt(3), rs.getLong(2));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to write snapshot " + target, e);
+                    }
+                    rows[0]++;
+                });
+                writer.commit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write snapshot " + target, e);
+        }
+        log.info("Snapshot {} written: {} names in {} ms", target.getFileName(), rows[0],
+                (System.nanoTime() - t0) / 1_000_000);
+        pruneOlderThan(version);
+        return version;
+    }
+
+    /** Maps the newest snapshot in the directory if it is newer than the one being served. */
+    public synchronized boolean loadLatest() {
+        Optional<Path> latest = latestFile();
+        if (latest.isEmpty()) return current != null;
+        long version = versionOf(latest.get());
+        if (current != null && current.version() >= version) return true;
+        try {
+            IndexSnapshot next = IndexSnapshot.open(latest.get());
+            if (next.topK() < SuggestService.MAX_LIMIT) {
+                // Written with a smaller K; every cache miss would go to SQLite, so keep what is served now
+                log.warn("Ignoring snapshot {}: it keeps top-{}, at least {} is needed", latest.get().getFileName(),
+                        next.topK(), SuggestService.MAX_LIMIT);
+                return current != null;
+            }
+            current = next;
+            log.info("Serving snapshot {} ({} names)", latest.get().getFileName(), next.size());
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map snapshot " + latest.get(), e);
+        }
+    }
+
+    // Cache misses are loaded at the max limit; anything above topK would bypass the snapshot for SQLite
+    private void checkTopK() {
+        if (topK < SuggestService.MAX_LIMIT) {
+            throw new IllegalStateException("suggest.snapshot.topK is " + topK + "; the mmap-snapshot engine needs at least "
+                    + SuggestService.MAX_LIMIT + " (the max limit)");
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            loadLatest();
+        } catch (RuntimeException e) {
+            log.warn("Snapshot poll failed: {}", e.getMessage());
+        }
+    }
+
+    // Keep the previous snapshot around so a just-replaced mapping can still be inspected or rolled back to
+    private void pruneOlderThan(long version) {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> FILE.matcher(p.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(MmapSnapshotIndex::versionOf).reversed())
+                    .skip(2)
+                    .filter(p -> versionOf(p) < version)
+                    .forEach(p -> {
+                        try {
+                            Files.deleteIfExists(p);
+                        } catch (IOException e) {
+                            log.debug("Could not delete old snapshot {}: {}", p, e.getMessage());
+                        }
+                    });
+        } catch (IOException e) {
+            log.debug("Could not prune snapshots in {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private Optional<Path> latestFile() {
+        if (!Files.isDirectory(dir)) return Optional.empty();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> FILE.matcher(p.getFileName().toString()).matches())
+                    .max(Comparator.comparingLong(MmapSnapshotIndex::versionOf));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list snapshots in " + dir, e);
+        }
+    }
+
+    private static long versionOf(Path p) {
+        Matcher m = FILE.matcher(p.getFileName().toString());
+        return m.matches() ? Long.parseLong(m.group(1)) : -1;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Second cache tier: serialized {@link CachedSuggestions} in direct (off-heap) buffers, so its size does not
+ * add to GC work.
+ * <p>
+ * Keys hash to one of {@code segments} segments, each a fixed direct buffer written as a circular log under its
+ * own lock. A new record overwrites the oldest ones, which is the eviction policy (FIFO by write), and the byte
+ * budget is fixed up front. The on-heap part is one index entry per key (key string and log position). A position
+ * older than one lap of the log is stale; stale index entries are dropped when read and swept once per lap.
+ */
+final class OffHeapCache {
+
+    // Record: [long writtenAt nanos][int payload length][payload]
+    private static final int HEADER = Long.BYTES + Integer.BYTES;
+
+    private final Segment[] segments;
+    private final long ttlNanos;
+
+    OffHeapCache(long maxBytes, int segments, long ttlNanos) {
+        int n = Integer.highestOneBit(Math.max(1, segments - 1)) << 1;
+        // One direct buffer per segment; a ByteBuffer is capped at 2 GB
+        long perSegment = Math.min(Math.max(4096, maxBytes / n), Integer.MAX_VALUE - 8);
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) this.segments[i] = new Segment((int) perSegment);
+        this.ttlNanos = ttlNanos;
+    }
+
+    CachedSuggestions get(String key) {
+        return segment(key).get(key, ttlNanos);
+    }
+
+    void put(String key, CachedSuggestions value) {
+        segment(key).put(key, encode(value));
+    }
+
+    boolean remove(String key) {
+        return segment(key).remove(key);
+    }
+
+    int removeIf(Predicate<String> keyTest) {
+        int removed = 0;
+        for (Segment s : segments) removed += s.removeIf(keyTest);
+        return removed;
+    }
+
+    void clear() {
+        for (Segment s : segments) s.removeIf(k -> true);
+    }
+
+    long entries() {
+        long n = 0;
+        for (Segment s : segments) n += s.size();
+        return n;
+    }
+
+    long capacityBytes() {
+        return (long) segments.length * segments[0].capacity;
+    }
+
+    private Segment segment(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    // [byte complete][int count] then per item [int utf8 length][utf8][byte hasScore][double score]?
+    static byte[] encode(CachedSuggestions value) {
+        List<Suggestion> items = value.items();
+        byte[][] names = new byte[items.size()][];
+        int size = 1 + Integer.BYTES;
+        for (int i = 0; i < items.size(); i++) {
+            String v = items.get(i).value();
+            names[i] = v == null ? null : v.getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + (names[i] == null ? 0 : names[i].length) + 1
+                    + (items.get(i).score() == null ? 0 : Double.BYTES);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put((byte) (value.complete() ? 1 : 0)).putInt(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            if (names[i] == null) {
+                buf.putInt(-1);
+            } else {
+                buf.putInt(names[i].length).put(names[i]);
+            }
+            Double score = items.get(i).score();
+            buf.put((byte) (score == null ? 0 : 1));
+            if (score != null) buf.putDouble(score);
+        }
+        return buf.array();
+    }
+
+    static CachedSuggestions decode(ByteBuffer buf) {
+        boolean complete = buf.get() == 1;
+        int count = buf.getInt();
+        List<Suggestion> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int len = buf.getInt();
+            String v = null;
+            if (len >= 0) {
+                byte[] utf8 = new byte[len];
+                buf.get(utf8);
+                v = new String(utf8, StandardCharsets.UTF_8);
+            }
+            Double score = buf.get() == 1 ? buf.getDouble() : null;
+            items.add(new Suggestion(v, score));
+        }
+        return new CachedSuggestions(List.copyOf(items), complete);
+    }
+
+    private static final class Segment {
+        final int capacity;
+        final ByteBuffer log;
+        final Map<String, Long> index = new HashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+        long written; // absolute log position of the next record
+        long sweptAt;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.log = ByteBuffer.allocateDirect(capacity);
+        }
+
+        CachedSuggestions get(String key, long ttlNanos) {
+            lock.lock();
+            try {
+                Long pos = index.get(key);
+                if (pos == null) return null;
+                if (pos < written - capacity) {
+                    index.remove(key);
+                    return null;
+                }
+                int at = (int) (pos % capacity);
+                if (System.nanoTime() - log.getLong(at) > ttlNanos) {
+                    index.remove(key);
+                    return null;
+                }
+                int len = log.getInt(at + Long.BYTES);
+                return decode(log.slice(at + HEADER, len));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String key, byte[] payload) {
+            int size = HEADER + payload.length;
+            if (size > capacity) return; // larger than the whole segment: not worth caching off-heap
+            lock.lock();
+            try {
+                int at = (int) (written % capacity);
+                if (at + size > capacity) {
+                    // Records never wrap around the end; start the next lap
+                    written += capacity - at;
+                    at = 0;
+                }
+                log.putLong(at, System.nanoTime());
+                log.putInt(at + Long.BYTES, payload.length);
+                log.put(at + HEADER, payload);
+                index.put(key, written);
+                written += size;
+                if (written - sweptAt >= capacity) {
+                    long floor = written - capacity;
+                    index.values().removeIf(p -> p < floor);
+                    sweptAt = written;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean remove(String key) {
+            lock.lock();
+            try {
+                Long pos = index.remove(key);
+                return pos != null && pos >= written - capacity;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int removeIf(Predicate<String> keyTest) {
+            lock.lock();
+            try {
+                int removed = 0;
+                for (Iterator<String> it = index.keySet().iterator(); it.hasNext(); ) {
+                    if (keyTest.test(it.next())) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return index.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
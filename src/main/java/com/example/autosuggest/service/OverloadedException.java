@@ -0,0 +1,9 @@
+package com.example.autosuggest.service;
+
+/** The service is turning work away to protect latency; clients should back off and retry (HTTP 503). */
+public class OverloadedException extends RuntimeException {
+
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
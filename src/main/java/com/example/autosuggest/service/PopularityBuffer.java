@@ -0,0 +1,222 @@
+package com.example.autosuggest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer for popularity increments.
+ * <p>
+ * Clicks are aggregated per id / value in lock-striped maps and applied in one batched transaction per
+ * flush, so the request thread never waits on SQLite's single writer. Staleness is bounded by
+ * {@code flushInterval}, or sooner once {@code maxPendingKeys} distinct keys are waiting.
+ */
+@Component
+public class PopularityBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(PopularityBuffer.class);
+
+    static final String UPDATE_BY_ID = "UPDATE people SET popularity = popularity + :n WHERE id = :id";
+    static final String UPDATE_BY_NAME = "UPDATE people SET popularity = popularity + :n WHERE name = :name COLLATE NOCASE";
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final CacheInvalidationService invalidation;
+    private final boolean enabled;
+    private final int maxPendingKeys;
+    private final Stripe[] stripes;
+    private final AtomicInteger pendingKeys = new AtomicInteger();
+    private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    private final Timer flushTimer;
+    private final Counter flushed;
+    private final Counter flushErrors;
+
+    public PopularityBuffer(NamedParameterJdbcTemplate jdbc,
+                            PlatformTransactionManager txManager,
+                            CacheInvalidationService invalidation,
+                            @Value("${suggest.track.buffer.enabled:false}") boolean enabled,
+                            @Value("${suggest.track.buffer.flushInterval:PT1S}") Duration flushInterval,
+                            @Value("${suggest.track.buffer.maxPendingKeys:10000}") int maxPendingKeys,
+                            @Value("${suggest.track.buffer.stripes:16}") int stripes,
+                            MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.invalidation = invalidation;
+        this.enabled = enabled;
+        this.maxPendingKeys = maxPendingKeys;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) this.stripes[i] = new Stripe();
+        if (meterRegistry != null) {
+            Gauge.builder("suggest.track.buffer.keys", pendingKeys, AtomicInteger::get).register(meterRegistry);
+            this.flushTimer = Timer.builder("suggest.track.flush").register(meterRegistry);
+            this.flushed = meterRegistry.counter("suggest.track.flushed");
+            this.flushErrors = meterRegistry.counter("suggest.track.flush.errors");
+        } else {
+            this.flushTimer = null;
+            this.flushed = null;
+            this.flushErrors = null;
+        }
+        if (enabled) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "popularity-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            long ms = Math.max(1, flushInterval.toMillis());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, ms, ms, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public void record(Integer id, String value) {
+        add(id, value, 1);
+    }
+
+    private void add(Integer id, String value, long increment) {
+        Stripe stripe = stripes[spread(id != null ? id.hashCode() : value.hashCode()) & (stripes.length - 1)];
+        boolean newKey;
+        synchronized (stripe) {
+            long[] n = id != null
+                    ? stripe.byId.computeIfAbsent(id, k -> new long[1])
+                    : stripe.byValue.computeIfAbsent(value, k -> new long[1]);
+            newKey = n[0] == 0;
+            n[0] += increment;
+        }
+        if (newKey && pendingKeys.incrementAndGet() >= maxPendingKeys && flusher != null
+                && earlyFlushQueued.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /** Applies every buffered increment in one transaction; returns the number of rows touched. */
+    public synchronized int flush() {
+        earlyFlushQueued.set(false);
+        Map<Integer, Long> ids = new HashMap<>();
+        Map<String, Long> values = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            Map<Integer, long[]> i;
+            Map<String, long[]> v;
+            synchronized (stripe) {
+                if (stripe.byId.isEmpty() && stripe.byValue.isEmpty()) continue;
+                i = stripe.byId;
+                v = stripe.byValue;
+                stripe.byId = new HashMap<>();
+                stripe.byValue = new HashMap<>();
+            }
+            pendingKeys.addAndGet(-(i.size() + v.size()));
+            i.forEach((k, n) -> ids.merge(k, n[0], Long::sum));
+            v.forEach((k, n) -> values.merge(k, n[0], Long::sum));
+        }
+        if (ids.isEmpty() && values.isEmpty()) return 0;
+
+        long t0 = System.nanoTime();
+        try {
+            int rows = apply(ids, values, false);
+            if (flushed != null) flushed.increment(rows);
+            if (rows > 0) invalidation.requestDrain();
+            return rows;
+        } catch (RuntimeException e) {
+            // Put the increments back so the next flush retries them
+            ids.forEach((k, n) -> add(k, null, n));
+            values.forEach((k, n) -> add(null, k, n));
+            if (flushErrors != null) flushErrors.increment();
+            throw e;
+        } finally {
+            if (flushTimer != null) flushTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs aggregated increments in one transaction. With {@code strict}, a key matching no row rolls the
+     * whole batch back with {@link IllegalArgumentException} (synchronous tracking semantics).
+     */
+    int apply(Map<Integer, Long> ids, Map<String, Long> values, boolean strict) {
+        Integer rows = tx.execute(status -> {
+            int total = 0;
+            if (!ids.isEmpty()) {
+                SqlParameterSource[] batch = ids.entrySet().stream()
+                        .map(e -> new MapSqlParameterSource().addValue("id", e.getKey()).addValue("n", e.getValue()))
+                        .toArray(SqlParameterSource[]::new);
+                int[] counts = jdbc.batchUpdate(UPDATE_BY_ID, batch);
+                total += sum(counts, batch, "id", strict);
+            }
+            if (!values.isEmpty()) {
+                SqlParameterSource[] batch = values.entrySet().stream()
+                        .map(e -> new MapSqlParameterSource().addValue("name", e.getKey()).addValue("n", e.getValue()))
+                        .toArray(SqlParameterSource[]::new);
+                int[] counts = jdbc.batchUpdate(UPDATE_BY_NAME, batch);
+                total += sum(counts, batch, "name", strict);
+            }
+            return total;
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) return;
+        flusher.shutdownNow();
+        try {
+            int rows = flush();
+            if (rows > 0) log.info("Flushed {} buffered popularity updates on shutdown", rows);
+        } catch (RuntimeException e) {
+            log.warn("Final popularity flush failed: {}", e.getMessage());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Popularity flush failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private static int sum(int[] counts, SqlParameterSource[] batch, String param, boolean strict) {
+        int total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // Some drivers report SUCCESS_NO_INFO (-2) for batched statements
+            if (counts[i] == 0 && strict) {
+                String label = "id".equals(param) ? "id=" + batch[i].getValue(param) : "value='" + batch[i].getValue(param) + "'";
+                throw new IllegalArgumentException("No record with " + label);
+            }
+            total += Math.max(counts[i], 0);
+        }
+        return total;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe {
+        Map<Integer, long[]> byId = new HashMap<>();
+        Map<String, long[]> byValue = new HashMap<>();
+    }
+}
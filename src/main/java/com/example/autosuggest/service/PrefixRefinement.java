@@ -0,0 +1,52 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Answers a longer prefix from a complete candidate set of a shorter one.
+ * <p>
+ * Only PREFIX mode on engines ordered by (exact, length, popularity, name) qualifies: every match of the
+ * extension is also a match of the shorter prefix, and filtering keeps that order intact because the exact
+ * match of a prefix is always its shortest match. Queries are restricted to printable ASCII without LIKE
+ * wildcards so that filtering agrees with {@code LIKE ... COLLATE NOCASE}.
+ */
+public final class PrefixRefinement {
+
+    private PrefixRefinement() {}
+
+    public static boolean supports(String engine, SuggestService.Mode mode) {
+        return mode == SuggestService.Mode.PREFIX && SuggestCache.PREFIX_ENGINES.contains(engine);
+    }
+
+    public static boolean isPlain(String q) {
+        for (int i = 0; i < q.length(); i++) {
+            char c = q.charAt(i);
+            if (c < 0x20 || c > 0x7E || c == '%' || c == '_') return false;
+        }
+        return true;
+    }
+
+    /** Matches of {@code q} taken from {@code base}, a complete result for a prefix of {@code q}. */
+    public static CachedSuggestions refine(CachedSuggestions base, String q) {
+        List<Suggestion> out = new ArrayList<>();
+        for (Suggestion s : base.items()) {
+            if (s.value() != null && startsWithIgnoreAsciiCase(s.value(), q)) out.add(s);
+        }
+        return new CachedSuggestions(List.copyOf(out), true);
+    }
+
+    static boolean startsWithIgnoreAsciiCase(String value, String prefix) {
+        if (value.length() < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (lowerAscii(value.charAt(i)) != lowerAscii(prefix.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static char lowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.autosuggest.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable, compact prefix trie over a name dictionary.
+ * <p>
+ * Entries are kept in flat arrays sorted by lower-cased key, so every trie node maps to a contiguous range.
+ * Nodes are only materialized while their range holds more than {@code topK} entries; each such node keeps
+ * its top-K entry positions pre-ranked. Smaller ranges collapse into a leaf holding the whole range in rank
+ * order, so deeper prefixes are answered by filtering at most {@code topK} entries.
+ */
+final class PrefixTrie {
+
+    record Entry(String name, long popularity) {}
+
+    // Same ordering as the sqlite-like PREFIX query. Within a prefix subtree the exact match is always the
+    // shortest name, so "exact first, then length" collapses to plain length ordering.
+    static final Comparator<Entry> LIKE_ORDER = Comparator
+            .comparingInt((Entry e) -> e.name().length())
+            .thenComparing(Entry::popularity, Comparator.reverseOrder())
+            .thenComparing(Entry::name);
+
+    private static final int[] EMPTY = new int[0];
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final String[] names;
+    private final String[] keys;
+    private final long[] popularity;
+    private final int[] rank;
+    private final int topK;
+    private final Node root;
+
+    private PrefixTrie(String[] names, String[] keys, long[] popularity, int[] rank, int topK) {
+        this.names = names;
+        this.keys = keys;
+        this.popularity = popularity;
+        this.rank = rank;
+        this.topK = topK;
+        this.root = names.length == 0 ? new Node(NO_LABELS, NO_CHILDREN, EMPTY, true) : build(0, names.length, 0);
+    }
+
+    static PrefixTrie build(List<Entry> entries, int topK, Comparator<Entry> order) {
+        return build(entries, topK, order, PrefixTrie::key);
+    }
+
+    /** As above, with {@code keyFn} deciding how names are normalized into keys (callers normalize lookups the same way). */
+    static PrefixTrie build(List<Entry> entries, int topK, Comparator<Entry> order, UnaryOperator<String> keyFn) {
+        int n = entries.size();
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        String[] lowered = new String[n];
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            lowered[i] = keyFn.apply(sorted[i].name());
+            idx[i] = i;
+        }
+        Arrays.sort(idx, Comparator.<Integer, String>comparing(i -> lowered[i])
+                .thenComparing(i -> sorted[i], order));
+
+        Entry[] byPos = new Entry[n];
+        String[] names = new String[n];
+        String[] keys = new String[n];
+        long[] pops = new long[n];
+        for (int pos = 0; pos < n; pos++) {
+            int i = idx[pos];
+            byPos[pos] = sorted[i];
+            names[pos] = sorted[i].name();
+            keys[pos] = lowered[i];
+            pops[pos] = sorted[i].popularity();
+        }
+
+        Integer[] byRank = new Integer[n];
+        for (int i = 0; i < n; i++) byRank[i] = i;
+        Arrays.sort(byRank, Comparator.comparing(pos -> byPos[pos], order));
+        int[] rank = new int[n];
+        for (int r = 0; r < n; r++) rank[byRank[r]] = r;
+
+        return new PrefixTrie(names, keys, pops, rank, Math.max(1, topK));
+    }
+
+    static String key(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    int topK() {
+        return topK;
+    }
+
+    String name(int pos) {
+        return names[pos];
+    }
+
+    String keyAt(int pos) {
+        return keys[pos];
+    }
+
+    long popularity(int pos) {
+        return popularity[pos];
+    }
+
+    int rank(int pos) {
+        return rank[pos];
+    }
+
+    /** Entry positions matching {@code prefixKey} (already lower-cased), best first, at most {@code limit}. */
+    int[] top(String prefixKey, int limit) {
+        Node node = root;
+        int depth = 0;
+        while (depth < prefixKey.length()) {
+            if (node.leaf) {
+                return filter(node.top, prefixKey, limit);
+            }
+            int c = Arrays.binarySearch(node.labels, prefixKey.charAt(depth));
+            if (c < 0) return EMPTY;
+            node = node.children[c];
+            depth++;
+        }
+        return node.top.length <= limit ? node.top : Arrays.copyOf(node.top, limit);
+    }
+
+    List<String> complete(String prefixKey, int limit) {
+        int[] hits = top(prefixKey, limit);
+        List<String> out = new ArrayList<>(hits.length);
+        for (int pos : hits) out.add(names[pos]);
+        return out;
+    }
+
+    private int[] filter(int[] ranked, String prefixKey, int limit) {
+        int[] out = new int[Math.min(limit, ranked.length)];
+        int n = 0;
+        for (int i = 0; i < ranked.length && n < out.length; i++) {
+            if (keys[ranked[i]].startsWith(prefixKey)) out[n++] = ranked[i];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private Node build(int lo, int hi, int depth) {
+        if (hi - lo <= topK) {
+            return new Node(NO_LABELS, NO_CHILDREN, rankRange(lo, hi), true);
+        }
+        int i = lo;
+        // Keys that end at this node sort before any longer key sharing the prefix
+        while (i < hi && keys[i].length() == depth) i++;
+        int terminators = i - lo;
+
+        List<Character> labels = new ArrayList<>();
+        List<Node> children = new ArrayList<>();
+        while (i < hi) {
+            char c = keys[i].charAt(depth);
+            int j = upperBound(i, hi, depth, c);
+            labels.add(c);
+            children.add(build(i, j, depth + 1));
+            i = j;
+        }
+
+        int candidates = terminators;
+        for (Node child : children) candidates += child.top.length;
+        long[] packed = new long[candidates];
+        int n = 0;
+        for (int pos = lo; pos < lo + terminators; pos++) packed[n++] = pack(pos);
+        for (Node child : children) {
+            for (int pos : child.top) packed[n++] = pack(pos);
+        }
+        Arrays.sort(packed);
+
+        char[] lbl = new char[labels.size()];
+        for (int k = 0; k < lbl.length; k++) lbl[k] = labels.get(k);
+        return new Node(lbl, children.toArray(new Node[0]), unpack(packed, Math.min(topK, packed.length)), false);
+    }
+
+    private int[] rankRange(int lo, int hi) {
+        long[] packed = new long[hi - lo];
+        for (int pos = lo; pos < hi; pos++) packed[pos - lo] = pack(pos);
+        Arrays.sort(packed);
+        return unpack(packed, packed.length);
+    }
+
+    // rank in the high bits so a plain long sort orders by rank
+    private long pack(int pos) {
+        return ((long) rank[pos] << 32) | pos;
+    }
+
+    private static int[] unpack(long[] packed, int n) {
+        int[] out = new int[n];
+        for (int k = 0; k < n; k++) out[k] = (int) packed[k];
+        return out;
+    }
+
+    // First index in [from, to) whose char at depth is greater than c
+    private int upperBound(int from, int to, int depth, char c) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].charAt(depth) <= c) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Leaves hold their whole (at most top-K) range; internal nodes hold the best top-K of their subtree
+    private record Node(char[] labels, Node[] children, int[] top, boolean leaf) {}
+}
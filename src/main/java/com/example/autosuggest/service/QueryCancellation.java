@@ -0,0 +1,119 @@
+package com.example.autosuggest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest-wins per client session: opening a {@link Ticket} for a session cancels the ticket the session
+ * already had. A cancelled ticket fails its query with {@link QueryCancelledException}, either before it
+ * starts or, while it runs, through {@link Statement#cancel()} (SQLite interrupts the connection).
+ * <p>
+ * The ticket is bound to the thread that opened it; the read {@code JdbcTemplate} reports each statement it
+ * runs on that thread through {@link #statementStarted} and {@link #statementFinished}, so a cancel can only
+ * ever reach a statement that is still executing for that ticket.
+ * <p>
+ * Session keys are the caller's to scope: HTTP sessions are keyed by client identity as well as the
+ * {@code X-Suggest-Session} header, so one client cannot cancel another's queries by reusing its header.
+ */
+@Component
+public class QueryCancellation {
+
+    private static final ThreadLocal<Ticket> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Ticket> bySession = new ConcurrentHashMap<>();
+    private final Counter cancelled;
+
+    public QueryCancellation(MeterRegistry meterRegistry) {
+        this.cancelled = meterRegistry == null ? null : meterRegistry.counter("suggest.cancelled");
+    }
+
+    /** Starts the current thread's query for {@code session}, cancelling the session's previous one. */
+    public Ticket open(String session) {
+        Ticket ticket = new Ticket(session);
+        Ticket previous = bySession.put(session, ticket);
+        if (previous != null) previous.cancel();
+        CURRENT.set(ticket);
+        return ticket;
+    }
+
+    /** Cancels whatever {@code session} is running; a no-op if nothing is. */
+    public void cancel(String session) {
+        Ticket running = bySession.get(session);
+        if (running != null) running.cancel();
+    }
+
+    /** Throws if the current thread's ticket has been cancelled. */
+    public static void check() {
+        Ticket ticket = CURRENT.get();
+        if (ticket != null && ticket.cancelled) throw new QueryCancelledException("Superseded by a newer request");
+    }
+
+    public static boolean isCancelled() {
+        Ticket ticket = CURRENT.get();
+        return ticket != null && ticket.cancelled;
+    }
+
+    static void statementStarted(Statement statement) throws SQLException {
+        Ticket ticket = CURRENT.get();
+        if (ticket != null) ticket.attach(statement);
+    }
+
+    static void statementFinished(Statement statement) {
+        Ticket ticket = CURRENT.get();
+        if (ticket != null) ticket.detach(statement);
+    }
+
+    /** Detaches whatever statement the current thread's ticket holds, however its execution ended. */
+    static void statementsFinished() {
+        Ticket ticket = CURRENT.get();
+        if (ticket != null) ticket.detach(null);
+    }
+
+    public final class Ticket implements AutoCloseable {
+
+        private final String session;
+        private volatile boolean cancelled;
+        private Statement running; // guarded by this
+
+        Ticket(String session) {
+            this.session = session;
+        }
+
+        synchronized void attach(Statement statement) {
+            if (cancelled) throw new QueryCancelledException("Superseded by a newer request");
+            running = statement;
+        }
+
+        // null detaches whatever is attached
+        synchronized void detach(Statement statement) {
+            if (statement == null || running == statement) running = null;
+        }
+
+        synchronized void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            if (QueryCancellation.this.cancelled != null) QueryCancellation.this.cancelled.increment();
+            if (running == null) return;
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                // The statement finished or the driver can't cancel; the result is dropped either way
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                running = null;
+            }
+            bySession.remove(session, this);
+            if (CURRENT.get() == this) CURRENT.remove();
+        }
+    }
+}
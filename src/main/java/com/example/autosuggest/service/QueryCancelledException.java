@@ -0,0 +1,9 @@
+package com.example.autosuggest.service;
+
+/** A newer request from the same client session superseded this one and its query was cancelled. */
+public class QueryCancelledException extends RuntimeException {
+
+    public QueryCancelledException(String message) {
+        super(message);
+    }
+}
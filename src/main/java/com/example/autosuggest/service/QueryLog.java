@@ -0,0 +1,296 @@
+package com.example.autosuggest.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sampled capture of suggest lookups into rotating gzipped JSONL files ({@code queries-*.jsonl.gz}), one
+ * {@link Entry} per line, for offline replay.
+ * <p>
+ * Request threads only claim a slot in a fixed ring with one CAS and copy references and primitives into
+ * preallocated arrays; nothing is allocated or formatted on the request path. When the writer falls
+ * {@code capacity} entries behind, new entries are dropped and counted instead of blocking. A single background
+ * thread drains the ring, rotates files at {@code maxFileBytes} (uncompressed) or {@code rotateInterval}, and
+ * keeps the newest {@code maxFiles}.
+ */
+@Component
+public class QueryLog {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLog.class);
+
+    static final String FILE_PREFIX = "queries-";
+    static final String FILE_SUFFIX = ".jsonl.gz";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** One captured lookup, as written to (and read back from) the log. {@code dict} is absent in older files. */
+    public record Entry(long ts, String dict, String q, SuggestService.Mode mode, int limit, String engine, String cache, long micros) {}
+
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final double sampleRate;
+    private final Path dir;
+    private final long maxFileBytes;
+    private final long rotateNanos;
+    private final int maxFiles;
+
+    // Ring: slot i holds sequence s when published[i] == s + 1
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private final AtomicLongArray published;
+    private final long[] times;
+    private final String[] dicts;
+    private final String[] queries;
+    private final SuggestService.Mode[] modes;
+    private final int[] limits;
+    private final String[] engines;
+    private final String[] caches;
+    private final long[] latencies;
+
+    private final Counter written;
+    private final Counter dropped;
+    private Thread writer;
+    private volatile boolean running;
+
+    private JsonGenerator out;
+    private CountingOutputStream counter;
+    private long openedAt;
+    private int fileSeq;
+
+    public QueryLog(ObjectMapper mapper,
+                    @Value("${suggest.querylog.enabled:false}") boolean enabled,
+                    @Value("${suggest.querylog.sampleRate:1.0}") double sampleRate,
+                    @Value("${suggest.querylog.dir:querylog}") String dir,
+                    @Value("${suggest.querylog.capacity:65536}") int capacity,
+                    @Value("${suggest.querylog.maxFileBytes:67108864}") long maxFileBytes,
+                    @Value("${suggest.querylog.rotateInterval:PT1H}") Duration rotateInterval,
+                    @Value("${suggest.querylog.maxFiles:24}") int maxFiles,
+                    @Value("${suggest.replay.input:}") String replayInput,
+                    MeterRegistry meterRegistry) {
+        this.mapper = mapper;
+        // A replay run must not capture its own traffic
+        this.enabled = enabled && sampleRate > 0 && (replayInput == null || replayInput.isBlank());
+        this.sampleRate = Math.min(sampleRate, 1.0);
+        this.dir = Path.of(dir);
+        this.maxFileBytes = maxFileBytes;
+        this.rotateNanos = rotateInterval.toNanos();
+        this.maxFiles = Math.max(1, maxFiles);
+        int size = this.enabled ? Integer.highestOneBit(Math.max(2, capacity - 1)) << 1 : 1;
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        this.times = new long[size];
+        this.dicts = new String[size];
+        this.queries = new String[size];
+        this.modes = new SuggestService.Mode[size];
+        this.limits = new int[size];
+        this.engines = new String[size];
+        this.caches = new String[size];
+        this.latencies = new long[size];
+        if (meterRegistry != null) {
+            this.written = meterRegistry.counter("suggest.querylog.written");
+            this.dropped = meterRegistry.counter("suggest.querylog.dropped");
+            Gauge.builder("suggest.querylog.backlog", this, l -> l.head.get() - l.tail).register(meterRegistry);
+        } else {
+            this.written = null;
+            this.dropped = null;
+        }
+        if (this.enabled) {
+            running = true;
+            writer = new Thread(this::drainLoop, "querylog-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** Records one lookup if it is sampled in; never blocks. {@code cache} must be a constant (it is not copied). */
+    public void record(String dict, String q, SuggestService.Mode mode, int limit, String engine, String cache, long latencyNanos) {
+        if (!enabled) return;
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) return;
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail > mask) {
+                if (dropped != null) dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        int i = (int) (seq & mask);
+        times[i] = System.currentTimeMillis();
+        dicts[i] = dict;
+        queries[i] = q;
+        modes[i] = mode;
+        limits[i] = limit;
+        engines[i] = engine;
+        caches[i] = cache;
+        latencies[i] = latencyNanos;
+        published.lazySet(i, seq + 1);
+    }
+
+    /** Writes everything recorded so far and flushes the current file (for tests and shutdown). */
+    public synchronized void flush() throws IOException {
+        if (!enabled) return;
+        drain();
+        if (out != null) out.flush();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                drain();
+                close();
+            } catch (IOException e) {
+                log.warn("Closing the query log failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                boolean any;
+                synchronized (this) {
+                    any = drain() > 0;
+                    // Idle: make what we have readable (sync flush) instead of holding it in the deflater
+                    if (any && out != null) out.flush();
+                }
+                if (!any) LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Query log write failed, dropping the current file: {}", e.getMessage());
+                synchronized (this) {
+                    discard();
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // Caller holds the monitor
+    private int drain() throws IOException {
+        long t = tail;
+        int n = 0;
+        while (true) {
+            int i = (int) (t & mask);
+            if (published.get(i) != t + 1) break;
+            if (out == null || counter.count >= maxFileBytes || System.nanoTime() - openedAt >= rotateNanos) rotate();
+            out.writeStartObject();
+            out.writeNumberField("ts", times[i]);
+            out.writeStringField("dict", dicts[i]);
+            out.writeStringField("q", queries[i]);
+            out.writeStringField("mode", modes[i].name());
+            out.writeNumberField("limit", limits[i]);
+            out.writeStringField("engine", engines[i]);
+            out.writeStringField("cache", caches[i]);
+            out.writeNumberField("micros", latencies[i] / 1_000);
+            out.writeEndObject();
+            queries[i] = null;
+            t++;
+            tail = t;
+            n++;
+        }
+        if (n > 0 && written != null) written.increment(n);
+        return n;
+    }
+
+    private void rotate() throws IOException {
+        close();
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_PREFIX + LocalDateTime.now().format(FILE_TIME)
+                + String.format("-%03d", fileSeq++ % 1000) + FILE_SUFFIX);
+        counter = new CountingOutputStream(new GZIPOutputStream(Files.newOutputStream(file), 65536, true));
+        out = mapper.getFactory().createGenerator(counter);
+        out.setRootValueSeparator(new SerializedString("\n"));
+        openedAt = System.nanoTime();
+        prune();
+    }
+
+    private void close() throws IOException {
+        if (out == null) return;
+        try {
+            out.writeRaw('\n');
+            out.close();
+        } finally {
+            out = null;
+            counter = null;
+        }
+    }
+
+    private void discard() {
+        try {
+            close();
+        } catch (IOException | RuntimeException ignored) {
+            out = null;
+            counter = null;
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+        for (int k = 0; k < files.size() - maxFiles; k++) Files.deleteIfExists(files.get(k));
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.autosuggest.service;
+
+/**
+ * A load this caller joined in {@link SingleFlight}, rather than ran, failed or outlasted the wait. The cause is
+ * the leader's exception (or the timeout); the leader's own call has already reported it.
+ */
+public class SharedLoadException extends RuntimeException {
+
+    public SharedLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
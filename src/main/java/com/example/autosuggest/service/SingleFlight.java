@@ -0,0 +1,82 @@
+package com.example.autosuggest.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into one: the first caller runs the loader, callers arriving
+ * while it is in flight wait for its result instead of running their own.
+ * Nothing is remembered once the load completes; caching the result is the loader's job.
+ * <p>
+ * A follower waits at most {@code maxWait}. If the load fails (or outlasts that), the follower gets a
+ * {@link SharedLoadException} wrapping the leader's exception: the failure belongs to the leader's call, and
+ * only that call should report it, e.g. to a circuit breaker.
+ */
+public final class SingleFlight<K, V> {
+
+    public record Result<V>(V value, boolean shared) {}
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final long maxWaitNanos;
+
+    public SingleFlight() {
+        this(null);
+    }
+
+    /** {@code maxWait} {@code null} waits for as long as the leader takes. */
+    public SingleFlight(Duration maxWait) {
+        this.maxWaitNanos = maxWait == null ? 0 : maxWait.toNanos();
+    }
+
+    public Result<V> run(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            return new Result<>(await(leader), true);
+        }
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return new Result<>(value, false);
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /** Callers currently waiting on another caller's load. */
+    public int waiting() {
+        return waiting.get();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        waiting.incrementAndGet();
+        try {
+            return maxWaitNanos > 0 ? future.get(maxWaitNanos, TimeUnit.NANOSECONDS) : future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error err) throw err;
+            throw new SharedLoadException("Shared load failed: " + e.getCause(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new SharedLoadException("Shared load still running after "
+                    + Duration.ofNanos(maxWaitNanos).toMillis() + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SharedLoadException("Interrupted while waiting for a shared load", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.SuggestQuery;
+import com.example.autosuggest.model.Suggestion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers several suggest queries in one call. Each distinct (query, mode) runs once through
+ * {@link SuggestService#suggest}, breaker and cache included: cached ones are answered inline, the rest on
+ * shared workers (virtual threads when {@code spring.threads.virtual.enabled}, otherwise up to
+ * {@code suggest.batch.threads} platform threads, the request thread running what they cannot take), at most
+ * {@code suggest.batch.parallelism} at a time and never more than half the
+ * {@link AdaptiveLimiter}'s current limit, so one large batch cannot shed itself or its neighbours with 503s
+ * ({@link DbGate} still caps how many reach the database). Where the engine can
+ * refine prefixes, a miss that extends another miss of the same batch waits for it and is then filtered from
+ * its cached result instead of querying again.
+ */
+@Service
+public class SuggestBatchService {
+
+    private final SuggestService service;
+    private final AdaptiveLimiter limiter;
+    private final int parallelism;
+    private final String engine;
+    private final boolean cacheEnabled;
+    private final ExecutorService executor;
+    private final DistributionSummary sizes;
+    private final Counter cached;
+    private final Counter loaded;
+    private final Counter deduped;
+
+    public SuggestBatchService(SuggestService service,
+                               AdaptiveLimiter limiter,
+                               @Value("${suggest.batch.parallelism:4}") int parallelism,
+                               @Value("${suggest.engine:sqlite-like}") String engine,
+                               @Value("${suggest.cache.enabled:true}") boolean cacheEnabled,
+                               @Value("${suggest.batch.threads:16}") int threads,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                               MeterRegistry meterRegistry) {
+        this.service = service;
+        this.limiter = limiter;
+        this.parallelism = Math.max(1, parallelism);
+        this.engine = engine;
+        this.cacheEnabled = cacheEnabled;
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("suggest-batch-", 0).factory());
+        } else {
+            // No queue: when every thread is busy the request thread drains its own lookups instead of waiting
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 30,
+                    TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                        Thread t = new Thread(r, "suggest-batch");
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+        if (meterRegistry != null) {
+            this.sizes = DistributionSummary.builder("suggest.batch.size").register(meterRegistry);
+            this.cached = meterRegistry.counter("suggest.batch.items", "source", "cache");
+            this.loaded = meterRegistry.counter("suggest.batch.items", "source", "query");
+            this.deduped = meterRegistry.counter("suggest.batch.items", "source", "deduped");
+        } else {
+            this.sizes = null;
+            this.cached = null;
+            this.loaded = null;
+            this.deduped = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /** Results in request order, each cut to its own limit. */
+    public List<List<Suggestion>> suggest(List<SuggestQuery> queries) {
+        if (sizes != null) sizes.record(queries.size());
+        // One lookup per distinct cache key, at the largest limit any of its entries asked for
+        Map<String, Lookup> lookups = new LinkedHashMap<>();
+        List<Lookup> perItem = new ArrayList<>(queries.size());
+        for (SuggestQuery sq : queries) {
+            String q = sq.q().trim();
+            SuggestService.Mode mode = sq.modeOrDefault();
+            String key = SuggestCache.keyBase(engine, mode) + SuggestCache.normalize(q);
+            Lookup lookup = lookups.get(key);
+            if (lookup == null) {
+                lookup = new Lookup(q, mode);
+                lookups.put(key, lookup);
+            } else if (deduped != null) {
+                deduped.increment();
+            }
+            lookup.limit = Math.max(lookup.limit, sq.limitOrDefault());
+            perItem.add(lookup);
+        }
+
+        List<Lookup> first = new ArrayList<>();
+        List<Lookup> second = new ArrayList<>();
+        for (Lookup lookup : lookups.values()) {
+            if (service.isCached(lookup.q, lookup.mode)) {
+                lookup.result = service.suggest(lookup.q, lookup.limit, lookup.mode);
+                if (cached != null) cached.increment();
+            } else {
+                (extendsAnother(lookup, lookups.values()) ? second : first).add(lookup);
+                if (loaded != null) loaded.increment();
+            }
+        }
+        runAll(first);
+        runAll(second);
+
+        List<List<Suggestion>> out = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<Suggestion> rows = perItem.get(i).result;
+            int limit = queries.get(i).limitOrDefault();
+            out.add(rows.size() > limit ? rows.subList(0, limit) : rows);
+        }
+        return out;
+    }
+
+    // A few workers drain the wave instead of one thread per lookup, so the batch holds few limiter slots
+    private void runAll(List<Lookup> wave) {
+        if (wave.isEmpty()) return;
+        Queue<Lookup> pending = new ConcurrentLinkedQueue<>(wave);
+        int workers = Math.min(wave.size(), Math.max(1, Math.min(parallelism, limiter.limit() / 2)));
+        List<CompletableFuture<Void>> running = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            running.add(CompletableFuture.runAsync(() -> {
+                Lookup lookup;
+                while ((lookup = pending.poll()) != null) {
+                    try {
+                        lookup.result = service.suggest(lookup.q, lookup.limit, lookup.mode);
+                    } catch (RuntimeException e) {
+                        // The batch fails as a whole; don't start what is left
+                        pending.clear();
+                        throw e;
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            // Surface the first failure as is (e.g. OverloadedException -> 503)
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    // "micr" and "micro" in one batch: load "micr" first, then "micro" is refined from its cache entry
+    private boolean extendsAnother(Lookup lookup, Iterable<Lookup> all) {
+        if (!cacheEnabled || !PrefixRefinement.supports(engine, lookup.mode) || !PrefixRefinement.isPlain(lookup.q)) return false;
+        String key = SuggestCache.normalize(lookup.q);
+        for (Lookup other : all) {
+            if (other == lookup || other.mode != lookup.mode || !PrefixRefinement.isPlain(other.q)) continue;
+            String prefix = SuggestCache.normalize(other.q);
+            if (prefix.length() < key.length() && key.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static final class Lookup {
+        final String q;
+        final SuggestService.Mode mode;
+        int limit;
+        volatile List<Suggestion> result;
+
+        Lookup(String q, SuggestService.Mode mode) {
+            this.q = q;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.autosuggest.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Suggestion cache keyed by {@code engine|MODE|normalized q}.
+ * Owns targeted invalidation so writers can drop exactly the entries a changed name can appear in.
+ * <p>
+ * Every entry gets its own jittered TTL so keys written together do not expire together. With refresh-ahead
+ * on, an entry read after its (jittered) {@code refreshAfter} is still served, and the first such reader
+ * claims it for a background refresh via {@link #claimRefresh}.
+ * <p>
+ * Every invalidation bumps a {@link #generation()}. A loader that read its rows before an invalidation finished
+ * may hold rows from before the change it invalidated, so {@link #put(String, CachedSuggestions, long)} only keeps
+ * an entry if the generation it was loaded under is still current.
+ * <p>
+ * With {@code suggest.cache.l2.enabled}, every write also goes to an off-heap second tier ({@link OffHeapCache})
+ * with its own byte budget and TTL. An L1 miss that hits L2 is promoted back into L1 due for a refresh, so a
+ * heap-sized L1 can sit in front of a much larger working set without the GC cost of holding it.
+ * <p>
+ * This bean is the {@code people} dictionary's cache; every other dictionary gets its own {@link #partition}
+ * with the same policy, so one corpus cannot evict another's entries.
+ */
+@Component
+public class SuggestCache {
+
+    // Engines whose PREFIX results are exactly the names starting with the query (see PrefixRefinement)
+    static final List<String> PREFIX_ENGINES = List.of("sqlite-like", "memory-trie", "mmap-snapshot");
+    private static final int SCAN_LIMIT = 1000;
+
+    private final String dict;
+    private final Cache<String, Slot> cache;
+    private final MeterRegistry meter;
+    private final long ttlNanos;
+    private final double jitter;
+    private final boolean refreshAhead;
+    private final long refreshAfterNanos;
+    private final long retryAfterNanos;
+    private final OffHeapCache l2;
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public SuggestCache(@Value("${suggest.cache.ttl:PT90S}") Duration ttl,
+                        @Value("${suggest.cache.maximumSize:10000}") long maximumSize,
+                        @Value("${suggest.cache.jitter:0.1}") double jitter,
+                        @Value("${suggest.cache.refreshAhead.enabled:false}") boolean refreshAhead,
+                        @Value("${suggest.cache.refreshAhead.after:PT60S}") Duration refreshAfter,
+                        @Value("${suggest.cache.refreshAhead.retryAfter:PT5S}") Duration retryAfter,
+                        @Value("${suggest.cache.l2.enabled:false}") boolean l2Enabled,
+                        @Value("${suggest.cache.l2.maxBytes:268435456}") long l2MaxBytes,
+                        @Value("${suggest.cache.l2.segments:16}") int l2Segments,
+                        @Value("${suggest.cache.l2.ttl:PT10M}") Duration l2Ttl,
+                        MeterRegistry meterRegistry) {
+        this(Dictionaries.PRIMARY, ttl, maximumSize, jitter, refreshAhead, refreshAfter, retryAfter, l2Enabled, l2MaxBytes,
+                l2Segments, l2Ttl, meterRegistry);
+    }
+
+    private SuggestCache(String dict, Duration ttl, long maximumSize, double jitter, boolean refreshAhead,
+                         Duration refreshAfter, Duration retryAfter, boolean l2Enabled, long l2MaxBytes, int l2Segments,
+                         Duration l2Ttl, MeterRegistry meterRegistry) {
+        this.dict = dict;
+        this.meter = meterRegistry;
+        this.ttlNanos = ttl.toNanos();
+        this.jitter = Math.max(0, Math.min(jitter, 0.5));
+        this.refreshAhead = refreshAhead;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.retryAfterNanos = retryAfter.toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Slot>() {
+                    @Override
+                    public long expireAfterCreate(String key, Slot slot, long now) {
+                        return slot.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Slot slot, long now, long currentDuration) {
+                        return slot.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Slot slot, long now, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        if (this.meter != null) {
+            // register cache metrics
+            CaffeineCacheMetrics.monitor(this.meter, this.cache, "suggest.cache", "dict", dict);
+        }
+        this.l2 = l2Enabled ? new OffHeapCache(l2MaxBytes, l2Segments, l2Ttl.toNanos()) : null;
+        if (this.l2 != null && this.meter != null) {
+            this.l2Hits = meter.counter("suggest.cache.l2.gets", "result", "hit");
+            this.l2Misses = meter.counter("suggest.cache.l2.gets", "result", "miss");
+            Gauge.builder("suggest.cache.l2.entries", l2, OffHeapCache::entries).register(meter);
+            Gauge.builder("suggest.cache.l2.capacity", l2, OffHeapCache::capacityBytes).baseUnit("bytes").register(meter);
+        } else {
+            this.l2Hits = null;
+            this.l2Misses = null;
+        }
+    }
+
+    /**
+     * A separate cache for dictionary {@code dict}: same TTL jitter and refresh-ahead policy, its own entry budget
+     * and TTL, no off-heap tier. Refresh-ahead starts at the same share of the partition's TTL as it does here
+     * (PT8M of PT10M is PT24M of PT30M), so a short TTL never expires entries before they are refreshed.
+     */
+    SuggestCache partition(String dict, long maximumSize, Duration ttl) {
+        double share = ttlNanos > 0 ? (double) refreshAfterNanos / ttlNanos : 1;
+        Duration refreshAfter = Duration.ofNanos(Math.round(ttl.toNanos() * share));
+        return new SuggestCache(dict, ttl, maximumSize, jitter, refreshAhead, refreshAfter,
+                Duration.ofNanos(retryAfterNanos), false, 0, 1, Duration.ZERO, meter);
+    }
+
+    /** How old an entry gets before refresh-ahead reloads it (before jitter). */
+    public Duration refreshAfter() {
+        return Duration.ofNanos(refreshAfterNanos);
+    }
+
+    public String dict() {
+        return dict;
+    }
+
+    public static String normalize(String q) {
+        return Normalizer.normalize(q, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    public static String keyBase(String engine, SuggestService.Mode mode) {
+        return engine + "|" + mode + "|";
+    }
+
+    /** The entry under {@code key} from either tier. */
+    public CachedSuggestions get(String key) {
+        CachedSuggestions value = getL1(key);
+        return value != null ? value : getL2(key);
+    }
+
+    public CachedSuggestions getL1(String key) {
+        Slot slot = cache.getIfPresent(key);
+        return slot == null ? null : slot.value;
+    }
+
+    /**
+     * Looks {@code key} up in the off-heap tier only (call after an L1 miss). A hit is promoted into L1 due for a
+     * refresh, like a {@link #restore}d entry: it may have sat in L2 for up to {@code l2.ttl}. A hit that raced an
+     * invalidation is treated as a miss, as in {@link #put(String, CachedSuggestions, long)}.
+     */
+    public CachedSuggestions getL2(String key) {
+        if (l2 == null) return null;
+        long seenAt = generation.get();
+        CachedSuggestions value = l2.get(key);
+        if (value != null) {
+            Slot slot = slot(value, 0);
+            cache.put(key, slot);
+            if (generation.get() != seenAt) {
+                cache.asMap().remove(key, slot);
+                value = null;
+            }
+        }
+        Counter counter = value == null ? l2Misses : l2Hits;
+        if (counter != null) counter.increment();
+        return value;
+    }
+
+    public boolean l2Enabled() {
+        return l2 != null;
+    }
+
+    public void put(String key, CachedSuggestions value) {
+        cache.put(key, slot(value, refreshAfterNanos));
+        if (l2 != null) l2.put(key, value);
+    }
+
+    /** Bumped at the start of every invalidation; loaders read it before their query. */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Puts {@code value} unless an invalidation started since {@code loadedAt} (a {@link #generation()} read before
+     * the rows were loaded): those rows may predate the change it was for. Returns whether the entry was kept.
+     */
+    public boolean put(String key, CachedSuggestions value, long loadedAt) {
+        Slot slot = slot(value, refreshAfterNanos);
+        cache.put(key, slot);
+        if (l2 != null) l2.put(key, value);
+        // Checked after the put: an invalidation either bumped the generation first (seen here) or removes the entry
+        if (generation.get() == loadedAt) return true;
+        cache.asMap().remove(key, slot);
+        if (l2 != null) l2.remove(key);
+        return false;
+    }
+
+    /**
+     * Puts an entry carried over from a previous run. It is due for a refresh right away, so with refresh-ahead
+     * on the first reader still gets it and queues a reload; without it the entry lives out a normal TTL.
+     */
+    public void restore(String key, CachedSuggestions value) {
+        cache.put(key, slot(value, 0));
+        if (l2 != null) l2.put(key, value);
+    }
+
+    /** Up to {@code n} entries, the ones Caffeine's eviction policy would keep longest (most used) first. */
+    public Map<String, CachedSuggestions> hottest(int n) {
+        Map<String, CachedSuggestions> out = new LinkedHashMap<>();
+        cache.policy().eviction().ifPresent(e -> e.hottest(n).forEach((k, slot) -> out.put(k, slot.value)));
+        return out;
+    }
+
+    public boolean refreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Returns the entry under {@code key} if it is due for a refresh and the caller is the first to ask;
+     * the caller must then report back through {@link #refreshed} or {@link #refreshFailed}.
+     */
+    Slot claimRefresh(String key) {
+        if (!refreshAhead) return null;
+        Slot slot = cache.getIfPresent(key);
+        if (slot == null || System.nanoTime() < slot.refreshAt || !slot.refreshing.compareAndSet(false, true)) {
+            return null;
+        }
+        return slot;
+    }
+
+    /** Swaps in a refreshed value, unless the entry was invalidated or replaced meanwhile. */
+    void refreshed(String key, Slot claimed, CachedSuggestions fresh) {
+        if (cache.asMap().replace(key, claimed, slot(fresh, refreshAfterNanos)) && l2 != null) l2.put(key, fresh);
+    }
+
+    /** Keeps serving the old value (with a new TTL) and lets the next reader retry after {@code retryAfter}. */
+    void refreshFailed(String key, Slot claimed) {
+        cache.asMap().replace(key, claimed, slot(claimed.value, retryAfterNanos));
+    }
+
+    /** Gives a claim back without touching the entry, e.g. when the refresh could not be scheduled. */
+    void unclaim(Slot claimed) {
+        claimed.refreshing.set(false);
+    }
+
+    private Slot slot(CachedSuggestions value, long refreshAfter) {
+        return new Slot(value, jittered(ttlNanos), System.nanoTime() + jittered(refreshAfter));
+    }
+
+    private long jittered(long nanos) {
+        if (jitter == 0) return nanos;
+        return (long) (nanos * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        // L2 first, so a concurrent L1 miss cannot promote an entry back from it
+        if (l2 != null) l2.clear();
+        cache.invalidateAll();
+        if (meter != null) meter.counter("suggest.cache.invalidated", "dict", dict, "scope", "all").increment();
+    }
+
+    /**
+     * Drops the entries whose results could contain any of {@code names} (as stored, or as they were before
+     * a rename). PREFIX entries of whole-name prefix engines are removed by direct key lookups, one per
+     * prefix of each name; the remaining entries are matched conservatively in one pass over the keys.
+     */
+    public int invalidateNames(Collection<String> names) {
+        return invalidateNames(names, Set.of());
+    }
+
+    /**
+     * As above, leaving the entries under the {@code kept} key bases alone: those are answered from an in-memory
+     * index that does not know about the change yet, so reloading them now would only read it back unchanged.
+     */
+    public int invalidateNames(Collection<String> names, Set<String> kept) {
+        List<String> normalized = names.stream().filter(n -> n != null && !n.isEmpty()).map(SuggestCache::normalize)
+                .distinct().toList();
+        if (normalized.isEmpty()) return 0;
+        generation.incrementAndGet();
+        int removed = 0;
+        for (String engine : PREFIX_ENGINES) {
+            String base = keyBase(engine, SuggestService.Mode.PREFIX);
+            if (kept.contains(base)) continue;
+            for (String name : normalized) {
+                for (int len = 2; len <= name.length(); len++) {
+                    String key = base + name.substring(0, len);
+                    if (l2 != null) l2.remove(key);
+                    if (cache.asMap().remove(key) != null) removed++;
+                }
+            }
+        }
+        // A large change set (bulk load) is cheaper to treat as "everything else changed"
+        boolean dropRest = normalized.size() > SCAN_LIMIT;
+        List<String> folded = dropRest ? List.of() : normalized.stream().map(SuggestCache::fold).toList();
+        Predicate<String> affected = key -> !kept.contains(baseOf(key)) && affects(key, dropRest, folded);
+        if (l2 != null) l2.removeIf(affected);
+        for (String key : cache.asMap().keySet()) {
+            if (affected.test(key) && cache.asMap().remove(key) != null) removed++;
+        }
+        if (meter != null) meter.counter("suggest.cache.invalidated", "dict", dict, "scope", "names").increment(removed);
+        return removed;
+    }
+
+    /**
+     * Drops the entries under {@code keyBase} whose normalized query {@code affected} accepts, e.g. once the
+     * in-memory index answering them has been swapped for a newer one.
+     */
+    public int invalidateQueries(String keyBase, Predicate<String> affected) {
+        generation.incrementAndGet();
+        Predicate<String> test = key -> key.startsWith(keyBase) && affected.test(key.substring(keyBase.length()));
+        if (l2 != null) l2.removeIf(test);
+        int removed = 0;
+        for (String key : cache.asMap().keySet()) {
+            if (test.test(key) && cache.asMap().remove(key) != null) removed++;
+        }
+        if (meter != null) meter.counter("suggest.cache.invalidated", "dict", dict, "scope", "index").increment(removed);
+        return removed;
+    }
+
+    private static String baseOf(String key) {
+        int m2 = key.indexOf('|', key.indexOf('|') + 1);
+        return m2 < 0 ? key : key.substring(0, m2 + 1);
+    }
+
+    private static boolean affects(String key, boolean dropRest, List<String> folded) {
+        int m1 = key.indexOf('|');
+        int m2 = key.indexOf('|', m1 + 1);
+        if (m1 < 0 || m2 < 0) return false;
+        String engine = key.substring(0, m1);
+        SuggestService.Mode mode = SuggestService.Mode.valueOf(key.substring(m1 + 1, m2));
+        String keyQ = key.substring(m2 + 1);
+        boolean wildcard = keyQ.indexOf('%') >= 0 || keyQ.indexOf('_') >= 0;
+        // Already removed by the direct lookups above
+        if (!wildcard && mode == SuggestService.Mode.PREFIX && PREFIX_ENGINES.contains(engine)) return false;
+        return dropRest || wildcard || affects(mode, keyQ, folded);
+    }
+
+    private static boolean affects(SuggestService.Mode mode, String keyQ, List<String> names) {
+        if (mode == SuggestService.Mode.FUZZY) return true; // typo matches cannot be bounded by substring checks
+        String[] terms = fold(keyQ).split("[^\\p{L}\\p{N}]+");
+        for (String name : names) {
+            // LIKE CONTAINS needs the whole query; token engines (FTS, Oracle) need every term somewhere.
+            // "name contains every term" is a superset of both.
+            if (containsAll(name, terms)) return true;
+        }
+        return false;
+    }
+
+    // FTS folds diacritics (remove_diacritics 2), so compare without them
+    private static String fold(String s) {
+        return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+    }
+
+    private static boolean containsAll(String name, String[] terms) {
+        for (String term : terms) {
+            if (!term.isEmpty() && !name.contains(term)) return false;
+        }
+        return true;
+    }
+
+    // Identity matters: refresh results are only swapped in over the exact slot that was claimed
+    static final class Slot {
+        final CachedSuggestions value;
+        final long ttlNanos;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Slot(CachedSuggestions value, long ttlNanos, long refreshAt) {
+            this.value = value;
+            this.ttlNanos = ttlNanos;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.autosuggest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The suggest path's meters, resolved once per engine x mode x cache status at startup, so a request only
+ * does a map lookup on a constant instead of building tags and looking them up in the registry.
+ * <p>
+ * Besides the end-to-end {@code suggest.query}, each request records where its time went as
+ * {@code suggest.stage{stage}}: {@code normalize} (key building), {@code cache} (L1/L2 lookup and prefix
+ * refinement), {@code db} (statement execution, from inside the DB gate), {@code map} (stepping the result set
+ * and mapping rows) and {@code serialize} (writing a cached entry's JSON body). Both are published as
+ * percentile histograms with the {@code slo} buckets, so p99 can be broken down per stage.
+ * <p>
+ * Every meter is tagged with its dictionary; this bean serves {@code people}, and {@link #partition} makes the
+ * set for another one.
+ */
+@Component
+public class SuggestMetrics {
+
+    public enum Stage { NORMALIZE, CACHE, DB, MAP, SERIALIZE }
+
+    // Every value SuggestService reports as the cache tag
+    static final List<String> CACHE_STATUSES = List.of("off", "hit", "l2", "refine", "coalesced", "miss");
+    static final List<String> REFRESH_RESULTS = List.of("scheduled", "ok", "error", "rejected");
+    static final List<String> FALLBACK_SOURCES = List.of("cache", "saturated", "snapshot", "empty");
+
+    private final MeterRegistry registry;
+    private final boolean defaultsEnabled;
+    private final boolean histogram;
+    private final Duration[] buckets;
+    private final boolean stagesEnabled;
+    private final Map<SuggestService.Mode, Map<String, Timer>> queries = new EnumMap<>(SuggestService.Mode.class);
+    private final Map<SuggestService.Mode, Counter> results = new EnumMap<>(SuggestService.Mode.class);
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Map<String, Counter> refreshes = new HashMap<>();
+    private final Map<String, Counter> fallbacks = new HashMap<>();
+    private final Counter shortQueries;
+    private final Counter coalesced;
+
+    @Autowired
+    public SuggestMetrics(@Value("${suggest.engine:sqlite-like}") String engine,
+                          @Value("${suggest.defaults.enabled:false}") boolean defaultsEnabled,
+                          @Value("${suggest.metrics.stages.enabled:true}") boolean stagesEnabled,
+                          @Value("${suggest.metrics.histogram:true}") boolean histogram,
+                          @Value("${suggest.metrics.slo:1ms,5ms,10ms,25ms,50ms,100ms,250ms}") String slo,
+                          MeterRegistry meterRegistry) {
+        this(Dictionaries.PRIMARY, engine, defaultsEnabled, stagesEnabled, histogram,
+                Arrays.stream(slo.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                        .map(DurationStyle::detectAndParse).sorted().toArray(Duration[]::new),
+                meterRegistry);
+    }
+
+    private SuggestMetrics(String dict, String engine, boolean defaultsEnabled, boolean stagesEnabled, boolean histogram,
+                           Duration[] buckets, MeterRegistry meterRegistry) {
+        this.registry = meterRegistry;
+        this.defaultsEnabled = defaultsEnabled;
+        this.histogram = histogram;
+        this.buckets = buckets;
+        this.stagesEnabled = stagesEnabled && meterRegistry != null;
+        if (meterRegistry == null) {
+            this.shortQueries = null;
+            this.coalesced = null;
+            return;
+        }
+        for (SuggestService.Mode mode : SuggestService.Mode.values()) {
+            String m = mode.name().toLowerCase(Locale.ROOT);
+            Map<String, Timer> byStatus = new HashMap<>();
+            for (String status : CACHE_STATUSES) {
+                byStatus.put(status, Timer.builder("suggest.query")
+                        .tags("dict", dict, "engine", engine, "mode", m, "cache", status)
+                        .publishPercentileHistogram(histogram)
+                        .serviceLevelObjectives(buckets)
+                        .register(meterRegistry));
+            }
+            queries.put(mode, byStatus);
+            results.put(mode, meterRegistry.counter("suggest.results", "dict", dict, "engine", engine, "mode", m));
+        }
+        if (this.stagesEnabled) {
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, Timer.builder("suggest.stage")
+                        .tags("dict", dict, "engine", engine, "stage", stage.name().toLowerCase(Locale.ROOT))
+                        .publishPercentileHistogram(histogram)
+                        .serviceLevelObjectives(buckets)
+                        .register(meterRegistry));
+            }
+        }
+        for (String result : REFRESH_RESULTS) {
+            refreshes.put(result, meterRegistry.counter("suggest.cache.refresh", "dict", dict, "engine", engine, "result", result));
+        }
+        for (String source : FALLBACK_SOURCES) {
+            fallbacks.put(source, meterRegistry.counter("suggest.fallback", "dict", dict, "engine", engine, "source", source));
+        }
+        this.shortQueries = meterRegistry.counter("suggest.short", "dict", dict, "engine", engine, "defaults", String.valueOf(defaultsEnabled));
+        this.coalesced = meterRegistry.counter("suggest.cache.coalesced", "dict", dict, "engine", engine);
+    }
+
+    /** The same meters for dictionary {@code dict}, served by {@code engine}. */
+    SuggestMetrics partition(String dict, String engine) {
+        return new SuggestMetrics(dict, engine, defaultsEnabled, stagesEnabled, histogram, buckets, registry);
+    }
+
+    /** Whether per-stage timings are recorded; callers skip their clock reads when not. */
+    public boolean stages() {
+        return stagesEnabled;
+    }
+
+    public void stage(Stage stage, long nanos) {
+        if (stagesEnabled) stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void query(SuggestService.Mode mode, String cacheStatus, long nanos, int resultCount) {
+        Map<String, Timer> byStatus = queries.get(mode);
+        if (byStatus == null) return;
+        byStatus.get(cacheStatus).record(nanos, TimeUnit.NANOSECONDS);
+        results.get(mode).increment(resultCount);
+    }
+
+    void shortQuery() {
+        if (shortQueries != null) shortQueries.increment();
+    }
+
+    void coalesced() {
+        if (coalesced != null) coalesced.increment();
+    }
+
+    void refresh(String result) {
+        Counter c = refreshes.get(result);
+        if (c != null) c.increment();
+    }
+
+    void fallback(String source) {
+        Counter c = fallbacks.get(source);
+        if (c != null) c.increment();
+    }
+}
@@ -1,119 +1,355 @@
 package com.example.autosuggest.service;
 
 import com.example.autosuggest.model.Suggestion;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.example.autosuggest.model.TrackRequest;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Tags;
-import io.micrometer.core.instrument.Timer;
-import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
-import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Locale;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
 public class SuggestService {
 
+    private static final Logger log = LoggerFactory.getLogger(SuggestService.class);
+
     public enum Mode { PREFIX, CONTAINS, FUZZY }
 
+    public static final int MAX_LIMIT = 50;
+
+    // Rows map straight into Suggestions by column position; no per-row Map
+    static final RowMapper<Suggestion> VALUE_ROW = (rs, i) -> new Suggestion(rs.getString(1), null);
+    static final RowMapper<Suggestion> SCORED_ROW = (rs, i) -> {
+        double score = rs.getDouble(2);
+        return new Suggestion(rs.getString(1), rs.wasNull() ? null : score);
+    };
+
     private final NamedParameterJdbcTemplate jdbc;
-    private final String engine;
-    private final Cache<String, List<Suggestion>> cache;
+    private final NamedParameterJdbcTemplate readJdbc; // read-only pool; never waits behind the writer
+    private final MemoryTrieIndex trieIndex;
+    private final MmapSnapshotIndex snapshotIndex;
+    private final MemoryFuzzyIndex fuzzyIndex;
+    private final FallbackSnapshot fallbackSnapshot;
+    private final PopularityBuffer popularityBuffer;
+    private final QueryLog queryLog;
+    private final Dictionaries dictionaries;
+    private final CacheInvalidationService invalidation;
+    private final DbGate gate;
+    private final AdaptiveLimiter limiter;
     private final boolean cacheEnabled;
     private final boolean defaultsEnabled;
+    private final boolean trigramContains;
     private final MeterRegistry meter;
+    private final io.github.resilience4j.circuitbreaker.CircuitBreaker breaker; // annotation type shares the name
+    private final ThreadPoolExecutor refresher;
 
     public SuggestService(NamedParameterJdbcTemplate jdbc,
-                          @Value("${suggest.engine:sqlite-like}") String engine,
+                          @Qualifier("suggestReadJdbc") NamedParameterJdbcTemplate readJdbc,
+                          MemoryTrieIndex trieIndex,
+                          MmapSnapshotIndex snapshotIndex,
+                          MemoryFuzzyIndex fuzzyIndex,
+                          FallbackSnapshot fallbackSnapshot,
+                          PopularityBuffer popularityBuffer,
+                          QueryLog queryLog,
+                          Dictionaries dictionaries,
+                          CacheInvalidationService invalidation,
+                          DbGate gate,
+                          AdaptiveLimiter limiter,
                           @Value("${suggest.cache.enabled:true}") boolean cacheEnabled,
                           @Value("${suggest.defaults.enabled:false}") boolean defaultsEnabled,
+                          @Value("${suggest.fts.trigram.enabled:false}") boolean trigramContains,
+                          @Value("${suggest.cache.refreshAhead.threads:2}") int refreshThreads,
+                          @Value("${suggest.cache.refreshAhead.queue:256}") int refreshQueue,
+                          @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                          CircuitBreakerRegistry circuitBreakers,
                           MeterRegistry meterRegistry) {
         this.jdbc = jdbc;
-        this.engine = engine;
+        this.readJdbc = readJdbc;
+        this.trieIndex = trieIndex;
+        this.snapshotIndex = snapshotIndex;
+        this.fuzzyIndex = fuzzyIndex;
+        this.fallbackSnapshot = fallbackSnapshot;
+        this.popularityBuffer = popularityBuffer;
+        this.queryLog = queryLog;
+        this.dictionaries = dictionaries;
         this.cacheEnabled = cacheEnabled;
         this.defaultsEnabled = defaultsEnabled;
+        this.trigramContains = trigramContains;
         this.meter = meterRegistry;
-        this.cache = Caffeine.newBuilder()
-                .maximumSize(10_000)
-                .expireAfterWrite(Duration.ofSeconds(90))
-                .build();
+        this.invalidation = invalidation;
+        this.gate = gate;
+        this.limiter = limiter;
+        // Same instance as the @CircuitBreaker annotation, so background refreshes see (and feed) its state
+        this.breaker = circuitBreakers.circuitBreaker("suggest-db");
+        // Partitions share the primary's refresh policy
+        if (cacheEnabled && dictionaries.primary().cache().refreshAhead()) {
+            // Bounded both ways: a burst of stale keys can neither spawn threads nor queue without limit
+            this.refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(refreshQueue), virtualThreads
+                    ? Thread.ofVirtual().name("suggest-refresh-", 0).factory()
+                    : r -> {
+                        Thread t = new Thread(r, "suggest-refresh");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        } else {
+            this.refresher = null;
+        }
         if (this.meter != null) {
-            // register cache metrics
-            CaffeineCacheMetrics.monitor(this.meter, this.cache, "suggest.cache");
+            // Concurrent misses on the same cache key share one DB round-trip, per dictionary
+            for (Dictionary d : dictionaries.all()) {
+                Gauge.builder("suggest.cache.inflight", d.loads(), SingleFlight::inFlight)
+                        .tag("dict", d.name())
+                        .register(this.meter);
+            }
+            if (refresher != null) {
+                Gauge.builder("suggest.cache.refresh.queue", refresher, e -> e.getQueue().size()).register(this.meter);
+            }
         }
     }
 
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
     @CircuitBreaker(name = "suggest-db", fallbackMethod = "suggestFallback")
     public List<Suggestion> suggest(String q, int limit, Mode mode) {
+        return lookup(dictionaries.primary(), q, limit, mode);
+    }
+
+    /** {@link #suggest(String, int, Mode)} against dictionary {@code dict} ({@code null} = {@code people}). */
+    @CircuitBreaker(name = "suggest-db", fallbackMethod = "suggestFallback")
+    public List<Suggestion> suggest(String dict, String q, int limit, Mode mode) {
+        return lookup(dictionaries.get(dict), q, limit, mode);
+    }
+
+    private List<Suggestion> lookup(Dictionary d, String q, int limit, Mode mode) {
         String qq = q == null ? "" : q.trim();
+        SuggestMetrics metrics = d.metrics();
         // Guard: avoid empty/very short queries that cause fan-out or errors
-        int lim = Math.min(Math.max(limit <= 0 ? 10 : limit, 1), 50);
+        int lim = Math.min(Math.max(limit <= 0 ? 10 : limit, 1), MAX_LIMIT);
         if (qq.length() < 2) {
-            if (meter != null) {
-                meter.counter("suggest.short", "engine", engine, "defaults", String.valueOf(defaultsEnabled)).increment();
-            }
-            return defaultsEnabled ? defaultPopular(lim) : List.of();
+            metrics.shortQuery();
+            return defaultsEnabled ? defaultPopular(d, lim) : List.of();
         }
         Mode m = mode == null ? Mode.PREFIX : mode;
-        Timer.Sample sample = meter != null ? Timer.start(meter) : null;
+        long start = System.nanoTime();
+        boolean stages = metrics.stages();
         List<Suggestion> result;
         String cacheStatus = "off";
         if (!cacheEnabled) {
-            result = dispatch(qq, lim, m);
+            result = limiter.call(() -> dispatch(d, qq, lim, m));
         } else {
-            String keyQ = Normalizer.normalize(qq, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
-            String key = engine + "|" + m + "|" + keyQ + "|" + lim;
-            List<Suggestion> existing = cache.getIfPresent(key);
-            if (existing != null) {
-                result = existing;
+            SuggestCache cache = d.cache();
+            // Entries are stored at MAX_LIMIT and sliced per request, so the limit is not part of the key
+            String keyQ = SuggestCache.normalize(qq);
+            String keyBase = SuggestCache.keyBase(d.engine(), m);
+            long t = stages ? System.nanoTime() : 0;
+            if (stages) metrics.stage(SuggestMetrics.Stage.NORMALIZE, t - start);
+            CachedSuggestions entry = cache.getL1(keyBase + keyQ);
+            if (entry != null) {
                 cacheStatus = "hit";
+                if (refresher != null) refreshAhead(d, keyBase + keyQ, qq, m);
+            } else if ((entry = cache.getL2(keyBase + keyQ)) != null) {
+                // Promoted back into L1 due for a refresh
+                cacheStatus = "l2";
+                if (refresher != null) refreshAhead(d, keyBase + keyQ, qq, m);
             } else {
-                result = dispatch(qq, lim, m);
-                cache.put(key, result);
-                cacheStatus = "miss";
+                boolean plain = PrefixRefinement.isPlain(qq);
+                long generation = cache.generation();
+                if (plain && PrefixRefinement.supports(d.engine(), m)) {
+                    entry = refineFromShorterPrefix(cache, keyBase, keyQ);
+                }
+                if (entry != null) {
+                    cacheStatus = "refine";
+                    cache.put(keyBase + keyQ, entry, generation);
+                } else {
+                    // Lookups done; what follows is timed by the db/map stages
+                    if (stages) metrics.stage(SuggestMetrics.Stage.CACHE, System.nanoTime() - t);
+                    t = 0;
+                    String key = keyBase + keyQ;
+                    boolean[] published = new boolean[1];
+                    SingleFlight.Result<CachedSuggestions> loaded = load(d, key, () -> {
+                        // A flight that ended between our cache check and this one already published the entry
+                        CachedSuggestions current = cache.getL1(key);
+                        if (current != null) {
+                            published[0] = true;
+                            return current;
+                        }
+                        // Read before the query: an invalidation that starts after this may be for rows it returns
+                        long loadedAt = cache.generation();
+                        // Only misses count against the concurrency limit; hits and refinements always pass
+                        List<Suggestion> rows = limiter.call(() -> dispatch(d, qq, MAX_LIMIT, m));
+                        CachedSuggestions fresh = new CachedSuggestions(rows, plain && rows.size() < MAX_LIMIT);
+                        // Publish before the flight ends, so late arrivals hit the cache instead of starting a new load
+                        cache.put(key, fresh, loadedAt);
+                        return fresh;
+                    });
+                    entry = loaded.value();
+                    cacheStatus = published[0] ? "hit" : loaded.shared() ? "coalesced" : "miss";
+                    if (loaded.shared()) metrics.coalesced();
+                }
             }
+            if (stages && t != 0) metrics.stage(SuggestMetrics.Stage.CACHE, System.nanoTime() - t);
+            result = entry.slice(lim);
         }
-        if (meter != null && sample != null) {
-            sample.stop(Timer.builder("suggest.query")
-                    .tags("engine", engine, "mode", m.name().toLowerCase(), "cache", cacheStatus)
-                    .register(meter));
-            meter.counter("suggest.results", "engine", engine, "mode", m.name().toLowerCase()).increment(result.size());
-        }
+        long elapsed = System.nanoTime() - start;
+        metrics.query(m, cacheStatus, elapsed, result.size());
+        queryLog.record(d.name(), qq, m, lim, d.engine(), cacheStatus, elapsed);
         return result;
     }
 
-    // Fallback used by CircuitBreaker: return empty list on DB failures
+    // A leader cancelled by its own client session must not fail the callers that joined its load. Other
+    // failures reach a follower as SharedLoadException, which the breaker ignores: the leader's call counted them.
+    private SingleFlight.Result<CachedSuggestions> load(Dictionary d, String key, Supplier<CachedSuggestions> loader) {
+        while (true) {
+            try {
+                return d.loads().run(key, loader);
+            } catch (QueryCancelledException e) {
+                if (QueryCancellation.isCancelled()) throw e;
+            } catch (SharedLoadException e) {
+                if (e.getCause() instanceof QueryCancelledException cancelled) {
+                    if (QueryCancellation.isCancelled()) throw cancelled;
+                    continue;
+                }
+                // Saturation keeps its type, so the fallback still answers 503 + Retry-After
+                if (e.getCause() instanceof OverloadedException overloaded) throw overloaded;
+                throw e;
+            }
+        }
+    }
+
+    /** Whether {@link #suggest} would answer {@code q} straight from the cache, without a database round-trip. */
+    public boolean isCached(String q, Mode mode) {
+        return isCached(null, q, mode);
+    }
+
+    public boolean isCached(String dict, String q, Mode mode) {
+        String qq = q == null ? "" : q.trim();
+        if (!cacheEnabled || qq.length() < 2) return false;
+        Dictionary d = dictionaries.get(dict);
+        return d.cache().get(SuggestCache.keyBase(d.engine(), mode == null ? Mode.PREFIX : mode) + SuggestCache.normalize(qq)) != null;
+    }
+
+    // Stale-while-revalidate: the reader that finds an entry past its refresh time is served the old value
+    // and queues a reload. The reload runs through the same breaker; while it is open (or the query fails)
+    // the old value stays in place and is retried later instead of expiring into a fallback.
+    private void refreshAhead(Dictionary d, String key, String q, Mode mode) {
+        SuggestCache cache = d.cache();
+        SuggestCache.Slot claimed = cache.claimRefresh(key);
+        if (claimed == null) return;
+        try {
+            refresher.execute(() -> {
+                try {
+                    List<Suggestion> rows = breaker.executeSupplier(() -> dispatch(d, q, MAX_LIMIT, mode));
+                    boolean plain = PrefixRefinement.isPlain(q);
+                    cache.refreshed(key, claimed, new CachedSuggestions(rows, plain && rows.size() < MAX_LIMIT));
+                    d.metrics().refresh("ok");
+                } catch (RuntimeException e) {
+                    cache.refreshFailed(key, claimed);
+                    d.metrics().refresh("error");
+                    log.debug("Refresh of {} in {} failed, serving stale: {}", key, d.name(), e.toString());
+                }
+            });
+            d.metrics().refresh("scheduled");
+        } catch (RejectedExecutionException e) {
+            // Queue full: the next reader will claim it again
+            cache.unclaim(claimed);
+            d.metrics().refresh("rejected");
+        }
+    }
+
+    // Typing "mic" -> "micr" -> "micro": the nearest cached shorter prefix decides. If it holds every match
+    // we filter it in memory; if it was truncated, every shorter prefix is truncated too, so stop looking.
+    private static CachedSuggestions refineFromShorterPrefix(SuggestCache cache, String keyBase, String keyQ) {
+        for (int len = keyQ.length() - 1; len >= 2; len--) {
+            CachedSuggestions shorter = cache.get(keyBase + keyQ.substring(0, len));
+            if (shorter != null) {
+                return shorter.complete() ? PrefixRefinement.refine(shorter, keyQ) : null;
+            }
+        }
+        return null;
+    }
+
+    // Fallback used by CircuitBreaker: serve the cached (possibly stale) entry if there is one, then the
+    // in-memory top-N snapshot for PREFIX/CONTAINS, else empty. Every answer is marked as a fallback.
     @SuppressWarnings("unused")
     public List<Suggestion> suggestFallback(String q, int limit, Mode mode, Throwable t) {
-        if (meter != null) {
-            meter.counter("suggest.fallback", "engine", engine).increment();
-        }
-        return List.of();
+        return fallback(dictionaries.primary(), q, limit, mode, t);
+    }
+
+    @SuppressWarnings("unused")
+    public List<Suggestion> suggestFallback(String dict, String q, int limit, Mode mode, Throwable t) {
+        // A bad dict is the caller's mistake, not an outage
+        if (t instanceof UnknownDictionaryException unknown) throw unknown;
+        return fallback(dictionaries.get(dict), q, limit, mode, t);
+    }
+
+    private List<Suggestion> fallback(Dictionary d, String q, int limit, Mode mode, Throwable t) {
+        // Nobody is waiting for a superseded request's answer
+        if (t instanceof QueryCancelledException cancelled) throw cancelled;
+        String qq = q == null ? "" : q.trim();
+        Mode m = mode == null ? Mode.PREFIX : mode;
+        int lim = Math.min(Math.max(limit <= 0 ? 10 : limit, 1), MAX_LIMIT);
+        CachedSuggestions stale = cacheEnabled && qq.length() >= 2
+                ? d.cache().get(SuggestCache.keyBase(d.engine(), m) + SuggestCache.normalize(qq))
+                : null;
+        // Saturation is not an outage: tell the client to back off rather than answer "no matches"
+        boolean saturated = stale == null && t instanceof OverloadedException;
+        // Prefix matches rank first for CONTAINS too, so they are a useful (partial) answer for it
+        List<Suggestion> snapshot = stale == null && !saturated && m != Mode.FUZZY && qq.length() >= 2
+                && d.primary() && fallbackSnapshot.enabled() ? fallbackSnapshot.lookup(qq, lim) : null;
+        String source = stale != null ? "cache" : saturated ? "saturated" : snapshot != null ? "snapshot" : "empty";
+        d.metrics().fallback(source);
+        if (saturated) throw (OverloadedException) t;
+        if (stale != null) return new FallbackSuggestions(stale.slice(lim), source);
+        return new FallbackSuggestions(snapshot != null ? snapshot : List.of(), source);
     }
 
     public List<Suggestion> defaultSuggestions(int limit) {
-        int lim = Math.min(Math.max(limit <= 0 ? 10 : limit, 1), 50);
+        int lim = Math.min(Math.max(limit <= 0 ? 10 : limit, 1), MAX_LIMIT);
         if (!defaultsEnabled) return List.of();
-        return defaultPopular(lim);
+        return defaultPopular(dictionaries.primary(), lim);
     }
 
-    private List<Suggestion> dispatch(String q, int limit, Mode mode) {
-        return switch (engine) {
-            case "sqlite-fts" -> suggestSqliteFts(q, limit, mode);
-            case "oracle-text" -> suggestOracleText(q, limit, mode);
-            case "sqlite-like" -> suggestSqliteLike(q, limit, mode);
-            default -> suggestSqliteLike(q, limit, mode);
+    private List<Suggestion> dispatch(Dictionary d, String q, int limit, Mode mode) {
+        if (!d.primary()) {
+            // Extra dictionaries are SQLite-only; the in-memory indexes are built from people
+            return "sqlite-fts".equals(d.engine()) ? suggestSqliteFts(d, q, limit, mode) : suggestSqliteLike(d, q, limit, mode);
+        }
+        if (mode == Mode.FUZZY && fuzzyIndex.enabled()) {
+            // SQLite has no typo tolerance; LIKE/FTS would silently degrade FUZZY to CONTAINS/PREFIX
+            return fuzzyIndex.suggest(q, limit);
+        }
+        return switch (d.engine()) {
+            case "sqlite-fts" -> suggestSqliteFts(d, q, limit, mode);
+            case "oracle-text" -> suggestOracleText(d, q, limit, mode);
+            case "memory-trie" -> suggestMemoryTrie(d, q, limit, mode);
+            case "mmap-snapshot" -> suggestMmapSnapshot(d, q, limit, mode);
+            case "sqlite-like" -> suggestSqliteLike(d, q, limit, mode);
+            default -> suggestSqliteLike(d, q, limit, mode);
         };
     }
 
@@ -122,78 +358,99 @@ public class SuggestService {
         if (id == null && (value == null || value.isBlank())) {
             throw new IllegalArgumentException("Provide either 'id' or non-empty 'value'");
         }
+        if (popularityBuffer.enabled()) {
+            // Write-behind: applied by the next batched flush, so unknown ids/values are dropped silently
+            popularityBuffer.record(id, value);
+            return 1;
+        }
         if (id != null) {
             int updated = jdbc.update("UPDATE people SET popularity = popularity + 1 WHERE id = :id",
                     new MapSqlParameterSource().addValue("id", id));
             if (updated == 0) throw new IllegalArgumentException("No record with id=" + id);
+            invalidation.requestDrain();
             return updated;
         } else {
             int updated = jdbc.update("UPDATE people SET popularity = popularity + 1 WHERE name = :name COLLATE NOCASE",
                     new MapSqlParameterSource().addValue("name", value));
             if (updated == 0) throw new IllegalArgumentException("No record with value='" + value + "'");
+            invalidation.requestDrain();
             return updated;
         }
     }
 
+    public int trackSelections(List<TrackRequest> selections) {
+        // Validate the whole batch up front so a bad entry never leaves it half applied
+        for (TrackRequest s : selections) {
+            if (s == null || (s.id() == null && (s.value() == null || s.value().isBlank()))) {
+                throw new IllegalArgumentException("Each selection needs either 'id' or non-empty 'value'");
+            }
+        }
+        if (popularityBuffer.enabled()) {
+            selections.forEach(s -> popularityBuffer.record(s.id(), s.value()));
+            return selections.size();
+        }
+        Map<Integer, Long> ids = new HashMap<>();
+        Map<String, Long> values = new HashMap<>();
+        for (TrackRequest s : selections) {
+            if (s.id() != null) ids.merge(s.id(), 1L, Long::sum);
+            else values.merge(s.value(), 1L, Long::sum);
+        }
+        int updated = popularityBuffer.apply(ids, values, true);
+        invalidation.requestDrain();
+        return updated;
+    }
+
     // Option A: Simple prefix/contains via LIKE and NOCASE collation (SQLite)
-    private List<Suggestion> suggestSqliteLike(String q, int limit, Mode mode) {
+    private List<Suggestion> suggestSqliteLike(Dictionary d, String q, int limit, Mode mode) {
         String sql;
         MapSqlParameterSource params = new MapSqlParameterSource()
                 .addValue("q", q)
                 .addValue("limit", limit);
 
         if (mode == Mode.PREFIX) {
-            sql = """
-                    SELECT name AS value
-                    FROM people
-                    WHERE name LIKE :q || '%' COLLATE NOCASE
-                    ORDER BY CASE WHEN name = :q COLLATE NOCASE THEN 0 ELSE 1 END,
-                             length(name), popularity DESC, name
-                    LIMIT :limit
-                    """;
+            sql = d.sql().likePrefix();
+        } else if (trigramContains && d.primary() && q.length() >= 3) {
+            // Same LIKE as below, but answered from the trigram index instead of a full scan.
+            // Trigrams need at least 3 characters; shorter patterns would scan the FTS table anyway.
+            sql = d.sql().trigramContains();
         } else { // CONTAINS or FUZZY fallback
-            sql = """
-                    SELECT name AS value
-                    FROM people
-                    WHERE name LIKE '%' || :q || '%' COLLATE NOCASE
-                    ORDER BY CASE WHEN name LIKE :q || '%' COLLATE NOCASE THEN 0 ELSE 1 END,
-                             length(name), popularity DESC, name
-                    LIMIT :limit
-                    """;
+            sql = d.sql().likeContains();
         }
 
-        List<Map<String, Object>> rows = jdbc.queryForList(sql, params);
-        return rows.stream()
-                .map(r -> new Suggestion(Objects.toString(r.get("value"), null), null))
-                .collect(Collectors.toList());
+        return query(sql, params, VALUE_ROW, d.metrics());
     }
 
     // Option B: FTS5-powered prefix with ranking (SQLite)
-    private List<Suggestion> suggestSqliteFts(String q, int limit, Mode mode) {
+    private List<Suggestion> suggestSqliteFts(Dictionary d, String q, int limit, Mode mode) {
         String cleaned = sanitizeFts5(q);
         String match = buildFtsMatch(cleaned, mode);
 
-        String sql = """
-                SELECT p.name, bm25(people_fts) AS score
-                FROM people_fts f
-                JOIN people p ON p.id = f.rowid
-                WHERE people_fts MATCH :match
-                ORDER BY score, p.popularity DESC, length(p.name), p.name
-                LIMIT :limit
-                """;
         MapSqlParameterSource params = new MapSqlParameterSource()
                 .addValue("match", match)
                 .addValue("limit", limit);
-        List<Map<String, Object>> rows = jdbc.queryForList(sql, params);
-        return rows.stream()
-                .map(r -> new Suggestion(
-                        Objects.toString(r.get("name"), null),
-                        r.get("score") == null ? null : ((Number) r.get("score")).doubleValue()))
-                .collect(Collectors.toList());
+        return query(d.sql().fts(), params, SCORED_ROW, d.metrics());
+    }
+
+    // Option C: in-process prefix trie with pre-ranked top-K per node; PREFIX never touches the DB
+    private List<Suggestion> suggestMemoryTrie(Dictionary d, String q, int limit, Mode mode) {
+        if (mode != Mode.PREFIX || limit > trieIndex.topK()) {
+            // CONTAINS/FUZZY are not prefix-shaped, and nodes only hold top-K; keep serving those from SQLite
+            return suggestSqliteLike(d, q, limit, mode);
+        }
+        return trieIndex.suggest(q, limit);
+    }
+
+    // Option D: same ranking as the trie, served from a memory-mapped snapshot file (off-heap, hot-swappable)
+    private List<Suggestion> suggestMmapSnapshot(Dictionary d, String q, int limit, Mode mode) {
+        if (mode != Mode.PREFIX || limit > snapshotIndex.topK() || !snapshotIndex.loaded()) {
+            // Until a snapshot file is mapped, PREFIX is answered by the query the snapshot reproduces
+            return suggestSqliteLike(d, q, limit, mode);
+        }
+        return snapshotIndex.suggest(q, limit);
     }
 
     // Oracle Text-backed suggestions (CONTAINS) with scoring
-    private List<Suggestion> suggestOracleText(String q, int limit, Mode mode) {
+    private List<Suggestion> suggestOracleText(Dictionary d, String q, int limit, Mode mode) {
         String expr = buildOracleTextExpr(q, mode);
         String sql = """
                 SELECT NAME AS value, SCORE(1) AS score
@@ -205,35 +462,50 @@ public class SuggestService {
         MapSqlParameterSource params = new MapSqlParameterSource()
                 .addValue("expr", expr)
                 .addValue("limit", limit);
-        List<Map<String, Object>> rows = jdbc.queryForList(sql, params);
-        return rows.stream()
-                .map(r -> new Suggestion(
-                        Objects.toString(r.get("value"), null),
-                        r.get("score") == null ? null : ((Number) r.get("score")).doubleValue()))
-                .collect(Collectors.toList());
+        return query(sql, params, SCORED_ROW, d.metrics());
     }
 
     // --- helpers ---
-    private List<Suggestion> defaultPopular(int limit) {
-        String sql = """
-                SELECT name AS value
-                FROM people
-                ORDER BY popularity DESC, length(name), name
-                LIMIT :limit
-                """;
+    private List<Suggestion> query(String sql, MapSqlParameterSource params, RowMapper<Suggestion> mapper,
+                                   SuggestMetrics metrics) {
+        QueryCancellation.check();
+        try {
+            return gate.call(() -> {
+                QueryCancellation.check();
+                if (!metrics.stages()) return readJdbc.query(sql, params, mapper);
+                // The extractor runs once the statement has executed: before it is db, inside it is map
+                long t0 = System.nanoTime();
+                long[] mapStart = new long[1];
+                List<Suggestion> rows = readJdbc.query(sql, params, (ResultSetExtractor<List<Suggestion>>) rs -> {
+                    mapStart[0] = System.nanoTime();
+                    List<Suggestion> out = new ArrayList<>();
+                    for (int i = 0; rs.next(); i++) out.add(mapper.mapRow(rs, i));
+                    return out;
+                });
+                long t1 = System.nanoTime();
+                metrics.stage(SuggestMetrics.Stage.DB, mapStart[0] - t0);
+                metrics.stage(SuggestMetrics.Stage.MAP, t1 - mapStart[0]);
+                return rows;
+            });
+        } catch (DataAccessException e) {
+            // Statement.cancel surfaces as a driver error ("interrupted" on SQLite)
+            if (QueryCancellation.isCancelled()) throw new QueryCancelledException("Superseded by a newer request");
+            throw e;
+        }
+    }
+
+    private List<Suggestion> defaultPopular(Dictionary d, int limit) {
         MapSqlParameterSource params = new MapSqlParameterSource().addValue("limit", limit);
-        List<Map<String, Object>> rows = jdbc.queryForList(sql, params);
-        return rows.stream()
-                .map(r -> new Suggestion(Objects.toString(r.get("value"), null), null))
-                .collect(Collectors.toList());
+        return query(d.sql().popular(), params, VALUE_ROW, d.metrics());
     }
-    private static String sanitizeFts5(String s) {
+
+    static String sanitizeFts5(String s) {
         if (s == null) return "";
         // Remove operators we don't support from user input; normalize spaces
         return s.replaceAll("[\"'()<>~^:+\\-]", " ").replaceAll("\\s+", " ").trim();
     }
 
-    private static String buildFtsMatch(String cleaned, Mode mode) {
+    static String buildFtsMatch(String cleaned, Mode mode) {
         if (cleaned.isBlank()) return ""; // upstream guard ensures length>=2
         String[] terms = cleaned.split("\\s+");
         List<String> clauses = new ArrayList<>();
@@ -0,0 +1,11 @@
+package com.example.autosuggest.service;
+
+import java.util.Collection;
+
+/** {@code dict} names no configured dictionary; a client error, never a breaker fallback. */
+public class UnknownDictionaryException extends IllegalArgumentException {
+
+    public UnknownDictionaryException(String name, Collection<String> known) {
+        super("Unknown dictionary '" + name + "' (available: " + String.join(", ", known) + ")");
+    }
+}
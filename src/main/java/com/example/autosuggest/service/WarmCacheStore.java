@@ -0,0 +1,177 @@
+package com.example.autosuggest.service;
+
+import com.example.autosuggest.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists the hottest {@link SuggestCache} entries of this engine to a local gzipped JSON file, on shutdown and
+ * every {@code persistInterval}, so the next start can restore them before taking traffic
+ * (see {@code CachePrewarmRunner}). Files are replaced atomically; one written for another engine is ignored.
+ * Each file records the {@code people_changes} position its entries reflect; the change rows after it are kept
+ * (for up to {@code maxAge}) so a restore can replay what changed between the save and the restart.
+ */
+@Component
+public class WarmCacheStore implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmCacheStore.class);
+
+    private static final int VERSION = 2;
+
+    private final SuggestCache cache;
+    private final CacheInvalidationService invalidation;
+    private final ObjectMapper mapper;
+    private final String engine;
+    private final Path file;
+    private final int maxKeys;
+    private final Duration persistInterval;
+    private final long retainMillis;
+    private ScheduledExecutorService persister;
+
+    public WarmCacheStore(SuggestCache cache,
+                          CacheInvalidationService invalidation,
+                          ObjectMapper mapper,
+                          @Value("${suggest.engine:sqlite-like}") String engine,
+                          @Value("${suggest.cache.enabled:true}") boolean cacheEnabled,
+                          @Value("${suggest.cache.prewarm.file:}") String file,
+                          @Value("${suggest.cache.prewarm.keys:5000}") int maxKeys,
+                          @Value("${suggest.cache.prewarm.persistInterval:PT5M}") Duration persistInterval,
+                          @Value("${suggest.cache.prewarm.maxAge:PT1H}") Duration maxAge) {
+        this.cache = cache;
+        this.invalidation = invalidation;
+        this.mapper = mapper;
+        this.engine = engine;
+        this.file = cacheEnabled && file != null && !file.isBlank() ? Path.of(file) : null;
+        this.maxKeys = maxKeys;
+        this.persistInterval = persistInterval;
+        // Change rows are only worth keeping while a later start may still restore the file
+        this.retainMillis = maxAge.toMillis();
+        Saved previous = read();
+        if (previous != null) {
+            // Before anything drains: the restore of the existing file replays the changes made since it was saved
+            invalidation.retainAfter(previous.drainedSeq(), previous.savedAt() + retainMillis);
+        }
+    }
+
+    /** One persisted entry; {@code q} is the normalized query as it appears in the cache key. */
+    public record Entry(SuggestService.Mode mode, String q, boolean complete, List<Suggestion> items) {}
+
+    /** {@code drainedSeq}: every change logged up to it is reflected in the entries; {@code -1} if untracked. */
+    public record Saved(int version, String engine, long savedAt, long drainedSeq, List<Entry> entries) {
+
+        public Duration age() {
+            return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - savedAt));
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (file == null || persistInterval.isZero() || persistInterval.isNegative()) return;
+        // Periodic saves cover pods that die without a clean shutdown
+        persister = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-persist");
+            t.setDaemon(true);
+            return t;
+        });
+        persister.scheduleWithFixedDelay(this::saveQuietly, persistInterval.toMillis(), persistInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (persister != null) persister.shutdownNow();
+        saveQuietly();
+    }
+
+    public boolean enabled() {
+        return file != null;
+    }
+
+    /** Writes the hottest entries of this engine; returns how many, or 0 without touching the file if there are none. */
+    public synchronized int save() throws IOException {
+        if (file == null) return 0;
+        // Keep the previous file rather than replace it with nothing (e.g. a pod that took no traffic)
+        if (cache.size() == 0) return 0;
+        String base = engine + "|";
+        long now = System.currentTimeMillis();
+        // Taken before the entries: a change drained while they are collected is replayed on restore, never lost
+        long drainedSeq = invalidation.markForRestore(now + retainMillis);
+        List<Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, CachedSuggestions> e : cache.hottest(maxKeys).entrySet()) {
+            String key = e.getKey();
+            int m = key.indexOf('|', base.length());
+            if (!key.startsWith(base) || m < 0) continue;
+            SuggestService.Mode mode = SuggestService.Mode.valueOf(key.substring(base.length(), m));
+            entries.add(new Entry(mode, key.substring(m + 1), e.getValue().complete(), e.getValue().items()));
+        }
+        if (entries.isEmpty()) return 0;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                mapper.writeValue(out, new Saved(VERSION, engine, now, drainedSeq, entries));
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return entries.size();
+    }
+
+    /** The persisted entries, hottest first; {@code null} if there is no usable file for this engine. */
+    public Saved read() {
+        if (file == null || !Files.isRegularFile(file)) return null;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            Saved saved = mapper.readValue(in, Saved.class);
+            if (saved.version() != VERSION || !engine.equals(saved.engine()) || saved.entries() == null) return null;
+            return saved;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable warm cache file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Puts the saved results straight into the cache; returns how many entries were restored. */
+    public int restore(Saved saved) {
+        int restored = 0;
+        for (Entry e : saved.entries()) {
+            if (e.mode() == null || e.q() == null || e.items() == null) continue;
+            cache.restore(SuggestCache.keyBase(engine, e.mode()) + e.q(),
+                    new CachedSuggestions(List.copyOf(e.items()), e.complete()));
+            restored++;
+        }
+        return restored;
+    }
+
+    private void saveQuietly() {
+        try {
+            int saved = save();
+            if (saved > 0) log.debug("Persisted {} warm cache entries to {}", saved, file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Persisting the warm cache to {} failed: {}", file, e.getMessage());
+        }
+    }
+}
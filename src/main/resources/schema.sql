@@ -19,6 +19,29 @@ CREATE VIRTUAL TABLE IF NOT EXISTS people_fts USING fts5(
 INSERT INTO people_fts(rowid, name)
   SELECT id, name FROM people WHERE id NOT IN (SELECT rowid FROM people_fts);
 
+-- Trigram index for substring (CONTAINS) queries; LIKE '%q%' on it uses the index for q of 3+ chars.
+-- Kept in sync by triggers that FtsAdminService installs when suggest.fts.trigram.enabled=true
+CREATE VIRTUAL TABLE IF NOT EXISTS people_trigram USING fts5(
+  name,
+  content='people', content_rowid='id',
+  tokenize = 'trigram'
+);
+
+-- Change log of names whose suggestions may have changed; filled by triggers that
+-- CacheInvalidationService installs when suggest.cache.invalidation.enabled=true
+CREATE TABLE IF NOT EXISTS people_changes (
+  seq   INTEGER PRIMARY KEY AUTOINCREMENT,
+  name  TEXT NOT NULL
+);
+
+-- Per-row triggers (of any dictionary's table) BulkImportService dropped for a load; whatever is still here at
+-- startup belonged to an import that never finished, and is put back then
+CREATE TABLE IF NOT EXISTS people_import_triggers (
+  name  TEXT PRIMARY KEY,
+  tbl   TEXT NOT NULL,
+  sql   TEXT NOT NULL
+);
+
 -- Sample seed data for quick testing (idempotent-ish)
 INSERT INTO people(id, name)
 SELECT 1, 'Microsoft' WHERE NOT EXISTS (SELECT 1 FROM people WHERE id = 1);
@@ -0,0 +1,114 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true"
+})
+class SuggestBatchControllerTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES"
+                + "(1501, 'Batman', 3), (1502, 'Batgirl', 2), (1503, 'Baton', 1), (1504, 'Zebra', 1)",
+                new MapSqlParameterSource());
+        cache.invalidateAll();
+    }
+
+    @Test
+    void resultsFollowRequestOrder_eachWithItsOwnLimit() throws Exception {
+        double refinedBefore = queries("refine");
+        double dedupedBefore = items("deduped");
+
+        batch("""
+                [{"q":"bat","limit":2},{"q":"zebra"},{"q":" BAT ","limit":1},{"q":"batm"},{"q":"ze","mode":"CONTAINS"}]
+                """)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0][*].value").value(contains("Baton", "Batman")))
+                .andExpect(jsonPath("$[1][*].value").value(contains("Zebra")))
+                .andExpect(jsonPath("$[2][*].value").value(contains("Baton")))
+                .andExpect(jsonPath("$[3][*].value").value(contains("Batman")))
+                .andExpect(jsonPath("$[4][*].value").value(contains("Zebra")));
+
+        // "BAT" shares the "bat" lookup; "batm" waits for it and is filtered from its cache entry
+        assertThat(items("deduped")).isEqualTo(dedupedBefore + 1);
+        assertThat(queries("refine")).isEqualTo(refinedBefore + 1);
+    }
+
+    @Test
+    void cachedEntriesAreServedWithoutAQuery() throws Exception {
+        service.suggest("zeb", 10, SuggestService.Mode.PREFIX);
+        double cachedBefore = items("cache");
+        double queriedBefore = items("query");
+
+        batch("[{\"q\":\"zeb\"},{\"q\":\"batg\"}]")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0][0].value").value("Zebra"))
+                .andExpect(jsonPath("$[1][0].value").value("Batgirl"));
+
+        assertThat(items("cache")).isEqualTo(cachedBefore + 1);
+        assertThat(items("query")).isEqualTo(queriedBefore + 1);
+    }
+
+    @Test
+    void entriesAreValidatedLikeGetSuggest() throws Exception {
+        batch("[]").andExpect(status().isBadRequest());
+        batch("[{\"q\":\"a\"}]").andExpect(status().isBadRequest());
+        batch("[{\"q\":\"bat\",\"limit\":1000}]").andExpect(status().isBadRequest());
+        batch("[{\"q\":\"bat\"},null]").andExpect(status().isBadRequest());
+        batch("[{\"q\":\"bat\",\"mode\":\"NOPE\"}]").andExpect(status().isBadRequest());
+    }
+
+    private ResultActions batch(String body) throws Exception {
+        return mvc.perform(post("/suggest/batch").contentType(MediaType.APPLICATION_JSON).content(body));
+    }
+
+    private double items(String source) {
+        var counter = meter.find("suggest.batch.items").tag("source", source).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private double queries(String cacheStatus) {
+        var timer = meter.find("suggest.query").tags("engine", "sqlite-like", "mode", "prefix", "cache", cacheStatus).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.SuggestService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * CONTAINS latency of the trigram index against the LIKE '%q%' scan it replaces, at growing table sizes.
+ * Sizes come from {@code -Dbench.sizes} (default 20k, 200k, 2M); add 10000000 for the full range
+ * (needs a few GB of heap-free memory for the in-memory database).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=false",
+        "suggest.fts.trigram.enabled=true"
+})
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class SuggestBenchmarkTrigramContainsTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate npJdbc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    // Typical type-ahead substrings: a distinctive fragment that narrows to a handful of names
+    private final List<String> selective = List.of(
+            "soft 12", "tek 345", "labs 77", "cloud 4", "ebra ai 9", "robotics 61", "ytics 508",
+            "oogle data 3", "eta network 2", "penai lens 11", "quark inc 70", "nvidia ltd 5"
+    );
+
+    // Fragments shared by a large share of the table; both plans end up sorting every match
+    private final List<String> broad = List.of("soft", "scope", "labs", "cloud", "micro", "tech");
+
+    private static final String[] ROOTS = {"Micro", "Macro", "Alpha", "Beta", "Gamma", "Delta", "Omega", "Zebra",
+            "Quantum", "Quark", "Apple", "Amazon", "Google", "Meta", "Netflix", "Nvidia",
+            "Oracle", "OpenAI", "OpenSearch", "Microscope", "Microsoft", "Microtek", "Microlabs"};
+    private static final String[] SUFFIXES = {"soft", "tek", "scope", " lens", " systems", " labs", " corp", " inc",
+            " ltd", " group", " holdings", " network", " tech", " solutions", " devices", " energy",
+            " data", " cloud", " ai", " robotics", " analytics", " digital"};
+
+    private static final String LIKE_SCAN = """
+            SELECT name AS value
+            FROM people
+            WHERE name LIKE '%' || :q || '%' COLLATE NOCASE
+            ORDER BY CASE WHEN name LIKE :q || '%' COLLATE NOCASE THEN 0 ELSE 1 END,
+                     length(name), popularity DESC, name
+            LIMIT :limit
+            """;
+
+    @Test
+    void runBenchmark() {
+        int[] sizes = Arrays.stream(System.getProperty("bench.sizes", "20000,200000,2000000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).sorted().toArray();
+
+        jdbc.execute("PRAGMA journal_mode=MEMORY");
+        jdbc.execute("PRAGMA synchronous=OFF");
+        jdbc.execute("PRAGMA temp_store=MEMORY");
+        jdbc.execute("PRAGMA cache_size=-200000");
+        npJdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        npJdbc.update("INSERT INTO people_trigram(people_trigram) VALUES('rebuild')", new MapSqlParameterSource());
+
+        System.out.println("=== Benchmark: CONTAINS trigram index vs LIKE scan (no cache) ===");
+        int loaded = 0;
+        for (int size : sizes) {
+            long t0 = System.nanoTime();
+            grow(loaded, size);
+            loaded = size;
+            System.out.println("rows=" + size + " (loaded in " + toMs(System.nanoTime() - t0) + " ms)");
+            for (List<String> needles : List.of(selective, broad)) {
+                String label = needles == selective ? "selective" : "broad    ";
+                System.out.print("  " + label + " trigram: ");
+                report(time(needles, Integer.getInteger("bench.iters", 1000),
+                        q -> service.suggest(q, 10, SuggestService.Mode.CONTAINS)));
+                System.out.print("  " + label + " like   : ");
+                // The scan is O(rows) per query, so fewer iterations keep the large sizes bearable
+                report(time(needles, Integer.getInteger("bench.scanIters", 50),
+                        q -> npJdbc.queryForList(LIKE_SCAN, new MapSqlParameterSource("q", q).addValue("limit", 10))));
+            }
+        }
+    }
+
+    // Appends rows (from, to], so each size only pays for its increment; triggers keep the trigram index in sync
+    private void grow(int from, int to) {
+        int perPair = (to + ROOTS.length * SUFFIXES.length - 1) / (ROOTS.length * SUFFIXES.length);
+        int popMax = Math.max(10, (int) Math.sqrt(to));
+        jdbc.execute("BEGIN TRANSACTION");
+        try {
+            List<Object[]> batch = new ArrayList<>(10_000);
+            for (int id = from + 1; id <= to; id++) {
+                // Spread ids over root x suffix so every needle keeps matching as the table grows
+                int pair = (id - 1) % (ROOTS.length * SUFFIXES.length);
+                int n = (id - 1) / (ROOTS.length * SUFFIXES.length);
+                String name = ROOTS[pair / SUFFIXES.length] + SUFFIXES[pair % SUFFIXES.length] + " " + (n % Math.max(1, perPair));
+                batch.add(new Object[]{id, name, id % popMax});
+                if (batch.size() >= 10_000) {
+                    jdbc.batchUpdate("INSERT INTO people(id, name, popularity) VALUES(?,?,?)", batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                jdbc.batchUpdate("INSERT INTO people(id, name, popularity) VALUES(?,?,?)", batch);
+            }
+        } finally {
+            jdbc.execute("COMMIT");
+        }
+    }
+
+    private List<Long> time(List<String> needles, int iters, Consumer<String> query) {
+        Random rnd = new Random(42);
+        int warm = Math.min(Integer.getInteger("bench.warm", 200), iters);
+        for (int i = 0; i < warm; i++) query.accept(needles.get(rnd.nextInt(needles.size())));
+        List<Long> nanos = new ArrayList<>(iters);
+        for (int i = 0; i < iters; i++) {
+            String q = needles.get(rnd.nextInt(needles.size()));
+            long t0 = System.nanoTime();
+            query.accept(q);
+            nanos.add(System.nanoTime() - t0);
+        }
+        return nanos;
+    }
+
+    private void report(List<Long> nanos) {
+        nanos.sort(Long::compare);
+        long p50 = nanos.get(nanos.size() / 2);
+        long p95 = nanos.get(Math.max(0, (int) Math.floor(nanos.size() * 0.95) - 1));
+        long avg = nanos.stream().mapToLong(Long::longValue).sum() / nanos.size();
+        System.out.println("count=" + nanos.size() +
+                ", avg=" + toMs(avg) + " ms" +
+                ", p50=" + toMs(p50) + " ms" +
+                ", p95=" + toMs(p95) + " ms");
+    }
+
+    private String toMs(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+}
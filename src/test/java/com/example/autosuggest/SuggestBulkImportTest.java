@@ -0,0 +1,193 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.config.BulkImportRunner;
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.BulkImportService;
+import com.example.autosuggest.service.FtsAdminService;
+import com.example.autosuggest.service.SuggestService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-fts",
+        "suggest.fts.manage=true",
+        "suggest.cache.enabled=true",
+        "suggest.cache.refreshAhead.enabled=false",
+        "suggest.cache.prewarm.enabled=false",
+        "suggest.cache.invalidation.enabled=true",
+        "suggest.cache.invalidation.pollInterval=PT1H",
+        "suggest.import.batchSize=2",
+        "suggest.import.pause=PT0S",
+        "suggest.dictionaries.brands.engine=sqlite-like"
+})
+class SuggestBulkImportTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    FtsAdminService fts;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    BulkImportService imports;
+
+    @Autowired
+    ConfigurableApplicationContext context;
+
+    @BeforeEach
+    void reset() {
+        // Other tests write people without the FTS triggers; resync before the triggers start deleting from it
+        fts.rebuild();
+        fts.ensureTriggers();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM brands", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2501, 'Microsoft', 7)", new MapSqlParameterSource());
+    }
+
+    @Test
+    void ndjsonIsUpsertedInBatches_thenIndexedOnceAndCachesReset() throws Exception {
+        // Cached before the import; must not survive it
+        assertThat(values(service.suggest("micr", 10, SuggestService.Mode.PREFIX))).containsExactly("Microsoft");
+
+        String body = """
+                {"id":2501,"name":"Microsoft Corp"}
+                {"id":2502,"name":"Micron","popularity":3}
+                {"name":"Microchip"}
+                {"id":2504,"name":"  "}
+                {"id":2505,"name":"Oracle","popularity":1}
+                """;
+        mvc.perform(post("/admin/import").contentType("application/x-ndjson").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows").value(4))
+                .andExpect(jsonPath("$.skipped").value(1))
+                .andExpect(jsonPath("$.batches").value(2))
+                .andExpect(jsonPath("$.format").value("NDJSON"));
+
+        assertThat(triggers("people")).contains("people_ai", "people_ad", "people_au", "people_changes_ai");
+        assertThat(count("SELECT count(*) FROM people_fts_docsize")).isEqualTo(count("SELECT count(*) FROM people"));
+        // Absent popularity keeps the existing value on upsert
+        assertThat(count("SELECT popularity FROM people WHERE id = 2501")).isEqualTo(7);
+        assertThat(values(service.suggest("micr", 10, SuggestService.Mode.PREFIX)))
+                .containsExactlyInAnyOrder("Microsoft Corp", "Micron", "Microchip");
+        mvc.perform(get("/admin/import"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running").value(false))
+                .andExpect(jsonPath("$.rows").value(4));
+    }
+
+    @Test
+    void gzippedCsvGoesIntoTheChosenDictionary() throws Exception {
+        String csv = "popularity,name,id\r\n"
+                + "5,\"Acme, Inc.\",1\r\n"
+                + "\r\n"
+                + ",\"The \"\"Best\"\" Acme\",2\r\n";
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gz)) {
+            out.write(csv.getBytes(StandardCharsets.UTF_8));
+        }
+        mvc.perform(post("/admin/import").param("dict", "brands").contentType("text/csv")
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip").content(gz.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.dict").value("brands"))
+                .andExpect(jsonPath("$.rows").value(2));
+
+        assertThat(values(service.suggest("brands", "ac", 10, SuggestService.Mode.PREFIX))).containsExactly("Acme, Inc.");
+        assertThat(values(service.suggest("brands", "acme", 10, SuggestService.Mode.CONTAINS)))
+                .containsExactly("Acme, Inc.", "The \"Best\" Acme");
+        assertThat(count("SELECT count(*) FROM people")).isEqualTo(1);
+    }
+
+    @Test
+    void badInputIsRejected_keepingCommittedRowsIndexed() throws Exception {
+        String body = """
+                {"id":2511,"name":"Alpha"}
+                {"id":2512,"name":"Alpine"}
+                {"id":2513,"name":
+                """;
+        mvc.perform(post("/admin/import").contentType("application/x-ndjson").content(body))
+                .andExpect(status().isBadRequest());
+
+        assertThat(triggers("people")).contains("people_ai", "people_ad", "people_au");
+        assertThat(count("SELECT count(*) FROM people WHERE id IN (2511, 2512)")).isEqualTo(2);
+        assertThat(count("SELECT count(*) FROM people_fts_docsize")).isEqualTo(count("SELECT count(*) FROM people"));
+        mvc.perform(post("/admin/import").param("format", "xml").content("<x/>"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(post("/admin/import").contentType("text/csv").content("title\nAcme\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void triggersOfAnImportThatDiedAreRestoredOnStartup() {
+        // What a load leaves behind when the process dies in it: the DDL recorded, the trigger gone, rows unindexed
+        String sql = jdbc.queryForObject("SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = 'people_ai'",
+                new MapSqlParameterSource(), String.class);
+        jdbc.update("INSERT INTO people_import_triggers(name, tbl, sql) VALUES ('people_ai', 'people', :sql)",
+                new MapSqlParameterSource("sql", sql));
+        jdbc.update("DROP TRIGGER people_ai", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2521, 'Orphan', 0)", new MapSqlParameterSource());
+
+        context.getAutowireCapableBeanFactory().createBean(BulkImportService.class);
+
+        assertThat(triggers("people")).contains("people_ai");
+        assertThat(count("SELECT count(*) FROM people_import_triggers")).isZero();
+        assertThat(count("SELECT count(*) FROM people_fts WHERE people_fts MATCH 'orphan'")).isEqualTo(1);
+    }
+
+    @Test
+    void cliInflatesGzipFilesWhateverTheCaseOfTheirExtension(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("PEOPLE.NDJSON.GZ");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("{\"id\":2531,\"name\":\"Gzipped\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        new BulkImportRunner(imports, context, file.toString(), "", "", false).run(null);
+
+        assertThat(count("SELECT count(*) FROM people WHERE id = 2531")).isEqualTo(1);
+        assertThat(triggers("people")).contains("people_ai", "people_ad", "people_au");
+    }
+
+    private List<String> triggers(String table) {
+        return jdbc.queryForList("SELECT name FROM sqlite_master WHERE type = 'trigger' AND tbl_name = :t",
+                new MapSqlParameterSource("t", table), String.class);
+    }
+
+    private long count(String sql) {
+        Long n = jdbc.queryForObject(sql, new MapSqlParameterSource(), Long.class);
+        return n == null ? 0 : n;
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
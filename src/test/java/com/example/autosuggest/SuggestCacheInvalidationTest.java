@@ -0,0 +1,195 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.CacheInvalidationService;
+import com.example.autosuggest.service.CachedSuggestions;
+import com.example.autosuggest.service.MemoryFuzzyIndex;
+import com.example.autosuggest.service.MemoryTrieIndex;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.ttl=PT1H",
+        "suggest.cache.invalidation.enabled=true",
+        "suggest.cache.invalidation.pollInterval=PT1H" // drained by hand
+})
+class SuggestCacheInvalidationTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    CacheInvalidationService invalidation;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people_fts", new MapSqlParameterSource());
+        insert(801, "Microsoft", 3);
+        insert(802, "Microtech", 1); // same length as Microsoft, so popularity decides
+        insert(803, "Macrohard", 2);
+        insert(804, "Soft Serve", 1);
+        invalidation.drain();
+        cache.invalidateAll();
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void popularityChange_reRanksOnlyAffectedEntries() {
+        assertThat(values(service.suggest("micro", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Microsoft", "Microtech");
+        service.suggest("mac", 10, SuggestService.Mode.PREFIX);
+
+        jdbc.update("UPDATE people SET popularity = 50 WHERE id = 802", new MapSqlParameterSource());
+        assertThat(invalidation.drain()).isEqualTo(1);
+
+        double hitsBefore = count("hit");
+        assertThat(values(service.suggest("mac", 10, SuggestService.Mode.PREFIX))).containsExactly("Macrohard");
+        assertThat(count("hit")).isEqualTo(hitsBefore + 1);
+
+        double missesBefore = count("miss");
+        assertThat(values(service.suggest("micro", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Microtech", "Microsoft");
+        assertThat(count("miss")).isEqualTo(missesBefore + 1);
+    }
+
+    @Test
+    void insertAndRename_dropPrefixAndContainsEntries() {
+        assertThat(values(service.suggest("soft", 10, SuggestService.Mode.CONTAINS)))
+                .containsExactly("Soft Serve", "Microsoft");
+        assertThat(values(service.suggest("mi", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Microsoft", "Microtech");
+
+        insert(805, "Minisoft", 1);
+        jdbc.update("UPDATE people SET name = 'Megasoft' WHERE id = 802", new MapSqlParameterSource());
+        invalidation.drain();
+
+        assertThat(values(service.suggest("soft", 10, SuggestService.Mode.CONTAINS)))
+                .containsExactly("Soft Serve", "Megasoft", "Minisoft", "Microsoft");
+        assertThat(values(service.suggest("mi", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Minisoft", "Microsoft");
+    }
+
+    @Test
+    void drainDuringAnInFlightLoad_keepsItsRowsOutOfTheCache() {
+        String key = SuggestCache.keyBase("sqlite-like", SuggestService.Mode.PREFIX) + "micro";
+        // What the loader does, with the change committed and drained between its query and its put
+        long loadedAt = cache.generation();
+        CachedSuggestions stale = new CachedSuggestions(service.suggest("micro", 50, SuggestService.Mode.PREFIX), true);
+        cache.invalidateAll();
+        jdbc.update("UPDATE people SET popularity = 50 WHERE id = 802", new MapSqlParameterSource());
+        invalidation.drain();
+
+        assertThat(cache.put(key, stale, loadedAt)).isFalse();
+        assertThat(cache.get(key)).isNull();
+        assertThat(values(service.suggest("micro", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Microtech", "Microsoft");
+
+        // Without an invalidation in between the entry is kept
+        long current = cache.generation();
+        assertThat(cache.put(key, stale, current)).isTrue();
+        assertThat(cache.get(key)).isSameAs(stale);
+    }
+
+    @Nested
+    @TestPropertySource(properties = {
+            "suggest.engine=memory-trie",
+            "suggest.fuzzy.enabled=true",
+            "suggest.cache.invalidation.indexReloadInterval=PT0S"
+    })
+    class InMemoryIndexes {
+
+        @Autowired
+        SuggestService service;
+
+        @Autowired
+        SuggestCache cache;
+
+        @Autowired
+        CacheInvalidationService invalidation;
+
+        @Autowired
+        MemoryTrieIndex trie;
+
+        @Autowired
+        MemoryFuzzyIndex fuzzy;
+
+        @BeforeEach
+        void loadIndexes() {
+            trie.reload();
+            fuzzy.reload();
+            invalidation.drain();
+            cache.invalidateAll();
+        }
+
+        @Test
+        void popularityChange_reRanksTrieAndFuzzyAnswers() {
+            assertThat(values(service.suggest("micro", 10, SuggestService.Mode.PREFIX)))
+                    .containsExactly("Microsoft", "Microtech");
+            assertThat(values(service.suggest("micro", 10, SuggestService.Mode.FUZZY)))
+                    .containsExactly("Microsoft", "Microtech", "Macrohard");
+
+            jdbc.update("UPDATE people SET popularity = 50 WHERE id = 802", new MapSqlParameterSource());
+            invalidation.drain();
+
+            assertThat(values(service.suggest("micro", 10, SuggestService.Mode.PREFIX)))
+                    .containsExactly("Microtech", "Microsoft");
+            assertThat(values(service.suggest("micro", 10, SuggestService.Mode.FUZZY)))
+                    .containsExactly("Microtech", "Microsoft", "Macrohard");
+        }
+
+        @Test
+        void fuzzyEntriesOutOfReachOfTheChangedNames_stayCached() {
+            String fuzzyBase = SuggestCache.keyBase("memory-trie", SuggestService.Mode.FUZZY);
+            service.suggest("micro", 10, SuggestService.Mode.FUZZY);
+            assertThat(values(service.suggest("sof", 10, SuggestService.Mode.FUZZY))).containsExactly("Soft Serve");
+            long reloads = fuzzy.version();
+
+            jdbc.update("UPDATE people SET popularity = 50 WHERE id = 802", new MapSqlParameterSource());
+            invalidation.drain();
+
+            assertThat(fuzzy.version()).isEqualTo(reloads + 1);
+            assertThat(cache.get(fuzzyBase + "micro")).isNull();
+            // "sof" is 3 edits from every prefix of "Microtech"
+            assertThat(cache.get(fuzzyBase + "sof")).isNotNull();
+        }
+    }
+
+    private double count(String cacheStatus) {
+        var timer = meter.find("suggest.query").tags("engine", "sqlite-like", "mode", "prefix", "cache", cacheStatus).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.CachedSuggestions;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.maximumSize=1",
+        "suggest.cache.refreshAhead.enabled=false",
+        "suggest.cache.prewarm.enabled=false",
+        "suggest.cache.l2.enabled=true",
+        "suggest.cache.l2.maxBytes=1048576"
+})
+class SuggestCacheL2Test {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @BeforeEach
+    void setupData() {
+        cache.invalidateAll();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2201, 'Alpaca', 2), (2202, 'Alpine', 1), (2203, 'Beta', 0)",
+                new MapSqlParameterSource());
+    }
+
+    @Test
+    void l1_eviction_falls_back_to_l2_and_promotes() throws Exception {
+        String key = SuggestCache.keyBase("sqlite-like", SuggestService.Mode.PREFIX) + "alp";
+        service.suggest("alp", 10, SuggestService.Mode.PREFIX);
+        service.suggest("bet", 10, SuggestService.Mode.PREFIX);
+        awaitEvicted(key);
+        double l2Before = queries("l2");
+
+        List<Suggestion> out = service.suggest("alp", 10, SuggestService.Mode.PREFIX);
+
+        assertThat(out).extracting(Suggestion::value).containsExactly("Alpaca", "Alpine");
+        assertThat(queries("l2")).isEqualTo(l2Before + 1);
+        assertThat(meter.get("suggest.cache.l2.gets").tag("result", "hit").counter().count()).isPositive();
+    }
+
+    @Test
+    void invalidation_reaches_l2() throws Exception {
+        String key = SuggestCache.keyBase("sqlite-like", SuggestService.Mode.PREFIX) + "alp";
+        service.suggest("alp", 10, SuggestService.Mode.PREFIX);
+        service.suggest("bet", 10, SuggestService.Mode.PREFIX);
+        awaitEvicted(key);
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2204, 'Alpha', 5)", new MapSqlParameterSource());
+
+        cache.invalidateNames(Set.of("Alpha"));
+
+        assertThat(cache.getL2(key)).isNull();
+        assertThat(service.suggest("alp", 10, SuggestService.Mode.PREFIX)).extracting(Suggestion::value)
+                .containsExactly("Alpha", "Alpaca", "Alpine");
+    }
+
+    @Test
+    void invalidation_clears_both_tiers() throws Exception {
+        String base = SuggestCache.keyBase("sqlite-like", SuggestService.Mode.PREFIX);
+        service.suggest("alp", 10, SuggestService.Mode.PREFIX);
+        awaitEvicted(base + "alp", "alpi"); // "alp" now only in L2, "alpi" in both tiers
+        assertThat(cache.getL1(base + "alpi")).isNotNull();
+        jdbc.update("UPDATE people SET popularity = 9 WHERE id = 2202", new MapSqlParameterSource());
+
+        cache.invalidateNames(Set.of("Alpine"));
+
+        assertThat(cache.getL1(base + "alpi")).isNull();
+        assertThat(cache.get(base + "alpi")).isNull();
+        assertThat(cache.get(base + "alp")).isNull();
+        assertThat(service.suggest("alp", 10, SuggestService.Mode.PREFIX)).extracting(Suggestion::value)
+                .containsExactly("Alpine", "Alpaca");
+    }
+
+    @Test
+    void full_segments_drop_their_oldest_writes() {
+        // One 64 KB segment; each entry is ~2.5 KB serialized
+        SuggestCache small = new SuggestCache(Duration.ofMinutes(1), 1, 0, false, Duration.ofMinutes(1),
+                Duration.ofSeconds(5), true, 65536, 1, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        List<Suggestion> items = new ArrayList<>();
+        for (int i = 0; i < 50; i++) items.add(new Suggestion("name-" + "x".repeat(30) + i, i % 2 == 0 ? null : i * 0.5));
+        for (int k = 0; k < 100; k++) small.put("k" + k, new CachedSuggestions(List.copyOf(items), k % 2 == 0));
+
+        assertThat(small.getL2("k0")).isNull();
+        CachedSuggestions last = small.getL2("k98");
+        assertThat(last).isNotNull();
+        assertThat(last.complete()).isTrue();
+        assertThat(last.items()).isEqualTo(items);
+    }
+
+    private double queries(String cacheStatus) {
+        Timer t = meter.find("suggest.query").tags("engine", "sqlite-like", "mode", "prefix", "cache", cacheStatus).timer();
+        return t == null ? 0 : t.count();
+    }
+
+    // Caffeine evicts over the size bound asynchronously
+    private void awaitEvicted(String key) throws InterruptedException {
+        awaitEvicted(key, "bet");
+    }
+
+    private void awaitEvicted(String key, String other) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (cache.getL1(key) != null && System.nanoTime() < deadline) {
+            service.suggest(other, 10, SuggestService.Mode.PREFIX);
+            Thread.sleep(10);
+        }
+        assertThat(cache.getL1(key)).isNull();
+    }
+}
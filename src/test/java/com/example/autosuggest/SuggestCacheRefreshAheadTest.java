@@ -0,0 +1,120 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.SuggestService;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.ttl=PT1H",
+        "suggest.cache.jitter=0",
+        "suggest.cache.refreshAhead.enabled=true",
+        "suggest.cache.refreshAhead.after=PT0.2S",
+        "suggest.cache.refreshAhead.retryAfter=PT0.2S"
+})
+class SuggestCacheRefreshAheadTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    CircuitBreakerRegistry breakers;
+
+    @BeforeEach
+    void setupData() {
+        breakers.circuitBreaker("suggest-db").reset();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        insert(1101, "Refresh One", 1);
+        insert(1102, "Refresh Two", 2);
+    }
+
+    @AfterEach
+    void closeBreaker() {
+        breakers.circuitBreaker("suggest-db").reset();
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void staleHit_isServedWhileRefreshingInBackground() throws Exception {
+        assertThat(values(service.suggest("refresh", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Refresh Two", "Refresh One");
+        // Changed behind the cache's back (no invalidation in this context)
+        jdbc.update("UPDATE people SET popularity = 9 WHERE id = 1101", new MapSqlParameterSource());
+        Thread.sleep(300);
+
+        double missesBefore = count("miss");
+        assertThat(values(service.suggest("refresh", 10, SuggestService.Mode.PREFIX)))
+                .containsExactly("Refresh Two", "Refresh One");
+        await(() -> values(service.suggest("refresh", 10, SuggestService.Mode.PREFIX)).get(0).equals("Refresh One"));
+        assertThat(count("miss")).isEqualTo(missesBefore);
+    }
+
+    @Test
+    void failedRefresh_andOpenBreaker_keepServingStaleValue() throws Exception {
+        assertThat(service.suggest("refresh t", 10, SuggestService.Mode.PREFIX)).hasSize(1);
+        Thread.sleep(300);
+
+        double errorsBefore = refreshes("error");
+        jdbc.getJdbcTemplate().execute("ALTER TABLE people RENAME TO people_offline");
+        try {
+            assertThat(values(service.suggest("refresh t", 10, SuggestService.Mode.PREFIX))).containsExactly("Refresh Two");
+            await(() -> refreshes("error") > errorsBefore);
+            assertThat(values(service.suggest("refresh t", 10, SuggestService.Mode.PREFIX))).containsExactly("Refresh Two");
+        } finally {
+            jdbc.getJdbcTemplate().execute("ALTER TABLE people_offline RENAME TO people");
+        }
+
+        // With the breaker open even hits are short-circuited; the fallback still finds the cached entry
+        breakers.circuitBreaker("suggest-db").transitionToForcedOpenState();
+        assertThat(values(service.suggest("refresh t", 10, SuggestService.Mode.PREFIX))).containsExactly("Refresh Two");
+        assertThat(service.suggest("refresh x", 10, SuggestService.Mode.PREFIX)).isEmpty();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private double count(String cacheStatus) {
+        var timer = meter.find("suggest.query").tags("engine", "sqlite-like", "mode", "prefix", "cache", cacheStatus).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private double refreshes(String result) {
+        var counter = meter.find("suggest.cache.refresh").tags("engine", "sqlite-like", "result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
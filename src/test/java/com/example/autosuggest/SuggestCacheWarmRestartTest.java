@@ -0,0 +1,161 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.config.CachePrewarmRunner;
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.CacheInvalidationService;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import com.example.autosuggest.service.WarmCacheStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.prewarm.enabled=false",
+        "suggest.cache.prewarm.persistInterval=PT0S",
+        "suggest.cache.invalidation.enabled=true",
+        "suggest.cache.invalidation.pollInterval=PT1H" // drained by hand
+})
+class SuggestCacheWarmRestartTest {
+
+    @TempDir
+    static Path dir;
+
+    @DynamicPropertySource
+    static void warmFile(DynamicPropertyRegistry registry) {
+        registry.add("suggest.cache.prewarm.file", () -> dir.resolve("warm.json.gz").toString());
+    }
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    WarmCacheStore store;
+
+    @Autowired
+    CacheInvalidationService invalidation;
+
+    @BeforeEach
+    void setupData() {
+        cache.invalidateAll();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2001, 'Warmstart', 3), (2002, 'Warmth', 1), (2003, 'Lukewarm', 2)",
+                new MapSqlParameterSource());
+        invalidation.drain();
+    }
+
+    @Test
+    void hot_entries_survive_a_restart_across_modes() throws Exception {
+        service.suggest("warm", 10, SuggestService.Mode.PREFIX);
+        service.suggest("kewa", 10, SuggestService.Mode.CONTAINS);
+        assertThat(store.save()).isEqualTo(2);
+        assertThat(Files.size(dir.resolve("warm.json.gz"))).isPositive();
+
+        // A fresh start: empty cache, database unchanged
+        cache.invalidateAll();
+        runner(Duration.ofHours(1)).run(null);
+
+        assertThat(service.isCached("warm", SuggestService.Mode.PREFIX)).isTrue();
+        assertThat(service.isCached("kewa", SuggestService.Mode.CONTAINS)).isTrue();
+        assertThat(values(service.suggest("warm", 10, SuggestService.Mode.PREFIX))).containsExactly("Warmth", "Warmstart");
+        assertThat(values(service.suggest("kewa", 10, SuggestService.Mode.CONTAINS))).containsExactly("Lukewarm");
+    }
+
+    @Test
+    void an_old_file_only_supplies_the_queries() throws Exception {
+        service.suggest("warm", 10, SuggestService.Mode.PREFIX);
+        assertThat(store.save()).isEqualTo(1);
+        cache.invalidateAll();
+        // Changed while "down"; a restored entry would still list Warmth
+        jdbc.update("DELETE FROM people WHERE id = 2002", new MapSqlParameterSource());
+
+        runner(Duration.ZERO).run(null);
+
+        assertThat(service.isCached("warm", SuggestService.Mode.PREFIX)).isTrue();
+        assertThat(values(service.suggest("warm", 10, SuggestService.Mode.PREFIX))).containsExactly("Warmstart");
+    }
+
+    @Test
+    void changes_drained_after_the_save_are_replayed_on_restore() throws Exception {
+        service.suggest("warm", 10, SuggestService.Mode.PREFIX);
+        assertThat(store.save()).isEqualTo(1);
+        // The running process sees and drains a change, then dies before its next save
+        jdbc.update("DELETE FROM people WHERE id = 2002", new MapSqlParameterSource());
+        assertThat(invalidation.drain()).isEqualTo(1);
+        assertThat(count("SELECT count(*) FROM people_changes")).isEqualTo(1);
+
+        cache.invalidateAll();
+        SimpleMeterRegistry meter = new SimpleMeterRegistry();
+        runner(Duration.ofHours(1), meter).run(null);
+
+        assertThat(meter.counter("suggest.cache.prewarm", "result", "restored").count()).isEqualTo(1);
+        assertThat(service.isCached("warm", SuggestService.Mode.PREFIX)).isFalse();
+        assertThat(values(service.suggest("warm", 10, SuggestService.Mode.PREFIX))).containsExactly("Warmstart");
+    }
+
+    @Test
+    void a_file_whose_changes_are_gone_only_supplies_the_queries() throws Exception {
+        service.suggest("warm", 10, SuggestService.Mode.PREFIX);
+        assertThat(store.save()).isEqualTo(1);
+        jdbc.update("DELETE FROM people WHERE id = 2002", new MapSqlParameterSource());
+        // Cleared by hand: nothing says what changed since the save
+        jdbc.update("DELETE FROM people_changes", new MapSqlParameterSource());
+
+        cache.invalidateAll();
+        SimpleMeterRegistry meter = new SimpleMeterRegistry();
+        runner(Duration.ofHours(1), meter).run(null);
+
+        assertThat(meter.counter("suggest.cache.prewarm", "result", "restored").count()).isZero();
+        assertThat(meter.counter("suggest.cache.prewarm", "result", "queried").count()).isEqualTo(1);
+        assertThat(values(service.suggest("warm", 10, SuggestService.Mode.PREFIX))).containsExactly("Warmstart");
+    }
+
+    @Test
+    void an_empty_cache_keeps_the_previous_file() throws Exception {
+        service.suggest("warm", 10, SuggestService.Mode.PREFIX);
+        assertThat(store.save()).isEqualTo(1);
+        cache.invalidateAll();
+        assertThat(store.save()).isZero();
+        assertThat(store.read().entries()).extracting(WarmCacheStore.Entry::q).containsExactly("warm");
+    }
+
+    private CachePrewarmRunner runner(Duration maxAge) {
+        return runner(maxAge, new SimpleMeterRegistry());
+    }
+
+    private CachePrewarmRunner runner(Duration maxAge, SimpleMeterRegistry meter) {
+        return new CachePrewarmRunner(jdbc, service, store, invalidation, meter, "sqlite-like",
+                true, true, 3, 50, "", 2, maxAge);
+    }
+
+    private long count(String sql) {
+        Long n = jdbc.queryForObject(sql, new MapSqlParameterSource(), Long.class);
+        return n == null ? 0 : n;
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -45,6 +46,7 @@ class SuggestCircuitBreakerTest {
     void suggest_returns_empty_on_db_failure_via_circuit_breaker() throws Exception {
         var res = mvc.perform(get("/suggest").param("q", "micro").param("limit", "5"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("X-Suggest-Fallback", "empty"))
                 .andReturn().getResponse().getContentAsString();
         // Should be an empty JSON array [] from fallback
         assertThat(res.trim()).isEqualTo("[]");
@@ -0,0 +1,136 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.DbGate;
+import com.example.autosuggest.service.SuggestService;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.threads.virtual.enabled=true",
+        "suggest.engine=sqlite-like",
+        "suggest.db.gate.permits=1",
+        "suggest.db.gate.timeout=PT1S",
+        "resilience4j.circuitbreaker.instances.suggest-db.ignoreExceptions[0]=com.example.autosuggest.service.DbGateTimeoutException"
+})
+class SuggestDbGateTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    DbGate gate;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    CircuitBreakerRegistry breakers;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setupData() {
+        breakers.circuitBreaker("suggest-db").reset();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(1401, 'Gatekeeper', 1)", new MapSqlParameterSource());
+    }
+
+    @AfterEach
+    void releasePermit() {
+        release.countDown();
+    }
+
+    @Test
+    void fullGate_answers503_withoutOpeningTheBreaker() throws Exception {
+        holdPermit();
+        double timeoutsBefore = waits("timeout");
+
+        mvc.perform(get("/suggest").param("q", "gate"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        assertThat(waits("timeout")).isEqualTo(timeoutsBefore + 1);
+        assertThat(breakers.circuitBreaker("suggest-db").getMetrics().getNumberOfFailedCalls()).isZero();
+        assertThat(meter.find("suggest.db.gate.in_use").gauge().value()).isEqualTo(1);
+
+        release.countDown();
+        await(() -> gate.inUse() == 0);
+        mvc.perform(get("/suggest").param("q", "gate")).andExpect(status().isOk());
+    }
+
+    @Test
+    void queuedCallers_runOnceAPermitFrees() throws Exception {
+        holdPermit();
+        // Many more waiters than permits, each on its own virtual thread
+        List<CompletableFuture<List<Suggestion>>> waiters = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            waiters.add(CompletableFuture.supplyAsync(() -> service.suggest("gate", 10, SuggestService.Mode.PREFIX),
+                    r -> Thread.ofVirtual().start(r)));
+        }
+        await(() -> meter.find("suggest.db.gate.queued").gauge().value() == 50);
+
+        release.countDown();
+        for (CompletableFuture<List<Suggestion>> w : waiters) {
+            assertThat(w.get(5, TimeUnit.SECONDS)).extracting(Suggestion::value).containsExactly("Gatekeeper");
+        }
+    }
+
+    // Occupies the only permit until the test releases it
+    private void holdPermit() throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> gate.call(() -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertThat(held.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private double waits(String result) {
+        var timer = meter.find("suggest.db.gate.wait").tag("result", result).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.CacheInvalidationService;
+import com.example.autosuggest.service.Dictionaries;
+import com.example.autosuggest.service.Dictionary;
+import com.example.autosuggest.service.FtsAdminService;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestMetrics;
+import com.example.autosuggest.service.SuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.refreshAhead.enabled=false",
+        "suggest.cache.prewarm.enabled=false",
+        "suggest.cache.invalidation.enabled=true",
+        "suggest.cache.invalidation.pollInterval=PT1H",
+        "suggest.dictionaries.companies.engine=sqlite-fts",
+        "suggest.dictionaries.companies.maximumSize=500",
+        "suggest.dictionaries.cities.table=dict_cities",
+        "suggest.dictionaries.cities.ttl=PT30M"
+})
+class SuggestDictionariesTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    Dictionaries dictionaries;
+
+    @Autowired
+    CacheInvalidationService invalidation;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    FtsAdminService fts;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    SuggestMetrics metrics;
+
+    @Autowired
+    JdbcProperties jdbcProperties;
+
+    @BeforeEach
+    void setupData() {
+        for (String table : new String[]{"people", "companies", "dict_cities"}) {
+            jdbc.update("DELETE FROM " + table, new MapSqlParameterSource());
+        }
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2401, 'Micah', 1), (2402, 'Michelle', 0)",
+                new MapSqlParameterSource());
+        jdbc.update("INSERT INTO companies(id, name, popularity) VALUES(1, 'Microsoft', 5), (2, 'Micron', 3), (3, 'Oracle', 1)",
+                new MapSqlParameterSource());
+        jdbc.update("INSERT INTO dict_cities(id, name, popularity) VALUES(1, 'Miami', 1)", new MapSqlParameterSource());
+        invalidation.drain();
+        dictionaries.all().forEach(d -> d.cache().invalidateAll());
+    }
+
+    @Test
+    void eachDictionaryAnswersFromItsOwnTable() throws Exception {
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "companies"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].value", contains("Microsoft", "Micron")));
+        mvc.perform(get("/suggest").param("q", "mi").param("dict", "cities"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].value", contains("Miami")));
+        // No dict (and dict=people) is the primary dictionary, unchanged
+        mvc.perform(get("/suggest").param("q", "mic"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].value", contains("Micah", "Michelle")));
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "people"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].value", contains("Micah", "Michelle")));
+    }
+
+    @Test
+    void unknownDictionaryIsABadRequest() throws Exception {
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "nope"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "x".repeat(65)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void cachesAndMetersArePartitioned() throws Exception {
+        Dictionary companies = dictionaries.get("companies");
+        Dictionary people = dictionaries.primary();
+        assertThat(companies.cache()).isNotSameAs(people.cache());
+        double before = misses("companies");
+
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "companies")).andExpect(status().isOk());
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "companies")).andExpect(status().isOk());
+
+        assertThat(misses("companies") - before).isEqualTo(1);
+        assertThat(meter.get("suggest.query").tags("dict", "companies", "mode", "prefix", "cache", "hit").timer().count()).isPositive();
+        assertThat(meter.get("suggest.query").tags("dict", "companies").timer().getId().getTag("engine"))
+                .isEqualTo("sqlite-fts");
+        assertThat(cached(companies, "mic")).isTrue();
+        assertThat(cached(people, "mic")).isFalse();
+    }
+
+    @Test
+    void writesInvalidateOnlyTheirDictionary() throws Exception {
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "companies")).andExpect(status().isOk());
+        mvc.perform(get("/suggest").param("q", "mic")).andExpect(status().isOk());
+
+        jdbc.update("INSERT INTO companies(id, name, popularity) VALUES(4, 'Microchip', 9)", new MapSqlParameterSource());
+        invalidation.drain();
+
+        assertThat(cached(dictionaries.get("companies"), "mic")).isFalse();
+        assertThat(cached(dictionaries.primary(), "mic")).isTrue();
+        mvc.perform(get("/suggest").param("q", "mic").param("dict", "companies"))
+                .andExpect(jsonPath("$[0].value").value("Microchip"));
+    }
+
+    @Test
+    void partitionRefreshAheadScalesWithItsTtl() {
+        Duration primary = dictionaries.primary().cache().refreshAfter();
+        // Same share of PT30M as the primary's refreshAfter is of its PT90S TTL
+        assertThat(dictionaries.get("cities").cache().refreshAfter())
+                .isEqualTo(Duration.ofNanos(Math.round(Duration.ofMinutes(30).toNanos() * (primary.toNanos() / 90e9))));
+        assertThat(dictionaries.get("companies").cache().refreshAfter()).isEqualTo(primary);
+    }
+
+    @Test
+    void tablesOfPeopleSqliteAndOtherIndexesAreReserved() {
+        for (String table : List.of("people", "people_fts", "people_trigram", "people_changes", "sqlite_sequence",
+                "sqlite_stat1", "companies_fts", "companies_fts_data", "dict_cities_changes", "brands_trigram")) {
+            MockEnvironment env = new MockEnvironment().withProperty("suggest.dictionaries.extra.table", table);
+            assertThatThrownBy(() -> new Dictionaries(jdbc, fts, cache, metrics, env, jdbcProperties, "sqlite-like",
+                    Duration.ofSeconds(90), 100, Duration.ofSeconds(1)))
+                    .as(table)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("is reserved");
+        }
+        assertThat(new Dictionaries(jdbc, fts, cache, metrics,
+                new MockEnvironment().withProperty("suggest.dictionaries.extra.table", "dict_cities"), jdbcProperties,
+                "sqlite-like", Duration.ofSeconds(90), 100, Duration.ofSeconds(1)).get("extra").table())
+                .isEqualTo("dict_cities");
+    }
+
+    private static boolean cached(Dictionary d, String q) {
+        return d.cache().get(SuggestCache.keyBase(d.engine(), SuggestService.Mode.PREFIX) + q) != null;
+    }
+
+    private double misses(String dict) {
+        Timer t = meter.find("suggest.query").tags("dict", dict, "mode", "prefix", "cache", "miss").timer();
+        return t == null ? 0 : t.count();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.DbGate;
+import com.example.autosuggest.service.FallbackSnapshot;
+import com.example.autosuggest.service.MemoryTrieIndex;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=false",
+        "suggest.fallback.snapshot.enabled=true",
+        "suggest.fallback.snapshot.topN=2",
+        "suggest.fallback.snapshot.maxPrefixLength=3",
+        "suggest.fallback.snapshot.refreshInterval=PT0S"
+})
+class SuggestFallbackSnapshotTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    FallbackSnapshot snapshot;
+
+    @Autowired
+    CircuitBreakerRegistry breakers;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    DbGate gate;
+
+    @Autowired
+    MemoryTrieIndex trieIndex;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("""
+                INSERT INTO people(id, name, popularity) VALUES
+                  (1901, 'Falcon', 5), (1902, 'Falconer', 9), (1903, 'Fallback Road', 1),
+                  (1904, 'Fable', 0), (1905, 'Zebra', 0)
+                """, new MapSqlParameterSource());
+        snapshot.reload();
+        breakers.circuitBreaker("suggest-db").transitionToForcedOpenState();
+    }
+
+    @AfterEach
+    void closeBreaker() {
+        breakers.circuitBreaker("suggest-db").reset();
+    }
+
+    @Test
+    void open_breaker_serves_top_n_from_snapshot_and_marks_it() throws Exception {
+        double before = fallbacks("snapshot");
+        // Same order as the LIKE query: length, then popularity
+        mvc.perform(get("/suggest").param("q", "fa").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Suggest-Fallback", "snapshot"))
+                .andExpect(jsonPath("$[*].value", contains("Fable", "Falcon")));
+        assertThat(fallbacks("snapshot")).isEqualTo(before + 1);
+    }
+
+    @Test
+    void longer_queries_are_filtered_from_their_longest_snapshotted_prefix() throws Exception {
+        // "fal" matches three names, so its entry holds only the best two; "fallb" finds nothing in it
+        mvc.perform(get("/suggest").param("q", "falco"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Suggest-Fallback", "snapshot"))
+                .andExpect(jsonPath("$[*].value", contains("Falcon", "Falconer")));
+        mvc.perform(get("/suggest").param("q", "fallb"))
+                .andExpect(header().string("X-Suggest-Fallback", "snapshot"))
+                .andExpect(jsonPath("$.length()").value(0));
+        mvc.perform(get("/suggest").param("q", "zebr"))
+                .andExpect(jsonPath("$[*].value", contains("Zebra")));
+    }
+
+    @Test
+    void unknown_prefix_and_fuzzy_fall_back_to_empty() throws Exception {
+        mvc.perform(get("/suggest").param("q", "qx"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Suggest-Fallback", "empty"))
+                .andExpect(jsonPath("$.length()").value(0));
+        mvc.perform(get("/suggest").param("q", "fa").param("mode", "FUZZY"))
+                .andExpect(header().string("X-Suggest-Fallback", "empty"));
+    }
+
+    @Test
+    void memory_budget_keeps_the_most_common_prefixes() {
+        FallbackSnapshot small = new FallbackSnapshot(jdbc, gate, trieIndex, true, 2, 3, 400, Duration.ZERO, null);
+        small.reload();
+        // "fa" (4 names) ranks ahead of "fal" (3) and "ze" (1); only it fits
+        assertThat(small.lookup("fa", 10)).isNotNull();
+        assertThat(small.lookup("ze", 10)).isNull();
+    }
+
+    @Test
+    void startup_build_runs_in_the_background_behind_the_gate() throws Exception {
+        DbGate oneReader = new DbGate(1, Duration.ofSeconds(10), null);
+        FallbackSnapshot background = new FallbackSnapshot(jdbc, oneReader, trieIndex, true, 2, 3, 1 << 20,
+                Duration.ofHours(1), null);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> holder = CompletableFuture.supplyAsync(() -> oneReader.call(() -> {
+            held.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        try {
+            assertThat(held.await(5, TimeUnit.SECONDS)).isTrue();
+            // Returns at once although the only permit is taken
+            background.run(null);
+            Thread.sleep(200);
+            assertThat(background.lookup("fa", 10)).isNull();
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+            await(() -> background.lookup("fa", 10) != null);
+        } finally {
+            release.countDown();
+            background.stop();
+        }
+    }
+
+    @Test
+    void each_statement_takes_its_own_gate_permit_and_a_loaded_trie_needs_none() {
+        MeterRegistry gateMeter = new SimpleMeterRegistry();
+        DbGate counted = new DbGate(1, Duration.ofSeconds(10), gateMeter);
+        FallbackSnapshot fromDb = new FallbackSnapshot(jdbc, counted, trieIndex, true, 2, 3, 1 << 20, Duration.ZERO, null);
+        fromDb.reload();
+        // Two grouped counts (lengths 2 and 3), then one LIMIT query per prefix: fa, ze, fab, fal, zeb
+        assertThat(permits(gateMeter)).isEqualTo(2 + 5);
+        assertThat(fromDb.lookup("fa", 10)).extracting(s -> s.value()).containsExactly("Fable", "Falcon");
+
+        MemoryTrieIndex trie = new MemoryTrieIndex(jdbc, "memory-trie", 50, null);
+        trie.reload();
+        MeterRegistry unused = new SimpleMeterRegistry();
+        FallbackSnapshot fromTrie = new FallbackSnapshot(jdbc, new DbGate(1, Duration.ofSeconds(10), unused), trie, true,
+                2, 3, 1 << 20, Duration.ZERO, null);
+        fromTrie.reload();
+        assertThat(permits(unused)).isZero();
+        assertThat(fromTrie.lookup("fa", 10)).extracting(s -> s.value()).containsExactly("Fable", "Falcon");
+        assertThat(fromTrie.lookup("fal", 10)).extracting(s -> s.value()).containsExactly("Falcon", "Falconer");
+    }
+
+    private static long permits(MeterRegistry registry) {
+        Timer acquired = registry.find("suggest.db.gate.wait").tag("result", "acquired").timer();
+        return acquired == null ? 0 : acquired.count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private double fallbacks(String source) {
+        var counter = meter.find("suggest.fallback").tags("engine", "sqlite-like", "source", source).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
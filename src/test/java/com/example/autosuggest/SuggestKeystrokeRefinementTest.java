@@ -0,0 +1,97 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.SuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true"
+})
+class SuggestKeystrokeRefinementTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people_fts", new MapSqlParameterSource());
+        insert(601, "Microsoft", 3);
+        insert(602, "Microtek", 1);
+        insert(603, "Micron", 2);
+        insert(604, "Mica", 9);
+        insert(605, "Keystroke", 1);
+        insert(606, "Keys", 1);
+        for (int i = 0; i < 60; i++) {
+            insert(700 + i, "Wide" + i, i);
+        }
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void longerPrefix_isFilteredFromCompleteShorterPrefix() {
+        List<String> mic = values(service.suggest("mic", 10, SuggestService.Mode.PREFIX));
+        assertThat(mic).containsExactly("Mica", "Micron", "Microtek", "Microsoft");
+
+        // A row added behind the cache's back proves "micro" never reached the DB
+        insert(607, "Microbe", 5);
+        double refinedBefore = count("refine");
+        List<String> micro = values(service.suggest("MICRO", 10, SuggestService.Mode.PREFIX));
+
+        assertThat(micro).containsExactly("Micron", "Microtek", "Microsoft");
+        assertThat(count("refine")).isEqualTo(refinedBefore + 1);
+    }
+
+    @Test
+    void truncatedShorterPrefix_isNotRefined() {
+        assertThat(service.suggest("wi", 50, SuggestService.Mode.PREFIX)).hasSize(50);
+        double missesBefore = count("miss");
+
+        assertThat(values(service.suggest("wide5", 10, SuggestService.Mode.PREFIX)))
+                .startsWith("Wide5", "Wide59", "Wide58");
+        assertThat(count("miss")).isEqualTo(missesBefore + 1);
+    }
+
+    @Test
+    void entriesAreSlicedPerLimit() {
+        assertThat(service.suggest("key", 1, SuggestService.Mode.PREFIX)).extracting(Suggestion::value)
+                .containsExactly("Keys");
+        double hitsBefore = count("hit");
+
+        assertThat(service.suggest("key", 5, SuggestService.Mode.PREFIX)).extracting(Suggestion::value)
+                .containsExactly("Keys", "Keystroke");
+        assertThat(count("hit")).isEqualTo(hitsBefore + 1);
+    }
+
+    private double count(String cacheStatus) {
+        var timer = meter.find("suggest.query").tags("engine", "sqlite-like", "mode", "prefix", "cache", cacheStatus).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.AdaptiveLimiter;
+import com.example.autosuggest.service.DbGate;
+import com.example.autosuggest.service.LoadShedException;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.limiter.enabled=true",
+        "suggest.limiter.initialLimit=1",
+        "suggest.limiter.minLimit=1",
+        "suggest.limiter.maxLimit=1",
+        "suggest.db.gate.permits=1",
+        "suggest.db.gate.timeout=PT5S",
+        "resilience4j.circuitbreaker.instances.suggest-db.ignoreExceptions[0]=com.example.autosuggest.service.OverloadedException"
+})
+class SuggestLoadSheddingTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    AdaptiveLimiter limiter;
+
+    @Autowired
+    DbGate gate;
+
+    @Autowired
+    CircuitBreakerRegistry breakers;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    MeterRegistry meter;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setupData() {
+        breakers.circuitBreaker("suggest-db").reset();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(1801, 'Shedder', 1), (1802, 'Sheddable', 2), (1803, 'Limiter', 1)",
+                new MapSqlParameterSource());
+        cache.invalidateAll();
+    }
+
+    @AfterEach
+    void releasePermit() {
+        release.countDown();
+    }
+
+    @Test
+    void missesBeyondTheLimitAreShed_hitsStillPass() throws Exception {
+        service.suggest("lim", 10, SuggestService.Mode.PREFIX);
+        holdPermit();
+        // Takes the only slot, then waits at the DB gate
+        CompletableFuture<MvcResult> slow = CompletableFuture.supplyAsync(() -> perform("shed"));
+        await(() -> limiter.inFlight() == 1);
+
+        long t0 = System.nanoTime();
+        mvc.perform(get("/suggest").param("q", "other"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+        assertThat(Duration.ofNanos(System.nanoTime() - t0)).isLessThan(Duration.ofMillis(500));
+
+        mvc.perform(get("/suggest").param("q", "lim"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].value").value("Limiter"));
+        assertThat(breakers.circuitBreaker("suggest-db").getMetrics().getNumberOfFailedCalls()).isZero();
+
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS).getResponse().getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void batchOfMoreMissesThanTheLimit_isNotShed() throws Exception {
+        double shedBefore = meter.counter("suggest.limiter.shed").count();
+
+        mvc.perform(post("/suggest/batch").contentType(MediaType.APPLICATION_JSON).content("""
+                        [{"q":"she"},{"q":"limi"},{"q":"dable","mode":"CONTAINS"},{"q":"imit","mode":"CONTAINS"},
+                         {"q":"edd","mode":"CONTAINS"},{"q":"sheddab"}]
+                        """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].length()").value(2))
+                .andExpect(jsonPath("$[1][0].value").value("Limiter"))
+                .andExpect(jsonPath("$[2][0].value").value("Sheddable"))
+                .andExpect(jsonPath("$[3][0].value").value("Limiter"))
+                .andExpect(jsonPath("$[4].length()").value(2))
+                .andExpect(jsonPath("$[5][0].value").value("Sheddable"));
+        assertThat(meter.counter("suggest.limiter.shed").count()).isEqualTo(shedBefore);
+    }
+
+    @Test
+    void limitFollowsLatency() {
+        AdaptiveLimiter aimd = new AdaptiveLimiter(true, 10, 2, 12, Duration.ofMillis(200), 0.5, null);
+
+        aimd.call(() -> sleep(300));
+        assertThat(aimd.limit()).isEqualTo(5);
+        // Part of the same slow spell: counts once per target interval
+        assertThatThrownBy(() -> aimd.call(() -> { throw new IllegalStateException("db down"); }))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(aimd.limit()).isEqualTo(5);
+
+        // Fast samples only raise a limit that is actually being used
+        aimd.call(() -> sleep(0));
+        assertThat(aimd.limit()).isEqualTo(5);
+        aimd.call(() -> aimd.call(() -> aimd.call(() -> sleep(0))));
+        assertThat(aimd.limit()).isEqualTo(6);
+
+        assertThatThrownBy(() -> aimd.call(() -> {
+            sleep(250);
+            throw new IllegalStateException("db down");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(aimd.limit()).isEqualTo(3);
+    }
+
+    @Test
+    void requestsBeyondTheLimitAreRejectedWithoutRunning() {
+        AdaptiveLimiter aimd = new AdaptiveLimiter(true, 1, 1, 1, Duration.ofSeconds(1), 0.9, null);
+        assertThatThrownBy(() -> aimd.call(() -> aimd.call(() -> "inner")))
+                .isInstanceOf(LoadShedException.class);
+        assertThat(aimd.inFlight()).isZero();
+    }
+
+    private static Object sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private MvcResult perform(String q) {
+        try {
+            return mvc.perform(get("/suggest").param("q", q)).andReturn();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Occupies the only database permit until the test releases it
+    private void holdPermit() throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> gate.call(() -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertThat(held.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
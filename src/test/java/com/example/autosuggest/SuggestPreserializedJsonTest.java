@@ -0,0 +1,88 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-fts",
+        "suggest.cache.enabled=true",
+        "suggest.cache.ttl=PT1H"
+})
+class SuggestPreserializedJsonTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    ObjectMapper mapper;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        insert(1201, "Json \"Quoted\" Co", 5);
+        insert(1202, "Json Zürich Ltd", 4);
+        insert(1203, "Json \\ Backslash", 3);
+        insert(1204, "Json 東京", 2);
+        jdbc.update("INSERT INTO people_fts(people_fts) VALUES('rebuild')", new MapSqlParameterSource());
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void cachedBodies_matchJackson_forEveryLimit() throws Exception {
+        for (int limit : new int[]{4, 1, 2, 3, 10}) {
+            MvcResult result = mvc.perform(get("/suggest").param("q", "json").param("limit", String.valueOf(limit)))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            byte[] body = result.getResponse().getContentAsByteArray();
+            List<Suggestion> parsed = List.of(mapper.readValue(body, Suggestion[].class));
+
+            assertThat(parsed).hasSize(Math.min(limit, 4));
+            assertThat(parsed).allSatisfy(s -> assertThat(s.score()).isNotNull());
+            assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo(mapper.writeValueAsString(new ArrayList<>(parsed)));
+            assertThat(result.getResponse().getContentLength()).isEqualTo(body.length);
+            assertThat(result.getResponse().getContentType()).startsWith("application/json");
+        }
+        assertThat(parsedValues("json")).containsExactlyInAnyOrder(
+                "Json \"Quoted\" Co", "Json Zürich Ltd", "Json \\ Backslash", "Json 東京");
+    }
+
+    @Test
+    void emptyResult_isAnEmptyArray() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mvc.perform(get("/suggest").param("q", "nomatch")).andExpect(status().isOk()).andReturn();
+            assertThat(result.getResponse().getContentAsString()).isEqualTo("[]");
+        }
+    }
+
+    private List<String> parsedValues(String q) throws Exception {
+        byte[] body = mvc.perform(get("/suggest").param("q", q)).andReturn().getResponse().getContentAsByteArray();
+        return List.of(mapper.readValue(body, Suggestion[].class)).stream().map(Suggestion::value).toList();
+    }
+}
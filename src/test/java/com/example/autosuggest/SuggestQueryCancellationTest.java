@@ -0,0 +1,171 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.DbGate;
+import com.example.autosuggest.service.QueryCancellation;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.db.gate.permits=1",
+        "suggest.db.gate.timeout=PT5S",
+        "resilience4j.circuitbreaker.instances.suggest-db.ignoreExceptions[0]=com.example.autosuggest.service.QueryCancelledException"
+})
+class SuggestQueryCancellationTest {
+
+    // Counts far past the 2s query timeout unless something stops it
+    private static final String ENDLESS = "WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM c) "
+            + "SELECT count(*) FROM c";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    @Qualifier("suggestReadJdbc")
+    NamedParameterJdbcTemplate readJdbc;
+
+    @Autowired
+    QueryCancellation cancellation;
+
+    @Autowired
+    DbGate gate;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    CircuitBreakerRegistry breakers;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setupData() {
+        breakers.circuitBreaker("suggest-db").reset();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(1701, 'Micro', 1), (1702, 'Microscope', 2)",
+                new MapSqlParameterSource());
+    }
+
+    @AfterEach
+    void releasePermit() {
+        release.countDown();
+    }
+
+    @Test
+    void newerRequestFromTheSameSession_cancelsTheOlderOne() throws Exception {
+        holdPermit();
+        double cancelledBefore = cancelled();
+        CompletableFuture<MvcResult> older = CompletableFuture.supplyAsync(() -> perform("mi", "tab-1"));
+        await(() -> meter.find("suggest.db.gate.queued").gauge().value() == 1);
+        // Another session's request is left alone, and so is another client's that reuses the session id
+        CompletableFuture<MvcResult> otherTab = CompletableFuture.supplyAsync(() -> perform("mic", "tab-2"));
+        await(() -> meter.find("suggest.db.gate.queued").gauge().value() == 2);
+        CompletableFuture<MvcResult> otherClient = CompletableFuture.supplyAsync(() -> perform("micr", "tab-1", "10.0.0.2"));
+        await(() -> meter.find("suggest.db.gate.queued").gauge().value() == 3);
+
+        CompletableFuture<MvcResult> newer = CompletableFuture.supplyAsync(() -> perform("micros", "tab-1"));
+        await(() -> cancelled() == cancelledBefore + 1);
+        release.countDown();
+
+        assertThat(older.get(5, TimeUnit.SECONDS).getResponse().getStatus()).isEqualTo(409);
+        assertThat(otherTab.get(5, TimeUnit.SECONDS).getResponse().getStatus()).isEqualTo(200);
+        assertThat(otherClient.get(5, TimeUnit.SECONDS).getResponse().getStatus()).isEqualTo(200);
+        assertThat(cancelled()).isEqualTo(cancelledBefore + 1);
+        MvcResult latest = newer.get(5, TimeUnit.SECONDS);
+        assertThat(latest.getResponse().getStatus()).isEqualTo(200);
+        assertThat(latest.getResponse().getContentAsString()).contains("Microscope");
+        assertThat(breakers.circuitBreaker("suggest-db").getMetrics().getNumberOfFailedCalls()).isZero();
+    }
+
+    @Test
+    void runningStatementIsCancelled() throws Exception {
+        CompletableFuture<Long> running = CompletableFuture.supplyAsync(() -> {
+            try (QueryCancellation.Ticket ignored = cancellation.open("tab-3")) {
+                long t0 = System.nanoTime();
+                assertThatThrownBy(() -> readJdbc.queryForObject(ENDLESS, new MapSqlParameterSource(), Long.class))
+                        .isInstanceOf(DataAccessException.class);
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+            }
+        });
+        Thread.sleep(200);
+        cancellation.cancel("tab-3");
+
+        // Well before the 2s query timeout would have stopped it
+        assertThat(running.get(5, TimeUnit.SECONDS)).isLessThan(1500);
+        // The interrupted connection went back to the pool in working order
+        mvc.perform(get("/suggest").param("q", "micro")).andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].value").value("Micro"));
+    }
+
+    private MvcResult perform(String q, String session) {
+        return perform(q, session, "127.0.0.1");
+    }
+
+    private MvcResult perform(String q, String session, String remoteAddr) {
+        try {
+            return mvc.perform(get("/suggest").param("q", q).header("X-Suggest-Session", session).with(request -> {
+                request.setRemoteAddr(remoteAddr);
+                return request;
+            })).andReturn();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double cancelled() {
+        var counter = meter.find("suggest.cancelled").counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    // Occupies the only database permit until the test releases it
+    private void holdPermit() throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> gate.call(() -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertThat(held.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
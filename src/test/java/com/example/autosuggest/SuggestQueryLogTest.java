@@ -0,0 +1,136 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.config.QueryLogReplayRunner;
+import com.example.autosuggest.service.QueryLog;
+import com.example.autosuggest.service.SuggestCache;
+import com.example.autosuggest.service.SuggestService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.querylog.enabled=true",
+        "suggest.querylog.sampleRate=1.0"
+})
+class SuggestQueryLogTest {
+
+    @TempDir
+    static Path dir;
+
+    @DynamicPropertySource
+    static void logDir(DynamicPropertyRegistry registry) {
+        registry.add("suggest.querylog.dir", () -> dir.toString());
+    }
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    SuggestCache cache;
+
+    @Autowired
+    QueryLog queryLog;
+
+    @Autowired
+    ObjectMapper mapper;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    ConfigurableApplicationContext context;
+
+    @BeforeEach
+    void setupData() {
+        cache.invalidateAll();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2101, 'Logbook', 1), (2102, 'Logger', 2), (2103, 'Catalog', 0)",
+                new MapSqlParameterSource());
+    }
+
+    @Test
+    void lookups_are_captured_with_cache_status_and_latency() throws Exception {
+        service.suggest("log", 5, SuggestService.Mode.PREFIX);
+        service.suggest("log", 5, SuggestService.Mode.PREFIX);
+        service.suggest("tal", 3, SuggestService.Mode.CONTAINS);
+        queryLog.flush();
+
+        List<QueryLog.Entry> entries = readAll(dir);
+        assertThat(entries).extracting(QueryLog.Entry::q).containsSubsequence("log", "log", "tal");
+        QueryLog.Entry last = entries.get(entries.size() - 1);
+        assertThat(last.mode()).isEqualTo(SuggestService.Mode.CONTAINS);
+        assertThat(last.limit()).isEqualTo(3);
+        assertThat(last.engine()).isEqualTo("sqlite-like");
+        assertThat(last.cache()).isEqualTo("miss");
+        assertThat(last.micros()).isNotNegative();
+        assertThat(entries.get(entries.size() - 2).cache()).isEqualTo("hit");
+    }
+
+    @Test
+    void replay_reports_percentiles_and_cache_mix() throws Exception {
+        for (int i = 0; i < 20; i++) service.suggest(i % 2 == 0 ? "logb" : "logg", 10, SuggestService.Mode.PREFIX);
+        queryLog.flush();
+        cache.invalidateAll();
+        // Replay a copy: the live log keeps capturing (the replayed lookups included)
+        Path copy = Files.createDirectories(dir.resolveSibling(dir.getFileName() + "-replay"));
+        for (Path file : files(dir)) Files.copy(file, copy.resolve(file.getFileName()));
+        int captured = readAll(copy).size();
+
+        QueryLogReplayRunner replay = new QueryLogReplayRunner(service, mapper, meter, context, "sqlite-like", "", 0, 4, false);
+        QueryLogReplayRunner.Report report = replay.replay(copy);
+
+        assertThat(report.replayed()).isEqualTo(captured);
+        assertThat(report.errors()).isZero();
+        assertThat(report.responseMicros().getTotalCount()).isEqualTo(report.replayed());
+        assertThat(report.capturedCache()).containsKeys("hit", "miss");
+        // The replayed lookups go through the cache again: mostly hits after the first two misses
+        assertThat(report.cache().getOrDefault("hit", 0L) + report.cache().getOrDefault("coalesced", 0L))
+                .isGreaterThan(report.cache().getOrDefault("miss", 0L));
+        assertThat(report.format()).contains("p99.9", "response time", "captured cache");
+    }
+
+    private List<QueryLog.Entry> readAll(Path from) throws Exception {
+        List<QueryLog.Entry> out = new ArrayList<>();
+        for (Path file : files(from)) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file));
+                 MappingIterator<QueryLog.Entry> it = mapper.readerFor(QueryLog.Entry.class).readValues(in)) {
+                while (it.hasNextValue()) out.add(it.nextValue());
+            } catch (EOFException e) {
+                // The current file is still open: flushed up to here, no gzip trailer yet
+            }
+        }
+        return out;
+    }
+
+    private static List<Path> files(Path from) throws Exception {
+        try (Stream<Path> s = Files.list(from)) {
+            return s.sorted().toList();
+        }
+    }
+}
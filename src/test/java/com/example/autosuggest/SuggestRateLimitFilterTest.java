@@ -1,5 +1,6 @@
 package com.example.autosuggest;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -8,7 +9,14 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -24,12 +32,43 @@ class SuggestRateLimitFilterTest {
     @Autowired
     MockMvc mvc;
 
+    @Autowired
+    MeterRegistry meter;
+
     @Test
     void third_request_is_rate_limited() throws Exception {
         var req = get("/suggest").param("q", "micro").header("X-Client-Id", "test-client");
-        mvc.perform(req).andExpect(status().isOk());
-        mvc.perform(req).andExpect(status().isOk());
-        mvc.perform(req).andExpect(status().isTooManyRequests());
+        mvc.perform(req).andExpect(status().isOk()).andExpect(header().string("X-Rate-Limit-Remaining", "1"));
+        mvc.perform(req).andExpect(status().isOk()).andExpect(header().string("X-Rate-Limit-Remaining", "0"));
+        // Next token in 30 minutes
+        mvc.perform(req).andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1800"));
+
+        // Buckets are per client
+        mvc.perform(get("/suggest").param("q", "micro").header("X-Client-Id", "other-client"))
+                .andExpect(status().isOk());
+        assertThat(meter.find("suggest.ratelimit.keys").gauge().value()).isGreaterThanOrEqualTo(2);
     }
-}
 
+    @Test
+    void concurrentRequests_neverTakeMoreThanCapacity() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                    return mvc.perform(get("/suggest").param("q", "micro").header("X-Client-Id", "burst-client"))
+                            .andReturn().getResponse().getStatus();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, r -> Thread.ofVirtual().start(r)));
+        }
+        start.countDown();
+
+        List<Integer> statuses = calls.stream().map(CompletableFuture::join).toList();
+        assertThat(statuses).filteredOn(s -> s == 200).hasSize(2);
+        assertThat(statuses).filteredOn(s -> s == 429).hasSize(62);
+    }
+}
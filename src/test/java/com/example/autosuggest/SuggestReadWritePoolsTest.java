@@ -0,0 +1,93 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.SuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// A real file: WAL does not apply to the in-memory database the other tests share
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:sqlite:target/read-write-pools-test.db",
+        "suggest.engine=sqlite-like"
+})
+class SuggestReadWritePoolsTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    @Qualifier("suggestReadJdbc")
+    NamedParameterJdbcTemplate readJdbc;
+
+    @Autowired
+    TransactionTemplate tx;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(1301, 'Walrus One', 1), (1302, 'Walrus Two', 2)",
+                new MapSqlParameterSource());
+    }
+
+    @Test
+    void databaseRunsInWal_andReadersAreReadOnly() {
+        assertThat(jdbc.queryForObject("PRAGMA journal_mode", new MapSqlParameterSource(), String.class))
+                .isEqualToIgnoringCase("wal");
+        assertThatThrownBy(() -> readJdbc.update("DELETE FROM people", new MapSqlParameterSource()))
+                .hasMessageContaining("readonly");
+    }
+
+    @Test
+    void readsDoNotWaitForAnOpenWriteTransaction() throws Exception {
+        tx.executeWithoutResult(status -> {
+            jdbc.update("UPDATE people SET name = 'Renamed' WHERE id = 1301", new MapSqlParameterSource());
+            // The writer holds its lock until commit; a reader still sees the last committed state
+            List<Suggestion> seen = CompletableFuture
+                    .supplyAsync(() -> service.suggest("walrus", 10, SuggestService.Mode.PREFIX))
+                    .orTimeout(2, TimeUnit.SECONDS)
+                    .join();
+            assertThat(seen).extracting(Suggestion::value).containsExactly("Walrus Two", "Walrus One");
+        });
+        assertThat(service.suggest("walrus", 10, SuggestService.Mode.PREFIX)).extracting(Suggestion::value)
+                .containsExactly("Walrus Two");
+    }
+
+    @Test
+    void readConnectionsReuseTheirPreparedStatements() {
+        service.suggest("walrus", 10, SuggestService.Mode.PREFIX);
+        double hits = statements("hit");
+        for (int i = 0; i < 20; i++) service.suggest("walrus", 10, SuggestService.Mode.PREFIX);
+        // Four pooled connections: at most one first prepare each
+        assertThat(statements("hit") - hits).isGreaterThanOrEqualTo(16);
+
+        assertThat(meter.find("hikaricp.connections.acquire").tag("pool", "suggest-read").timer()).isNotNull();
+        assertThat(meter.find("hikaricp.connections.pending").tag("pool", "suggest-write").gauge()).isNotNull();
+    }
+
+    private double statements(String result) {
+        var counter = meter.find("suggest.db.statements").tags("pool", "suggest-read", "result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.MemoryFuzzyIndex;
+import com.example.autosuggest.service.SuggestService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-fts",
+        "suggest.fuzzy.enabled=true"
+})
+class SuggestServiceFuzzyIndexTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MemoryFuzzyIndex fuzzy;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people_fts", new MapSqlParameterSource());
+        insert(901, "Microsoft", 5);
+        insert(902, "Microtek", 9);
+        insert(903, "Macrohard", 7);
+        insert(904, "Minecraft", 3);
+        insert(905, "Café Nero", 2);
+        insert(906, "Micron", 1);
+        fuzzy.reload();
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void typos_areMatchedAndRankedByDistanceThenPopularity() {
+        // transposition "ro" -> "or" and a missing "t" are two edits
+        assertThat(values(service.suggest("micorsof", 10, SuggestService.Mode.FUZZY)))
+                .first().isEqualTo("Microsoft");
+
+        List<Suggestion> out = service.suggest("mcro", 10, SuggestService.Mode.FUZZY);
+        assertThat(values(out)).containsExactly("Microtek", "Macrohard", "Microsoft", "Micron");
+        assertThat(out).extracting(Suggestion::score).containsOnly(1.0);
+    }
+
+    @Test
+    void shortQueries_needExactPrefix_andDiacriticsAreFolded() {
+        assertThat(values(service.suggest("mi", 10, SuggestService.Mode.FUZZY)))
+                .containsExactly("Microtek", "Microsoft", "Minecraft", "Micron");
+        assertThat(values(service.suggest("cafe", 10, SuggestService.Mode.FUZZY)))
+                .containsExactly("Café Nero");
+    }
+
+    @Test
+    void matchesBruteForceDistances() {
+        Random rnd = new Random(7);
+        String alphabet = "abcde ";
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        for (int i = 0; i < 400; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(9);
+            for (int j = 0; j < len; j++) sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+            insert(2000 + i, sb.toString(), rnd.nextInt(20));
+        }
+        fuzzy.reload();
+        List<Map<String, Object>> rows = jdbc.queryForList("SELECT name, popularity FROM people", Map.of());
+
+        for (String q : List.of("abc", "badc", "eeaab", "cab de", "ddddddd")) {
+            int edits = fuzzy.editsFor(q);
+            List<String> expected = rows.stream()
+                    .filter(r -> prefixDistance(q, (String) r.get("name")) <= edits)
+                    .sorted(Comparator.<Map<String, Object>>comparingInt(r -> prefixDistance(q, (String) r.get("name")))
+                            .thenComparing(r -> ((Number) r.get("popularity")).longValue(), Comparator.reverseOrder())
+                            .thenComparingInt(r -> ((String) r.get("name")).length())
+                            .thenComparing(r -> (String) r.get("name")))
+                    .limit(50)
+                    .map(r -> (String) r.get("name"))
+                    .toList();
+            assertThat(values(service.suggest(q, 50, SuggestService.Mode.FUZZY))).as("q=%s", q).isEqualTo(expected);
+        }
+    }
+
+    // Reference: optimal string alignment distance of q to the closest prefix of name
+    private static int prefixDistance(String q, String name) {
+        String a = q.toLowerCase(Locale.ROOT), b = name.toLowerCase(Locale.ROOT);
+        int[][] d = new int[b.length() + 1][a.length() + 1];
+        for (int j = 0; j <= a.length(); j++) d[0][j] = j;
+        int best = d[0][a.length()];
+        for (int i = 1; i <= b.length(); i++) {
+            d[i][0] = i;
+            for (int j = 1; j <= a.length(); j++) {
+                int cost = a.charAt(j - 1) == b.charAt(i - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(j - 1) == b.charAt(i - 2) && a.charAt(j - 2) == b.charAt(i - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+            best = Math.min(best, d[i][a.length()]);
+        }
+        return best;
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.MemoryTrieIndex;
+import com.example.autosuggest.service.SuggestService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = "suggest.engine=memory-trie")
+class SuggestServiceMemoryTrieTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MemoryTrieIndex trie;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people_fts", new MapSqlParameterSource());
+
+        insert(401, "Micro", 1);
+        insert(402, "Microsoft", 5);
+        insert(403, "Microtek", 9);
+        insert(404, "Microscope", 2);
+        insert(405, "MicroB", 7);
+        insert(406, "MicroA", 7);
+        insert(407, "Macrohard", 100);
+        insert(408, "Minecraft", 3);
+        // More than topK (50) names under "micro", so internal nodes and leaves are both exercised
+        for (int i = 0; i < 60; i++) {
+            insert(1000 + i, String.format("Micro Item %02d", i), (i * 37) % 11);
+        }
+
+        trie.reload();
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void prefix_matchesLikeOrdering() {
+        for (String q : List.of("mi", "mic", "micro", "micro i", "Micro Item 1", "MICROS", "microt", "ma", "zz")) {
+            for (int limit : List.of(1, 2, 3, 10, 50)) {
+                assertThat(values(service.suggest(q, limit, SuggestService.Mode.PREFIX)))
+                        .as("q=%s limit=%d", q, limit)
+                        .isEqualTo(likeOrder(q, limit));
+            }
+        }
+    }
+
+    @Test
+    void reload_picksUpPopularityChanges() {
+        assertThat(values(service.suggest("micro", 3, SuggestService.Mode.PREFIX)))
+                .containsExactly("Micro", "MicroA", "MicroB");
+
+        jdbc.update("UPDATE people SET popularity = 50 WHERE id = 405", new MapSqlParameterSource());
+
+        // Served from the trie, not the DB: the change is invisible until the reload
+        assertThat(values(service.suggest("micro", 3, SuggestService.Mode.PREFIX)))
+                .containsExactly("Micro", "MicroA", "MicroB");
+
+        trie.reload();
+
+        assertThat(values(service.suggest("micro", 3, SuggestService.Mode.PREFIX)))
+                .containsExactly("Micro", "MicroB", "MicroA");
+    }
+
+    @Test
+    void topKBelowTheMaxLimit_failsStartup() {
+        assertThatThrownBy(() -> new MemoryTrieIndex(jdbc, "memory-trie", SuggestService.MAX_LIMIT - 1, null))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("suggest.trie.topK");
+    }
+
+    @Test
+    void contains_fallsBackToSqlite() {
+        assertThat(values(service.suggest("soft", 10, SuggestService.Mode.CONTAINS)))
+                .containsExactly("Microsoft");
+    }
+
+    private List<String> likeOrder(String q, int limit) {
+        return jdbc.queryForList("""
+                        SELECT name FROM people
+                        WHERE name LIKE :q || '%' COLLATE NOCASE
+                        ORDER BY CASE WHEN name = :q COLLATE NOCASE THEN 0 ELSE 1 END,
+                                 length(name), popularity DESC, name
+                        LIMIT :limit
+                        """,
+                new MapSqlParameterSource().addValue("q", q).addValue("limit", limit), String.class);
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.MmapSnapshotIndex;
+import com.example.autosuggest.service.SuggestService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=mmap-snapshot",
+        "suggest.snapshot.dir=target/snapshot-test",
+        "suggest.snapshot.pollInterval=PT0S"
+})
+class SuggestServiceMmapSnapshotTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MmapSnapshotIndex snapshot;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people_fts", new MapSqlParameterSource());
+
+        String[] names = {"Micro", "Microsoft", "Microtek", "Microscope", "MicroB", "MicroA", "Macrohard",
+                "Minecraft", "Mínimo", "Microsoft Research", "Microsoft Azure", "Zebra"};
+        for (int i = 0; i < names.length; i++) {
+            insert(500 + i, names[i], (i * 7) % 5);
+        }
+        // More than topK (50) names under "micro", so node records and block scans are both exercised
+        for (int i = 0; i < 60; i++) {
+            insert(1000 + i, String.format("Micro Item %02d", i), (i * 37) % 11);
+        }
+        snapshot.build();
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void prefix_matchesLikeOrdering() {
+        for (String q : List.of("mi", "mic", "micro", "micro i", "Micro Item 1", "MICROS", "microsoft ", "ma", "mí",
+                "ze", "zz", "aa")) {
+            for (int limit : List.of(1, 2, 3, 10, 50)) {
+                assertThat(values(service.suggest(q, limit, SuggestService.Mode.PREFIX)))
+                        .as("q=%s limit=%d", q, limit)
+                        .isEqualTo(likeOrder(q, limit));
+            }
+        }
+    }
+
+    @Test
+    void build_swapsInNewerVersion_andKeepsPrevious() throws IOException {
+        long before = snapshot.version();
+        jdbc.update("UPDATE people SET popularity = 1000 WHERE name = 'MicroA'", new MapSqlParameterSource());
+
+        // The mapped file still ranks by the popularity it was built from
+        assertThat(values(service.suggest("micro", 3, SuggestService.Mode.PREFIX)))
+                .containsExactly("Micro", "MicroB", "MicroA");
+
+        long after = snapshot.build();
+
+        assertThat(after).isGreaterThan(before);
+        assertThat(snapshot.version()).isEqualTo(after);
+        assertThat(values(service.suggest("micro", 3, SuggestService.Mode.PREFIX)))
+                .containsExactly("Micro", "MicroA", "MicroB");
+        try (Stream<Path> files = Files.list(Path.of("target/snapshot-test"))) {
+            assertThat(files.map(p -> p.getFileName().toString()))
+                    .contains("suggest-" + before + ".snap", "suggest-" + after + ".snap");
+        }
+    }
+
+    @Test
+    void write_leavesTheServedSnapshotAlone() {
+        long served = snapshot.version();
+
+        long written = snapshot.write();
+
+        assertThat(written).isGreaterThan(served);
+        assertThat(snapshot.version()).isEqualTo(served);
+        assertThat(snapshot.loadLatest()).isTrue();
+        assertThat(snapshot.version()).isEqualTo(written);
+    }
+
+    @Nested
+    @TestPropertySource(properties = "suggest.snapshot.dir=target/snapshot-test-none")
+    class WithoutSnapshot {
+
+        @Autowired
+        SuggestService service;
+
+        @Autowired
+        MmapSnapshotIndex snapshot;
+
+        @Test
+        void prefix_isServedFromSqlite_andNothingIsBuilt() {
+            assertThat(snapshot.loaded()).isFalse();
+
+            assertThat(values(service.suggest("micro", 3, SuggestService.Mode.PREFIX))).isEqualTo(likeOrder("micro", 3));
+
+            assertThat(snapshot.loaded()).isFalse();
+            assertThat(Path.of("target/snapshot-test-none")).doesNotExist();
+        }
+    }
+
+    private List<String> likeOrder(String q, int limit) {
+        return jdbc.queryForList("""
+                        SELECT name FROM people
+                        WHERE name LIKE :q || '%' COLLATE NOCASE
+                        ORDER BY CASE WHEN name = :q COLLATE NOCASE THEN 0 ELSE 1 END,
+                                 length(name), popularity DESC, name
+                        LIMIT :limit
+                        """,
+                new MapSqlParameterSource().addValue("q", q.trim()).addValue("limit", limit), String.class);
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
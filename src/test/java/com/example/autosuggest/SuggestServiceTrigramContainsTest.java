@@ -0,0 +1,82 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.SuggestService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.fts.trigram.enabled=true"
+})
+class SuggestServiceTrigramContainsTest {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people_trigram(people_trigram) VALUES('rebuild')", new MapSqlParameterSource());
+        // Indexed by the trigram triggers from here on
+        insert(1001, "Microsoft", 5);
+        insert(1002, "Softbank", 9);
+        insert(1003, "Micro Soft Serve", 1);
+        insert(1004, "Minecraft", 3);
+        insert(1005, "SOFTWARE AG", 2);
+        insert(1006, "50% Off", 1);
+    }
+
+    private void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void contains_matchesLikeScan() {
+        for (String q : List.of("soft", "SOFT", "o so", "craft", "ft", "0% o", "zzz")) {
+            assertThat(values(service.suggest(q, 10, SuggestService.Mode.CONTAINS)))
+                    .as("q=%s", q)
+                    .isEqualTo(likeScan(q));
+        }
+    }
+
+    @Test
+    void renamesAndDeletes_areIndexed() {
+        jdbc.update("UPDATE people SET name = 'Hardware Inc' WHERE id = 1005", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people WHERE id = 1002", new MapSqlParameterSource());
+
+        assertThat(values(service.suggest("soft", 10, SuggestService.Mode.CONTAINS)))
+                .containsExactly("Microsoft", "Micro Soft Serve");
+        assertThat(values(service.suggest("ware", 10, SuggestService.Mode.CONTAINS)))
+                .containsExactly("Hardware Inc");
+    }
+
+    private List<String> likeScan(String q) {
+        return jdbc.queryForList("""
+                        SELECT name FROM people
+                        WHERE name LIKE '%' || :q || '%' COLLATE NOCASE
+                        ORDER BY CASE WHEN name LIKE :q || '%' COLLATE NOCASE THEN 0 ELSE 1 END,
+                                 length(name), popularity DESC, name
+                        LIMIT 10
+                        """,
+                new MapSqlParameterSource("q", q), String.class);
+    }
+
+    private static List<String> values(List<Suggestion> out) {
+        return out.stream().map(Suggestion::value).toList();
+    }
+}
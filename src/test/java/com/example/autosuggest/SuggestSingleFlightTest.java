@@ -0,0 +1,147 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.model.Suggestion;
+import com.example.autosuggest.service.DbGate;
+import com.example.autosuggest.service.Dictionaries;
+import com.example.autosuggest.service.SuggestService;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.ttl=PT1H",
+        "suggest.db.gate.permits=1",
+        "suggest.db.gate.timeout=PT10S",
+        "resilience4j.circuitbreaker.instances.suggest-db.ignoreExceptions[0]=com.example.autosuggest.service.SharedLoadException"
+})
+class SuggestSingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    @Autowired
+    NamedParameterJdbcTemplate npJdbc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    SuggestService service;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    CircuitBreakerRegistry breakers;
+
+    @Autowired
+    DbGate gate;
+
+    @Autowired
+    Dictionaries dictionaries;
+
+    @BeforeEach
+    void setupData() {
+        breakers.circuitBreaker("suggest-db").reset();
+        npJdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        // Enough rows that a CONTAINS scan is still running while the other callers arrive
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            batch.add(new Object[]{10_000 + i, (i % 2 == 0 ? "Softcorp " : "Hardcorp ") + i, i % 100});
+        }
+        jdbc.batchUpdate("INSERT INTO people(id, name, popularity) VALUES(?,?,?)", batch);
+    }
+
+    @Test
+    void concurrentMisses_loadOnce() throws Exception {
+        double missesBefore = count("miss");
+        double coalescedBefore = count("coalesced");
+        double hitsBefore = count("hit");
+
+        List<List<Suggestion>> results = concurrently("ftcorp 1");
+
+        assertThat(results).allSatisfy(r -> assertThat(r).hasSize(10).isEqualTo(results.get(0)));
+        // Exactly one caller ran the query; the rest waited on it
+        assertThat(count("miss") - missesBefore).isEqualTo(1);
+        assertThat(count("coalesced") - coalescedBefore).isEqualTo(CALLERS - 1);
+        assertThat(count("hit")).isEqualTo(hitsBefore);
+    }
+
+    @Test
+    void failedLoad_fallsBackForEveryCaller_andIsNotCached() throws Exception {
+        jdbc.execute("ALTER TABLE people RENAME TO people_offline");
+        List<List<Suggestion>> results;
+        try {
+            results = concurrently("rdcorp 2");
+        } finally {
+            jdbc.execute("ALTER TABLE people_offline RENAME TO people");
+        }
+
+        assertThat(results).allSatisfy(r -> assertThat(r).isEmpty());
+        // Only the caller that ran the load counts against the breaker
+        CircuitBreaker breaker = breakers.circuitBreaker("suggest-db");
+        assertThat(breaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(service.suggest("rdcorp 2", 10, SuggestService.Mode.CONTAINS)).hasSize(10);
+    }
+
+    // The leader is held at the DB gate until every other caller has joined its load
+    private List<List<Suggestion>> concurrently(String q) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS + 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CountDownLatch held = new CountDownLatch(1);
+            pool.submit(() -> gate.call(() -> {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            held.await();
+            List<Future<List<Suggestion>>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(pool.submit(() -> service.suggest(q, 10, SuggestService.Mode.CONTAINS)));
+            }
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (dictionaries.primary().loads().waiting() < CALLERS - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(dictionaries.primary().loads().waiting()).isEqualTo(CALLERS - 1);
+            release.countDown();
+            List<List<Suggestion>> out = new ArrayList<>();
+            for (Future<List<Suggestion>> f : futures) out.add(f.get());
+            return out;
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private double count(String cacheStatus) {
+        var timer = meter.find("suggest.query").tags("engine", "sqlite-like", "mode", "contains", "cache", cacheStatus).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.autosuggest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=true",
+        "suggest.cache.ttl=PT1H",
+        "suggest.metrics.stages.enabled=true",
+        "suggest.metrics.slo=2ms,20ms"
+})
+class SuggestStageMetricsTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @BeforeEach
+    void setupData() {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(2301, 'Stagecoach', 2), (2302, 'Stagehand', 1)",
+                new MapSqlParameterSource());
+    }
+
+    @Test
+    void query_timers_exist_before_the_first_request() {
+        for (String mode : new String[]{"prefix", "contains", "fuzzy"}) {
+            for (String cache : new String[]{"off", "hit", "l2", "refine", "coalesced", "miss"}) {
+                assertThat(meter.find("suggest.query").tags("engine", "sqlite-like", "mode", mode, "cache", cache).timer())
+                        .as(mode + "/" + cache).isNotNull();
+            }
+        }
+    }
+
+    @Test
+    void a_miss_then_a_hit_record_every_stage() throws Exception {
+        long normalize = count("normalize"), cache = count("cache"), db = count("db"), map = count("map"),
+                serialize = count("serialize");
+
+        mvc.perform(get("/suggest").param("q", "stagec")).andExpect(status().isOk());
+        assertThat(count("db")).isEqualTo(db + 1);
+        assertThat(count("map")).isEqualTo(map + 1);
+
+        mvc.perform(get("/suggest").param("q", "stagec")).andExpect(status().isOk());
+        assertThat(count("normalize")).isEqualTo(normalize + 2);
+        assertThat(count("cache")).isEqualTo(cache + 2);
+        assertThat(count("db")).isEqualTo(db + 1); // the hit never reached the database
+        assertThat(count("serialize")).isGreaterThanOrEqualTo(serialize + 2);
+    }
+
+    @Test
+    void histograms_carry_the_configured_slo_buckets() throws Exception {
+        mvc.perform(get("/suggest").param("q", "stageh")).andExpect(status().isOk());
+        Timer db = stage("db");
+        double[] bounds = Arrays.stream(db.takeSnapshot().histogramCounts())
+                .mapToDouble(b -> b.bucket(TimeUnit.MILLISECONDS)).toArray();
+        assertThat(bounds).contains(2.0, 20.0);
+        assertThat(Arrays.stream(db.takeSnapshot().histogramCounts()).mapToDouble(CountAtBucket::count).max().orElse(0))
+                .isPositive();
+    }
+
+    private long count(String stage) {
+        return stage(stage).count();
+    }
+
+    private Timer stage(String stage) {
+        return meter.get("suggest.stage").tags("engine", "sqlite-like", "stage", stage).timer();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.PopularityBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "suggest.track.buffer.enabled=true",
+        "suggest.track.buffer.flushInterval=PT1H" // flushed explicitly by the test
+})
+class SuggestTrackBufferTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    PopularityBuffer buffer;
+
+    @BeforeEach
+    void seed() {
+        buffer.flush();
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("DELETE FROM people_fts", new MapSqlParameterSource());
+        insert(21, "TrackA", 0);
+        insert(22, "TrackB", 0);
+    }
+
+    void insert(int id, String name, int pop) {
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(:id, :name, :pop)",
+                new MapSqlParameterSource().addValue("id", id).addValue("name", name).addValue("pop", pop));
+    }
+
+    @Test
+    void clicks_are_buffered_and_applied_in_one_flush() throws Exception {
+        mvc.perform(post("/suggest/track").contentType(MediaType.APPLICATION_JSON).content("{\"id\":21}"))
+                .andExpect(status().isAccepted());
+        mvc.perform(post("/suggest/track/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":21},{\"value\":\"trackb\"},{\"value\":\"TrackB\"},{\"id\":9999}]"))
+                .andExpect(status().isAccepted());
+
+        assertThat(popularity(21)).isZero();
+        assertThat(popularity(22)).isZero();
+
+        buffer.flush();
+
+        assertThat(popularity(21)).isEqualTo(2);
+        assertThat(popularity(22)).isEqualTo(2);
+    }
+
+    @Test
+    void batch_rejects_entries_without_id_or_value() throws Exception {
+        mvc.perform(post("/suggest/track/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":21},{\"value\":\" \"}]"))
+                .andExpect(status().isBadRequest());
+        buffer.flush();
+        assertThat(popularity(21)).isZero();
+    }
+
+    private long popularity(int id) {
+        return jdbc.queryForObject("SELECT popularity FROM people WHERE id = :id",
+                new MapSqlParameterSource().addValue("id", id), Long.class);
+    }
+}
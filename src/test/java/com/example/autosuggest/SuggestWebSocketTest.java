@@ -0,0 +1,214 @@
+package com.example.autosuggest;
+
+import com.example.autosuggest.service.DbGate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "suggest.engine=sqlite-like",
+        "suggest.cache.enabled=false",
+        "suggest.db.gate.permits=1",
+        "suggest.db.gate.timeout=PT5S",
+        "suggest.ratelimit.enabled=true",
+        "suggest.ratelimit.capacity=4",
+        "suggest.ratelimit.refillTokens=1",
+        "suggest.ratelimit.refillPeriod=PT1H" // effectively no refill during a test
+})
+class SuggestWebSocketTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbc;
+
+    @Autowired
+    DbGate gate;
+
+    @Autowired
+    MeterRegistry meter;
+
+    @Autowired
+    ObjectMapper mapper;
+
+    private final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private WebSocketSession ws;
+
+    @BeforeEach
+    void connect() throws Exception {
+        jdbc.update("DELETE FROM people", new MapSqlParameterSource());
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES"
+                + "(1601, 'Streamer', 3), (1602, 'Stream', 1), (1603, 'Strong', 2), (1604, 'Acorn', 1)",
+                new MapSqlParameterSource());
+        // A bucket per test, so each starts with the full capacity
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.add("X-Client-Id", UUID.randomUUID().toString());
+        ws = connect(headers).get(5, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<WebSocketSession> connect(WebSocketHttpHeaders headers) {
+        return new StandardWebSocketClient().execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                frames.add(message.getPayload());
+            }
+        }, headers, URI.create("ws://localhost:" + port + "/suggest/ws"));
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        release.countDown();
+        ws.close();
+    }
+
+    @Test
+    void longerPrefixesAreRefinedFromTheSessionsCandidates() throws Exception {
+        send("{\"seq\":1,\"q\":\"str\"}");
+        JsonNode first = next();
+        assertThat(first.get("seq").asLong()).isEqualTo(1);
+        assertThat(values(first)).containsExactly("Strong", "Stream", "Streamer");
+
+        // A row added behind the session's back proves "strea" never reached the DB (the cache is off)
+        jdbc.update("INSERT INTO people(id, name, popularity) VALUES(1605, 'Streak', 9)", new MapSqlParameterSource());
+        double refinedBefore = keystrokes("refined");
+        send("{\"seq\":2,\"q\":\"STREA\",\"limit\":1}");
+        JsonNode second = next();
+        assertThat(second.get("seq").asLong()).isEqualTo(2);
+        assertThat(values(second)).containsExactly("Stream");
+        assertThat(keystrokes("refined")).isEqualTo(refinedBefore + 1);
+    }
+
+    @Test
+    void supersededKeystrokesAreDropped() throws Exception {
+        holdPermit();
+        double receivedBefore = keystrokes("received");
+        double supersededBefore = keystrokes("superseded");
+        send("{\"seq\":1,\"q\":\"ac\",\"mode\":\"CONTAINS\"}");
+        await(() -> meter.find("suggest.db.gate.queued").gauge().value() == 1);
+        // Typed while "ac" waits: "aco" is replaced by "acor" before anything looks it up
+        send("{\"seq\":2,\"q\":\"aco\",\"mode\":\"CONTAINS\"}");
+        send("{\"seq\":3,\"q\":\"acor\",\"mode\":\"CONTAINS\"}");
+        await(() -> keystrokes("received") == receivedBefore + 3 && keystrokes("superseded") == supersededBefore + 1);
+
+        release.countDown();
+        JsonNode only = next();
+        assertThat(only.get("seq").asLong()).isEqualTo(3);
+        assertThat(values(only)).containsExactly("Acorn");
+        assertThat(frames.poll(300, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void invalidKeystrokesGetAnErrorFrame() throws Exception {
+        send("{\"seq\":7,\"q\":\"s\"}");
+        JsonNode error = next();
+        assertThat(error.get("seq").asLong()).isEqualTo(7);
+        assertThat(error.get("error").asText()).isEqualTo("Bad Request");
+
+        send("not json");
+        assertThat(next().get("error").asText()).isEqualTo("Bad Request");
+
+        // The session stays usable
+        send("{\"seq\":8,\"q\":\"strong\"}");
+        assertThat(values(next())).containsExactly("Strong");
+    }
+
+    @Test
+    void keystrokesPastTheClientsBucketAreRejected() throws Exception {
+        for (int seq = 1; seq <= 4; seq++) {
+            send("{\"seq\":" + seq + ",\"q\":\"ac\",\"mode\":\"CONTAINS\"}");
+            assertThat(values(next())).containsExactly("Acorn");
+        }
+        double limitedBefore = keystrokes("limited");
+
+        send("{\"seq\":5,\"q\":\"ac\",\"mode\":\"CONTAINS\"}");
+
+        JsonNode error = next();
+        assertThat(error.get("seq").asLong()).isEqualTo(5);
+        assertThat(error.get("error").asText()).isEqualTo("Too Many Requests");
+        assertThat(keystrokes("limited")).isEqualTo(limitedBefore + 1);
+    }
+
+    @Test
+    void crossOriginHandshakesAreRefusedByDefault() {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setOrigin("http://elsewhere.example");
+
+        assertThatThrownBy(() -> connect(headers).get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+    }
+
+    private void send(String json) throws Exception {
+        ws.sendMessage(new TextMessage(json));
+    }
+
+    private JsonNode next() throws Exception {
+        String frame = frames.poll(5, TimeUnit.SECONDS);
+        assertThat(frame).as("no frame within 5s").isNotNull();
+        return mapper.readTree(frame);
+    }
+
+    private static List<String> values(JsonNode frame) {
+        List<String> out = new ArrayList<>();
+        frame.get("items").forEach(item -> out.add(item.get("value").asText()));
+        return out;
+    }
+
+    private double keystrokes(String result) {
+        var counter = meter.find("suggest.ws.keystrokes").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    // Occupies the only database permit until the test releases it
+    private void holdPermit() throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> gate.call(() -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertThat(held.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}